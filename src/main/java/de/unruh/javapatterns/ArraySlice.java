@@ -0,0 +1,124 @@
+package de.unruh.javapatterns;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.StringJoiner;
+
+/** A contiguous part of an array, without copying the array.<p>
+ *
+ * A slice consists of a backing array, an offset, and a length. It is the value matched by the rest pattern of
+ * {@link Patterns#ArrayPrefix ArrayPrefix} and by the {@link Patterns#ArraySlice(Pattern[]) ArraySlice} patterns.
+ * Creating a slice (or a slice of a slice) takes constant time, no matter how long the array is.<p>
+ *
+ * A slice does not copy the backing array, so later modifications of the array are visible in the slice.
+ * Two slices are {@linkplain #equals equal} if they have the same length and equal elements
+ * (like {@link Arrays#equals(Object[], Object[])}).
+ *
+ * @param <T> the element type of the backing array
+ */
+public final class ArraySlice<T> {
+    @Nullable final T @NotNull [] array;
+    final int offset;
+    final int length;
+
+    @Contract(pure = true)
+    private ArraySlice(@Nullable T @NotNull [] array, int offset, int length) {
+        this.array = array;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /** Returns a slice containing all of {@code array}.
+     * @param array the backing array
+     * @return the slice */
+    @Contract(pure = true, value = "_ -> new")
+    public static <T> @NotNull ArraySlice<T> of(@Nullable T @NotNull [] array) {
+        return new ArraySlice<>(array, 0, array.length);
+    }
+
+    /** Returns a slice containing the elements {@code from} (inclusive) to {@code to} (exclusive) of {@code array}.
+     * @param array the backing array
+     * @param from the index of the first element of the slice
+     * @param to the index after the last element of the slice
+     * @return the slice
+     * @throws IndexOutOfBoundsException if not {@code 0 ≤ from ≤ to ≤ array.length} */
+    @Contract(pure = true, value = "_, _, _ -> new")
+    public static <T> @NotNull ArraySlice<T> of(@Nullable T @NotNull [] array, int from, int to) {
+        if (from < 0 || to > array.length || from > to)
+            throw new IndexOutOfBoundsException("from=" + from + ", to=" + to + ", length=" + array.length);
+        return new ArraySlice<>(array, from, to - from);
+    }
+
+    /** The number of elements of this slice. */
+    @Contract(pure = true)
+    public int length() {
+        return length;
+    }
+
+    /** Returns the {@code index}-th element of this slice.
+     * @throws IndexOutOfBoundsException if not {@code 0 ≤ index < length()} */
+    @Contract(pure = true)
+    public @Nullable T get(int index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("index=" + index + ", length=" + length);
+        return array[offset + index];
+    }
+
+    /** Returns the elements {@code from} (inclusive) to {@code to} (exclusive) of this slice as a slice
+     * (with the same backing array).
+     * @throws IndexOutOfBoundsException if not {@code 0 ≤ from ≤ to ≤ length()} */
+    @Contract(pure = true, value = "_, _ -> new")
+    public @NotNull ArraySlice<T> slice(int from, int to) {
+        if (from < 0 || to > length || from > to)
+            throw new IndexOutOfBoundsException("from=" + from + ", to=" + to + ", length=" + length);
+        return new ArraySlice<>(array, offset + from, to - from);
+    }
+
+    /** Returns the elements of this slice as a new array (of the same type as the backing array). */
+    @Contract(pure = true, value = "-> new")
+    public @Nullable T @NotNull [] toArray() {
+        return Arrays.copyOfRange(array, offset, offset + length);
+    }
+
+    /** Returns a fixed-size list view of this slice. Like the slice, the list is backed by the array. */
+    @Contract(pure = true)
+    public @NotNull List<T> asList() {
+        return Arrays.asList(array).subList(offset, offset + length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ArraySlice)) return false;
+        ArraySlice<?> other = (ArraySlice<?>) o;
+        if (length != other.length) return false;
+        for (int i = 0; i < length; i++) {
+            Object a = array[offset + i];
+            Object b = other.array[other.offset + i];
+            if (a == null ? b != null : !a.equals(b)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int i = offset; i < offset + length; i++) {
+            Object element = array[i];
+            result = 31 * result + (element == null ? 0 : element.hashCode());
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", "[", "]");
+        for (int i = offset; i < offset + length; i++)
+            joiner.add(String.valueOf(array[i]));
+        return joiner.toString();
+    }
+}
@@ -0,0 +1,101 @@
+package de.unruh.javapatterns;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/** The result of a pattern match that only extracts values, see {@link Matcher#bind}.<p>
+ *
+ * A {@link Bindings} object is created for a fixed list of captures (using {@link #of} or {@link #into})
+ * and contains, after a successful {@link Matcher#bind}, the index of the matching case and the
+ * values of those captures. It can be reused for any number of matches (with different matchers),
+ * each match overwrites the previous result. It is not thread-safe.
+ */
+public final class Bindings {
+    @NotNull private final Capture<?> @NotNull [] captures;
+    @Nullable private final Object @NotNull [] values;
+    private int caseIndex = -1;
+
+    @Contract(pure = true)
+    private Bindings(@NotNull Capture<?> @NotNull [] captures, @Nullable Object @NotNull [] values) {
+        this.captures = captures;
+        this.values = values;
+    }
+
+    /** Creates bindings for the given captures.
+     * @param captures the captures whose values should be returned by a match
+     * @return the bindings (containing no match yet) */
+    @Contract(pure = true, value = "_ -> new")
+    public static @NotNull Bindings of(@NotNull Capture<?> @NotNull ... captures) {
+        return new Bindings(captures.clone(), new Object[captures.length]);
+    }
+
+    /** Creates bindings for the given captures that store the values in {@code values}.
+     * After a successful match, {@code values[i]} contains the value of {@code captures[i]}.
+     * @param values the array to store the values in (at least as long as {@code captures})
+     * @param captures the captures whose values should be returned by a match
+     * @return the bindings (containing no match yet) */
+    @Contract(pure = true, value = "_, _ -> new")
+    public static @NotNull Bindings into(@Nullable Object @NotNull [] values, @NotNull Capture<?> @NotNull ... captures) {
+        if (values.length < captures.length)
+            throw new IllegalArgumentException("Array of length " + values.length + " too short for " + captures.length + " captures");
+        return new Bindings(captures.clone(), values);
+    }
+
+    /** Stores the values of the captures assigned in {@code mgr}, and {@code caseIndex}. */
+    void fill(@NotNull MatchManager mgr, int caseIndex) {
+        for (int i = 0; i < captures.length; i++)
+            values[i] = mgr.assignedValue(captures[i]);
+        this.caseIndex = caseIndex;
+    }
+
+    /** Resets to "no match". */
+    void clear() {
+        Arrays.fill(values, 0, captures.length, null);
+        caseIndex = -1;
+    }
+
+    /** The index of the case that matched in the last match, or -1 if there was no match. */
+    @Contract(pure = true)
+    public int caseIndex() {
+        return caseIndex;
+    }
+
+    /** The number of captures. */
+    @Contract(pure = true)
+    public int size() {
+        return captures.length;
+    }
+
+    /** The value of the {@code i}-th capture (as given when creating these bindings) in the last match. */
+    @Contract(pure = true)
+    public @Nullable Object get(int i) {
+        if (i < 0 || i >= captures.length)
+            throw new IndexOutOfBoundsException("Capture index " + i + ", size " + captures.length);
+        return values[i];
+    }
+
+    /** The value of {@code capture} in the last match.
+     * @throws IllegalArgumentException if {@code capture} is not one of the captures of these bindings */
+    @Contract(pure = true)
+    @SuppressWarnings("unchecked")
+    public <T> @Nullable T get(@NotNull Capture<T> capture) {
+        for (int i = 0; i < captures.length; i++)
+            if (captures[i] == capture)
+                return (T) values[i];
+        throw new IllegalArgumentException("Capture " + capture + " is not bound by " + this);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("Bindings(");
+        for (int i = 0; i < captures.length; i++) {
+            if (i > 0) result.append(", ");
+            result.append(captures[i]);
+            if (caseIndex >= 0) result.append('=').append(values[i]);
+        }
+        return result.append(')').toString();
+    }
+}
@@ -26,9 +26,11 @@ import org.jetbrains.annotations.Nullable;
  * match(value, ... patterns using x ...)
  * </pre>
  * However, the value of the capture is local to one case of the pattern match.
- * (So, logically, a capture is a local variable within the case.) A capture can
- * be used in several cases in the same match, or in different matches, but it is
- * not thread-safe (i.e., not in concurrent matches).
+ * (So, logically, a capture is a local variable within the case.) The value is
+ * stored by the match and not in the capture itself. So a capture can be used in
+ * several cases in the same match, in different matches, and in concurrent matches
+ * in different threads. (In particular, a {@link Matcher} can be stored in a static
+ * field and be used from several threads.)
  *
  * @param <T> The type of the value captured by this capture variable
  */
@@ -45,36 +47,39 @@ final public class Capture<T> extends Pattern<T> {
         this.name = name;
     }
 
-    private T value;
-    private boolean assigned = false;
+    /** Where this capture was last stored in a {@link MatchManager} frame. Only used to speed up lookups,
+     * may be outdated. */
+    int slotHint;
 
-    /** Returns whether this capture has been assigned. */
+    /** Returns whether this capture has been assigned (in the current pattern match, or in an enclosing
+     * one in the same thread). */
     public boolean isAssigned() {
-        return assigned;
-    }
-
-    void clear() {
-//        out.println("Resetting "+name+" "+value+" "+assigned);
-        assigned = false;
+        return MatchManager.find(this, slotHint) != null;
     }
 
     /** The current value of the capture.
+     * If the capture is assigned in several nested matches, the value from the innermost one is returned.
      * @throws InvalidPatternMatch if the capture has not been assigned in the current pattern
      */
     @Contract(pure = true)
+    @SuppressWarnings("unchecked")
     public T v() {
-//        out.println("Reading "+name+" "+value+" "+assigned);
-        if (!assigned)
+        MatchManager mgr = MatchManager.find(this, slotHint);
+        if (mgr == null)
             throw new InvalidPatternMatch("Reading undefined capture variable " + name);
-        return value;
+        int index = mgr.found();
+        slotHint = index;
+        return (T) mgr.value(index);
     }
 
     @Override
     public void apply(@NotNull MatchManager mgr, @Nullable T value) {
-        if (assigned)
-            throw new InvalidPatternMatch("Re-assigned " + name + " in pattern match");
-        mgr.assigned(this);
-        assigned = true;
-        this.value = value;
+        mgr.assign(this, value);
+    }
+
+    @Override
+    public boolean matches(@NotNull MatchManager mgr, @Nullable T value) {
+        mgr.assign(this, value);
+        return true;
     }
 }
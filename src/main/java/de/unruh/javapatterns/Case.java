@@ -23,13 +23,39 @@ public class Case<In, Return, Exn extends Throwable> {
         this.action = action;
     }
 
-    @NotNull
-    PatternResult<Return> apply(@NotNull MatchManager mgr, @Nullable In t) throws Exn {
+    /** The pattern of this case. */
+    @Contract(pure = true)
+    @NotNull Pattern<? super In> pattern() {
+        return pattern;
+    }
+
+    /** A case with the same action, but with pattern {@code pattern}. */
+    @Contract(pure = true)
+    @NotNull Case<In, Return, Exn> withPattern(@NotNull Pattern<? super In> pattern) {
+        return pattern == this.pattern ? this : new Case<>(pattern, action);
+    }
+
+    /** Applies this case to {@code t}.
+     * @return the return value of the action if the case matched, {@link Match#NO_MATCH} otherwise
+     */
+    @Nullable
+    Object apply(@NotNull MatchManager mgr, @Nullable In t) throws Exn {
+        return apply(mgr, pattern, t);
+    }
+
+    /** Applies this case to {@code t}, but using {@code pattern} instead of the pattern of this case.
+     * Used by {@link Matcher} when it has established that {@code pattern} matches {@code t} iff the pattern
+     * of this case does.
+     * @return the return value of the action if {@code pattern} matched, {@link Match#NO_MATCH} otherwise
+     */
+    @Nullable
+    <T> Object apply(@NotNull MatchManager mgr, @NotNull Pattern<? super T> pattern, @Nullable T t) throws Exn {
         try {
-            pattern.apply(mgr, t);
-            return new PatternResultSome<>(action.call());
+            if (!pattern.matches(mgr, t))
+                return Match.NO_MATCH;
+            return action.call();
         } catch (PatternMatchReject e) {
-            return new PatternResultNone<>();
+            return Match.NO_MATCH;
         } finally {
             mgr.clearCaptured();
         }
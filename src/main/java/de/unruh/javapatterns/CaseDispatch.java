@@ -0,0 +1,159 @@
+package de.unruh.javapatterns;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Index used by {@link Matcher} to find the cases that can possibly match a value, without trying all cases.<p>
+ *
+ * The index looks at the outermost pattern ("head") of each case:
+ * <ul>
+ * <li>A case whose pattern is a type test ({@link Patterns#Instance(Class, Pattern)} or {@link Patterns.Instance})
+ * can only match values of that type. For each runtime class of a matched value, the list of cases that
+ * can apply to values of that class is computed once (in their original order) and cached in a {@link ClassValue}.</li>
+ * <li>A case whose pattern is a comparison with a constant ({@link Patterns#Is(Object)}) can only match
+ * values equal to that constant. These cases are found by a hash table lookup, or, if the matched value is an enum,
+ * by a table indexed by its ordinal. (This requires {@code equals} and {@code hashCode} of the constants to be
+ * consistent, as usual.)</li>
+ * </ul>
+ * The candidates from both are returned separately (by {@link #candidates} and {@link #constantCandidates}),
+ * both in increasing order, and need to be merged by the caller to try them in the original order.
+ * The type test or comparison itself then does not need to be performed any more.
+ */
+final class CaseDispatch {
+    private static final int @NotNull [] NONE = new int[0];
+
+    /** For each case, the class that its pattern tests for, or {@code null} if its pattern is not a type test. */
+    @Nullable
+    private final Class<?> @NotNull [] headClasses;
+    /** For each case, whether its pattern is a comparison with a constant. */
+    private final boolean @NotNull [] constantHeads;
+    /** For each case, the constant its pattern compares with (if {@link #constantHeads}). */
+    @Nullable
+    private final Object @NotNull [] headConstants;
+    /** For each case, the pattern that remains to be matched once the case is selected by
+     * {@link #candidates} or {@link #constantCandidates}. */
+    @NotNull
+    private final Pattern<?> @NotNull [] bodies;
+    /** The cases that are not comparisons with constants and can apply to {@code null}. */
+    private final int @NotNull [] forNull;
+    /** The cases that compare with {@code null}. */
+    private final int @NotNull [] constantForNull;
+    /** For each non-null constant, the cases that compare with it. */
+    @NotNull
+    private final Map<Object, int[]> byConstant = new HashMap<>();
+
+    private final ClassValue<int[]> byClass = new ClassValue<int[]>() {
+        @Override
+        protected int[] computeValue(Class<?> type) {
+            return select(i -> !constantHeads[i] && (headClasses[i] == null || headClasses[i].isAssignableFrom(type)));
+        }
+    };
+
+    /** For enum classes, the cases that compare with each enum constant, indexed by its ordinal. */
+    private final ClassValue<int[][]> byOrdinal = new ClassValue<int[][]>() {
+        @Override
+        protected int[][] computeValue(Class<?> type) {
+            Class<?> enumClass = type.isEnum() ? type : type.getSuperclass();
+            Object[] enumConstants = enumClass.getEnumConstants();
+            int[][] table = new int[enumConstants.length][];
+            for (int ordinal = 0; ordinal < table.length; ordinal++) {
+                int[] cases = byConstant.get(enumConstants[ordinal]);
+                table[ordinal] = cases == null ? NONE : cases;
+            }
+            return table;
+        }
+    };
+
+    @Contract(pure = true)
+    private CaseDispatch(@Nullable Class<?> @NotNull [] headClasses, boolean @NotNull [] constantHeads,
+                         @Nullable Object @NotNull [] headConstants, @NotNull Pattern<?> @NotNull [] bodies) {
+        this.headClasses = headClasses;
+        this.constantHeads = constantHeads;
+        this.headConstants = headConstants;
+        this.bodies = bodies;
+        this.forNull = select(i -> !constantHeads[i] && headClasses[i] == null);
+        this.constantForNull = select(i -> constantHeads[i] && headConstants[i] == null);
+        for (int i = 0; i < bodies.length; i++) {
+            Object constant = headConstants[i];
+            if (constantHeads[i] && constant != null && !byConstant.containsKey(constant)) {
+                byConstant.put(constant, select(j -> constantHeads[j] && constant.equals(headConstants[j])));
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface CaseFilter {
+        boolean test(int i);
+    }
+
+    /** Returns the indices of all cases satisfying {@code filter}, in increasing order. */
+    private int @NotNull [] select(@NotNull CaseFilter filter) {
+        int[] selected = new int[bodies.length];
+        int count = 0;
+        for (int i = 0; i < bodies.length; i++)
+            if (filter.test(i))
+                selected[count++] = i;
+        return count == 0 ? NONE : Arrays.copyOf(selected, count);
+    }
+
+    /** Creates the index for the given cases.
+     * @return the index, or {@code null} if no case can be excluded by its head (in which case all cases need to be tried)
+     */
+    @Nullable
+    static CaseDispatch create(@NotNull Case<?, ?, ?> @NotNull [] cases) {
+        Class<?>[] headClasses = new Class<?>[cases.length];
+        boolean[] constantHeads = new boolean[cases.length];
+        Object[] headConstants = new Object[cases.length];
+        Pattern<?>[] bodies = new Pattern<?>[cases.length];
+        boolean found = false;
+        for (int i = 0; i < cases.length; i++) {
+            Pattern<?> pattern = cases[i].pattern();
+            if (pattern instanceof Patterns.Instance)
+                pattern = ((Patterns.Instance<?>) pattern).instancePattern;
+            if (pattern instanceof Patterns.InstanceOf) {
+                Patterns.InstanceOf<?> instanceOf = (Patterns.InstanceOf<?>) pattern;
+                headClasses[i] = instanceOf.clazz;
+                bodies[i] = instanceOf.pattern;
+                found = true;
+            } else if (pattern instanceof Patterns.IsValue) {
+                constantHeads[i] = true;
+                headConstants[i] = ((Patterns.IsValue<?>) pattern).expected;
+                bodies[i] = Patterns.Any;
+                found = true;
+            } else
+                bodies[i] = cases[i].pattern();
+        }
+        return found ? new CaseDispatch(headClasses, constantHeads, headConstants, bodies) : null;
+    }
+
+    /** Returns the indices of the cases that can match {@code value} and that are not comparisons with a constant,
+     * in increasing order. */
+    int @NotNull [] candidates(@Nullable Object value) {
+        return value == null ? forNull : byClass.get(value.getClass());
+    }
+
+    /** Returns the indices of the cases that compare with a constant equal to {@code value}, in increasing order.
+     * All cases not returned by {@link #candidates} or {@link #constantCandidates} are guaranteed not to match {@code value}. */
+    int @NotNull [] constantCandidates(@Nullable Object value) {
+        if (value == null)
+            return constantForNull;
+        if (byConstant.isEmpty())
+            return NONE;
+        if (value instanceof Enum)
+            return byOrdinal.get(value.getClass())[((Enum<?>) value).ordinal()];
+        int[] cases = byConstant.get(value);
+        return cases == null ? NONE : cases;
+    }
+
+    /** The pattern that needs to be matched for case {@code i} when that case was returned by
+     * {@link #candidates} or {@link #constantCandidates}. */
+    @NotNull
+    Pattern<?> body(int i) {
+        return bodies[i];
+    }
+}
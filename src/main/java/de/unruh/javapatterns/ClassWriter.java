@@ -0,0 +1,357 @@
+package de.unruh.javapatterns;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/** A minimal writer for class files (version 52, i.e., Java 8), as needed by {@link MatcherGenerator}.<p>
+ *
+ * Only what is needed for generated matchers is supported: a class without fields and interfaces,
+ * and methods whose locals have a fixed type throughout the method. The latter makes it possible to
+ * use the same stack map frame (all locals, empty stack) at every branch target.
+ */
+final class ClassWriter {
+    /** Stack size of all methods. (Generated code never needs more than a few stack slots.) */
+    private static final int MAX_STACK = 8;
+
+    static final int ACONST_NULL = 0x01, ICONST_0 = 0x03, ICONST_1 = 0x04, BIPUSH = 0x10, SIPUSH = 0x11,
+            LDC_W = 0x13, ILOAD = 0x15, ALOAD = 0x19, AALOAD = 0x32, ISTORE = 0x36, ASTORE = 0x3a,
+            IFEQ = 0x99, IFNE = 0x9a, IF_ICMPNE = 0xa0, IF_ICMPLT = 0xa1, IF_ACMPEQ = 0xa5, IF_ACMPNE = 0xa6,
+            GOTO = 0xa7, TABLESWITCH = 0xaa, IRETURN = 0xac, RETURN = 0xb1, GETSTATIC = 0xb2, GETFIELD = 0xb4,
+            INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8, INVOKEINTERFACE = 0xb9,
+            ARRAYLENGTH = 0xbe, CHECKCAST = 0xc0, INSTANCEOF = 0xc1, IFNULL = 0xc6, IFNONNULL = 0xc7;
+
+    /** Thrown if a method exceeds the limits of the class file format (or of this writer). */
+    static final class TooLarge extends RuntimeException {
+        @Contract(pure = true)
+        TooLarge(@NotNull String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<List<Object>, Integer> poolEntries = new HashMap<>();
+    private int poolCount = 1;
+    private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+    private final DataOutputStream methods = new DataOutputStream(methodBytes);
+    private int methodCount = 0;
+    private final int thisClass;
+    private final int superClass;
+
+    /** @param name internal name of the class (e.g., {@code de/unruh/javapatterns/Foo})
+     * @param superName internal name of the superclass */
+    ClassWriter(@NotNull String name, @NotNull String superName) {
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+    }
+
+    /** Index of the constant pool entry of the class being written. */
+    int thisClass() {
+        return thisClass;
+    }
+
+    private int entry(@NotNull List<Object> key, @NotNull PoolWriter writer) {
+        Integer index = poolEntries.get(key);
+        if (index != null) return index;
+        try {
+            writer.write();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        index = poolCount++;
+        // The number of entries plus one must fit into an unsigned short
+        if (index >= 0xffff) throw new TooLarge("constant pool too large");
+        poolEntries.put(key, index);
+        return index;
+    }
+
+    @FunctionalInterface
+    private interface PoolWriter {
+        void write() throws IOException;
+    }
+
+    int utf8(@NotNull String string) {
+        return entry(Arrays.asList(1, string), () -> {
+            pool.writeByte(1);
+            pool.writeUTF(string);
+        });
+    }
+
+    int integer(int value) {
+        return entry(Arrays.asList(3, value), () -> {
+            pool.writeByte(3);
+            pool.writeInt(value);
+        });
+    }
+
+    int classRef(@NotNull String internalName) {
+        int name = utf8(internalName);
+        return entry(Arrays.asList(7, internalName), () -> {
+            pool.writeByte(7);
+            pool.writeShort(name);
+        });
+    }
+
+    private int nameAndType(@NotNull String name, @NotNull String descriptor) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        return entry(Arrays.asList(12, name, descriptor), () -> {
+            pool.writeByte(12);
+            pool.writeShort(nameIndex);
+            pool.writeShort(descriptorIndex);
+        });
+    }
+
+    private int memberRef(int tag, @NotNull String owner, @NotNull String name, @NotNull String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        return entry(Arrays.asList(tag, owner, name, descriptor), () -> {
+            pool.writeByte(tag);
+            pool.writeShort(ownerIndex);
+            pool.writeShort(nameAndType);
+        });
+    }
+
+    int fieldRef(@NotNull String owner, @NotNull String name, @NotNull String descriptor) {
+        return memberRef(9, owner, name, descriptor);
+    }
+
+    int methodRef(@NotNull String owner, @NotNull String name, @NotNull String descriptor) {
+        return memberRef(10, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(@NotNull String owner, @NotNull String name, @NotNull String descriptor) {
+        return memberRef(11, owner, name, descriptor);
+    }
+
+    /** A position in the code of a {@link Code}, possibly not known yet. */
+    static final class Label {
+        private int position = -1;
+    }
+
+    /** The code of a method under construction. */
+    final class Code {
+        private byte[] code = new byte[256];
+        private int length = 0;
+        /** Verification types of the locals (encoded as in a stack map frame). */
+        private final byte[] localTypes;
+        private final int localCount;
+        private final List<Object[]> jumps = new ArrayList<>();
+        private final TreeSet<Integer> frames = new TreeSet<>();
+        private boolean unreachable = false;
+
+        /** @param localTypes the types of the locals: internal class names, or {@code "I"} for {@code int} locals */
+        Code(@NotNull List<String> localTypes) {
+            if (localTypes.size() > 0xff) throw new TooLarge("too many locals");
+            localCount = localTypes.size();
+            ByteArrayOutputStream types = new ByteArrayOutputStream();
+            for (String type : localTypes) {
+                if (type.equals("I"))
+                    types.write(1);
+                else {
+                    int index = classRef(type);
+                    types.write(7);
+                    types.write(index >> 8);
+                    types.write(index);
+                }
+            }
+            this.localTypes = types.toByteArray();
+        }
+
+        private void u1(int b) {
+            if (length == code.length) code = Arrays.copyOf(code, 2 * length);
+            code[length++] = (byte) b;
+        }
+
+        private void u2(int s) {
+            u1(s >> 8);
+            u1(s);
+        }
+
+        private void u4(int i) {
+            u2(i >> 16);
+            u2(i);
+        }
+
+        /** Starts a new instruction. (Code following an unconditional jump needs a stack map frame.) */
+        private void instruction(int opcode) {
+            if (unreachable) {
+                frames.add(length);
+                unreachable = false;
+            }
+            u1(opcode);
+        }
+
+        /** Emits an instruction without operands. */
+        void op(int opcode) {
+            instruction(opcode);
+            if (opcode == IRETURN || opcode == RETURN) unreachable = true;
+        }
+
+        void local(int opcode, int index) {
+            instruction(opcode);
+            u1(index);
+        }
+
+        void pushInt(int value) {
+            if (value >= -128 && value <= 127) {
+                instruction(BIPUSH);
+                u1(value);
+            } else if (value >= -32768 && value <= 32767) {
+                instruction(SIPUSH);
+                u2(value);
+            } else {
+                instruction(LDC_W);
+                u2(integer(value));
+            }
+        }
+
+        /** Emits an instruction with a constant pool index as operand. */
+        void ref(int opcode, int index) {
+            instruction(opcode);
+            u2(index);
+        }
+
+        void invokeInterface(int index, int argumentSlots) {
+            instruction(INVOKEINTERFACE);
+            u2(index);
+            u1(argumentSlots + 1);
+            u1(0);
+        }
+
+        /** Emits a jump. The stack must be empty after the jump (and at {@code target}). */
+        void jump(int opcode, @NotNull Label target) {
+            int at = length;
+            instruction(opcode);
+            jumps.add(new Object[] {at, length, target});
+            u2(0);
+            if (opcode == GOTO) unreachable = true;
+        }
+
+        /** Emits a {@code tableswitch} for values {@code 0,…,targets.length-1}. */
+        void tableSwitch(@NotNull Label defaultTarget, @NotNull Label @NotNull [] targets) {
+            int at = length;
+            instruction(TABLESWITCH);
+            while (length % 4 != 0) u1(0);
+            jumps.add(new Object[] {at, length, defaultTarget, 4});
+            u4(0);
+            u4(0);
+            u4(targets.length - 1);
+            for (Label target : targets) {
+                jumps.add(new Object[] {at, length, target, 4});
+                u4(0);
+            }
+            unreachable = true;
+        }
+
+        /** Sets the position of {@code label} to the current position. The stack must be empty here. */
+        void bind(@NotNull Label label) {
+            label.position = length;
+            frames.add(length);
+            unreachable = false;
+        }
+
+        /** Adds the method with this code to the class. */
+        void finish(int access, @NotNull String name, @NotNull String descriptor) {
+            for (Object[] jump : jumps) {
+                int at = (Integer) jump[0];
+                int field = (Integer) jump[1];
+                int position = ((Label) jump[2]).position;
+                if (position < 0) throw new IllegalStateException("unbound label");
+                int offset = position - at;
+                if (jump.length > 3) {
+                    code[field] = (byte) (offset >> 24);
+                    code[field + 1] = (byte) (offset >> 16);
+                    code[field + 2] = (byte) (offset >> 8);
+                    code[field + 3] = (byte) offset;
+                } else {
+                    if (offset < -32768 || offset > 32767) throw new TooLarge("jump too far");
+                    code[field] = (byte) (offset >> 8);
+                    code[field + 1] = (byte) offset;
+                }
+            }
+            if (length > 65535) throw new TooLarge("method too large");
+            if (!frames.isEmpty() && frames.last() >= length)
+                throw new IllegalStateException("label at end of code");
+
+            try {
+                ByteArrayOutputStream stackMapBytes = new ByteArrayOutputStream();
+                DataOutputStream stackMap = new DataOutputStream(stackMapBytes);
+                stackMap.writeShort(frames.size());
+                int previous = -1;
+                for (int frame : frames) {
+                    stackMap.writeByte(255); // full_frame
+                    stackMap.writeShort(frame - previous - 1);
+                    stackMap.writeShort(localCount);
+                    stackMap.write(localTypes);
+                    stackMap.writeShort(0);
+                    previous = frame;
+                }
+
+                int nameIndex = utf8(name);
+                int descriptorIndex = utf8(descriptor);
+                int codeName = utf8("Code");
+                int stackMapName = utf8("StackMapTable");
+                methods.writeShort(access);
+                methods.writeShort(nameIndex);
+                methods.writeShort(descriptorIndex);
+                methods.writeShort(1);
+                methods.writeShort(codeName);
+                int stackMapLength = frames.isEmpty() ? 0 : 6 + stackMapBytes.size();
+                methods.writeInt(12 + length + stackMapLength);
+                methods.writeShort(MAX_STACK);
+                methods.writeShort(localCount);
+                methods.writeInt(length);
+                methods.write(code, 0, length);
+                methods.writeShort(0); // exception table
+                if (frames.isEmpty())
+                    methods.writeShort(0);
+                else {
+                    methods.writeShort(1);
+                    methods.writeShort(stackMapName);
+                    methods.writeInt(stackMapBytes.size());
+                    stackMapBytes.writeTo(methods);
+                }
+                methodCount++;
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    /** Returns the class file.
+     * @throws TooLarge if the class has too many methods */
+    byte @NotNull [] toByteArray() {
+        if (methodCount > 0xffff) throw new TooLarge("too many methods");
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(52);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(0x0030); // ACC_FINAL | ACC_SUPER
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // fields
+            out.writeShort(methodCount);
+            methodBytes.writeTo(out);
+            out.writeShort(0); // attributes
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package de.unruh.javapatterns;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/** Shares tests and destructuring steps between the cases of a {@link Matcher}.<p>
+ *
+ * The pattern of each case is split into <i>tests</i> and <i>steps</i>:
+ * <ul>
+ * <li>A test is a check of a value reachable from the matched value (its <i>path</i>),
+ * for example "the matched value is an array of length 2" or "the first element of the matched value is
+ * an {@link Integer}". Tests are derived from the built-in patterns {@link Patterns#Is(Object) Is},
+ * {@link Patterns#Null Null}, {@link Patterns#NotNull NotNull}, {@link Patterns#Instance(Class, Pattern) Instance},
+ * {@link Patterns#Array(Pattern[]) Array}, {@link Patterns#Optional(Pattern) Optional}, and
+ * {@link Patterns#Map Map}, looking through {@link Patterns#And And}.</li>
+ * <li>A step applies any other pattern (e.g., a {@link Capture}) to the value at some path.</li>
+ * </ul>
+ * Equal tests and equal paths of different cases are represented by the same object (a DAG), and their results
+ * are cached in the {@link MatchManager} for the duration of one match. So when several cases start with the same
+ * test (or access the same array element), it is performed at most once per matched value.<p>
+ *
+ * A case then matches if all its tests succeed (in order, so that a path is only accessed once the tests
+ * guaranteeing its existence succeeded) and then all its steps succeed (in the original order).
+ * Tests are thus performed before steps that precede them in the original pattern. Most tests cannot fail
+ * with an exception, but {@link TestKind#EQUALS} invokes {@link Object#equals} of the constant, and the value of a
+ * {@link PathKind#MAP_VALUE} path (tested by {@link TestKind#CONTAINS_KEY}) is looked up with {@link Map#get}.
+ * If such code throws an exception or has side effects, and so does a step (e.g., a predicate in
+ * {@link Patterns#Is(java.util.function.Predicate) Is}), the reordering is observable: a case may be rejected by a test
+ * before the step would have thrown, or vice versa. This difference to
+ * {@link Match#match(Object, Case[]) Match.match} is documented in {@link Matcher}.
+ */
+final class DecisionDag {
+    /** Marks path values in {@link MatchManager#pathValues} that have not been computed yet in the current match. */
+    private static final Object UNKNOWN = new Object();
+    private static final byte PASSED = 1;
+    private static final byte FAILED = 2;
+
+    private enum PathKind { ROOT, ELEMENT, REST, OPTIONAL_VALUE, MAP_VALUE }
+    private enum TestKind { NULL, NOT_NULL, INSTANCE, EQUALS, LENGTH, MIN_LENGTH, PRESENT, EMPTY, CONTAINS_KEY }
+
+    /** A value derived from the matched value. */
+    private static final class Path {
+        final int id;
+        @Nullable final Path parent;
+        @NotNull final PathKind kind;
+        /** The array index for {@link PathKind#ELEMENT}, the start index for {@link PathKind#REST}. */
+        final int index;
+        /** The key for {@link PathKind#MAP_VALUE}. (The value of such a path is {@link Patterns.MapOf#MISSING}
+         * if the key is missing.) */
+        @Nullable final Object key;
+
+        @Contract(pure = true)
+        Path(int id, @Nullable Path parent, @NotNull PathKind kind, int index, @Nullable Object key) {
+            this.id = id;
+            this.parent = parent;
+            this.kind = kind;
+            this.index = index;
+            this.key = key;
+        }
+    }
+
+    /** A check of the value at a {@link Path}. */
+    private static final class Test {
+        final int id;
+        @NotNull final Path path;
+        @NotNull final TestKind kind;
+        /** The length for {@link TestKind#LENGTH} and {@link TestKind#MIN_LENGTH}. */
+        final int length;
+        /** The class for {@link TestKind#INSTANCE}, the constant for {@link TestKind#EQUALS}.
+         * ({@link TestKind#CONTAINS_KEY} is a test of a {@link PathKind#MAP_VALUE} path, the key is stored there.) */
+        @Nullable final Object argument;
+
+        @Contract(pure = true)
+        Test(int id, @NotNull Path path, @NotNull TestKind kind, int length, @Nullable Object argument) {
+            this.id = id;
+            this.path = path;
+            this.kind = kind;
+            this.length = length;
+            this.argument = argument;
+        }
+    }
+
+    @NotNull private final Map<List<Object>, Path> paths = new HashMap<>();
+    @NotNull private final Map<List<Object>, Test> tests = new HashMap<>();
+    @NotNull private final Path root = new Path(0, null, PathKind.ROOT, 0, null);
+    @NotNull private final Pattern<?> @NotNull [] patterns;
+
+    /** Splits the given patterns (one per case) into tests and steps.
+     * The pattern to be used for case {@code i} instead of {@code bodies[i]} is then returned by {@link #pattern}. */
+    DecisionDag(@NotNull Pattern<?> @NotNull [] bodies) {
+        patterns = new Pattern<?>[bodies.length];
+        for (int i = 0; i < bodies.length; i++) {
+            List<Test> caseTests = new ArrayList<>();
+            List<Path> stepPaths = new ArrayList<>();
+            List<Pattern<?>> stepPatterns = new ArrayList<>();
+            split(bodies[i], root, caseTests, stepPaths, stepPatterns);
+            if (caseTests.isEmpty() && stepPatterns.size() == 1 && stepPaths.get(0) == root)
+                patterns[i] = stepPatterns.get(0);
+            else
+                patterns[i] = new SharedCase(caseTests.toArray(new Test[0]), stepPaths.toArray(new Path[0]),
+                        stepPatterns.toArray(new Pattern<?>[0]));
+        }
+    }
+
+    @NotNull
+    private Path path(@NotNull Path parent, @NotNull PathKind kind, int index, @Nullable Object key) {
+        return paths.computeIfAbsent(Arrays.asList(parent, kind, index, key),
+                k -> new Path(paths.size() + 1, parent, kind, index, key));
+    }
+
+    @NotNull
+    private Test test(@NotNull Path path, @NotNull TestKind kind, int length, @Nullable Object argument) {
+        return tests.computeIfAbsent(Arrays.asList(path, kind, length, argument),
+                k -> new Test(tests.size(), path, kind, length, argument));
+    }
+
+    private void split(@NotNull Pattern<?> pattern, @NotNull Path path, @NotNull List<Test> caseTests,
+                       @NotNull List<Path> stepPaths, @NotNull List<Pattern<?>> stepPatterns) {
+        if (pattern instanceof Patterns.Instance)
+            pattern = ((Patterns.Instance<?>) pattern).instancePattern;
+
+        if (pattern == Patterns.Any) {
+            return;
+        } else if (pattern == Patterns.Null) {
+            caseTests.add(test(path, TestKind.NULL, 0, null));
+        } else if (pattern instanceof Patterns.IsValue) {
+            caseTests.add(test(path, TestKind.EQUALS, 0, ((Patterns.IsValue<?>) pattern).expected));
+        } else if (pattern instanceof Patterns.NotNullOf) {
+            caseTests.add(test(path, TestKind.NOT_NULL, 0, null));
+            split(((Patterns.NotNullOf<?>) pattern).pattern, path, caseTests, stepPaths, stepPatterns);
+        } else if (pattern instanceof Patterns.InstanceOf) {
+            Patterns.InstanceOf<?> instanceOf = (Patterns.InstanceOf<?>) pattern;
+            caseTests.add(test(path, TestKind.INSTANCE, 0, instanceOf.clazz));
+            split(instanceOf.pattern, path, caseTests, stepPaths, stepPatterns);
+        } else if (pattern instanceof Patterns.AllOf) {
+            for (Pattern<?> conjunct : ((Patterns.AllOf<?>) pattern).patterns)
+                split(conjunct, path, caseTests, stepPaths, stepPatterns);
+        } else if (pattern instanceof Patterns.ArrayOf) {
+            Pattern<?>[] elements = ((Patterns.ArrayOf<?>) pattern).patterns;
+            caseTests.add(test(path, TestKind.LENGTH, elements.length, null));
+            for (int i = 0; i < elements.length; i++)
+                split(elements[i], path(path, PathKind.ELEMENT, i, null), caseTests, stepPaths, stepPatterns);
+        } else if (pattern instanceof Patterns.ArrayWithRest) {
+            Patterns.ArrayWithRest<?> array = (Patterns.ArrayWithRest<?>) pattern;
+            caseTests.add(test(path, TestKind.MIN_LENGTH, array.these.length, null));
+            for (int i = 0; i < array.these.length; i++)
+                split(array.these[i], path(path, PathKind.ELEMENT, i, null), caseTests, stepPaths, stepPatterns);
+            split(array.more, path(path, PathKind.REST, array.these.length, null), caseTests, stepPaths, stepPatterns);
+        } else if (pattern instanceof Patterns.OptionalOf) {
+            caseTests.add(test(path, TestKind.PRESENT, 0, null));
+            split(((Patterns.OptionalOf<?>) pattern).pattern, path(path, PathKind.OPTIONAL_VALUE, 0, null),
+                    caseTests, stepPaths, stepPatterns);
+        } else if (pattern instanceof Patterns.OptionalEmpty) {
+            caseTests.add(test(path, TestKind.EMPTY, 0, null));
+        } else if (pattern instanceof Patterns.MapOf && ((Patterns.MapOf<?, ?>) pattern).rest == null) {
+            caseTests.add(test(path, TestKind.NOT_NULL, 0, null));
+            for (Map.Entry<?, ? extends Pattern<?>> entry : ((Patterns.MapOf<?, ?>) pattern).patterns) {
+                // A single lookup provides both the test for the key and the value
+                Path value = path(path, PathKind.MAP_VALUE, 0, entry.getKey());
+                caseTests.add(test(value, TestKind.CONTAINS_KEY, 0, null));
+                split(entry.getValue(), value, caseTests, stepPaths, stepPatterns);
+            }
+        } else {
+            stepPaths.add(path);
+            stepPatterns.add(pattern);
+        }
+    }
+
+    /** The pattern to be used for case {@code i}. It must only be applied to the matched value, using a
+     * {@link MatchManager} that was prepared by {@link #prepare} for the current match. */
+    @NotNull
+    Pattern<?> pattern(int i) {
+        return patterns[i];
+    }
+
+    /** Prepares {@code mgr} for a new match (forgets all cached test results and path values). */
+    void prepare(@NotNull MatchManager mgr) {
+        int testCount = tests.size();
+        if (testCount == 0) return;
+        if (mgr.testResults == null || mgr.testResults.length < testCount)
+            mgr.testResults = new byte[testCount];
+        else
+            Arrays.fill(mgr.testResults, 0, testCount, (byte) 0);
+        int pathCount = paths.size() + 1;
+        if (mgr.pathValues == null || mgr.pathValues.length < pathCount)
+            mgr.pathValues = new Object[pathCount];
+        Arrays.fill(mgr.pathValues, 0, pathCount, UNKNOWN);
+        mgr.pathValueCount = pathCount;
+    }
+
+    @Nullable
+    private static Object value(@NotNull MatchManager mgr, @NotNull Path path, @Nullable Object root) {
+        if (path.parent == null) return root;
+        Object[] values = mgr.pathValues;
+        assert values != null;
+        Object value = values[path.id];
+        if (value != UNKNOWN) return value;
+        Object parent = value(mgr, path.parent, root);
+        switch (path.kind) {
+            case ELEMENT: value = ((Object[]) parent)[path.index]; break;
+            case REST:
+                Object[] array = (Object[]) parent;
+                value = Arrays.copyOfRange(array, path.index, array.length);
+                break;
+            case OPTIONAL_VALUE: value = ((Optional<?>) parent).get(); break;
+            case MAP_VALUE: value = Patterns.MapOf.lookup(parent, path.key); break;
+            default: throw new AssertionError(path.kind);
+        }
+        values[path.id] = value;
+        return value;
+    }
+
+    private static boolean check(@NotNull MatchManager mgr, @NotNull Test test, @Nullable Object root) {
+        byte[] results = mgr.testResults;
+        assert results != null;
+        byte result = results[test.id];
+        if (result != 0) return result == PASSED;
+        Object value = value(mgr, test.path, root);
+        boolean passed;
+        switch (test.kind) {
+            case NULL: passed = value == null; break;
+            case NOT_NULL: passed = value != null; break;
+            case INSTANCE: passed = ((Class<?>) Objects.requireNonNull(test.argument)).isInstance(value); break;
+            case EQUALS: passed = Objects.equals(test.argument, value); break;
+            case LENGTH: passed = value instanceof Object[] && ((Object[]) value).length == test.length; break;
+            case MIN_LENGTH: passed = value instanceof Object[] && ((Object[]) value).length >= test.length; break;
+            case PRESENT: passed = value instanceof Optional && ((Optional<?>) value).isPresent(); break;
+            case EMPTY: passed = value instanceof Optional && !((Optional<?>) value).isPresent(); break;
+            case CONTAINS_KEY: passed = value != Patterns.MapOf.MISSING; break;
+            default: throw new AssertionError(test.kind);
+        }
+        results[test.id] = passed ? PASSED : FAILED;
+        return passed;
+    }
+
+    /** The pattern of one case, expressed by (possibly shared) tests and steps. */
+    private static final class SharedCase extends Pattern<Object> {
+        @NotNull private final Test @NotNull [] tests;
+        @NotNull private final Path @NotNull [] stepPaths;
+        @NotNull private final Pattern<?> @NotNull [] stepPatterns;
+
+        @Contract(pure = true)
+        SharedCase(@NotNull Test @NotNull [] tests, @NotNull Path @NotNull [] stepPaths,
+                   @NotNull Pattern<?> @NotNull [] stepPatterns) {
+            this.tests = tests;
+            this.stepPaths = stepPaths;
+            this.stepPatterns = stepPatterns;
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable Object value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean matches(@NotNull MatchManager mgr, @Nullable Object value) {
+            for (Test test : tests)
+                if (!check(mgr, test, value)) return false;
+            for (int i = 0; i < stepPatterns.length; i++)
+                if (!((Pattern<Object>) stepPatterns[i]).matches(mgr, value(mgr, stepPaths[i], value)))
+                    return false;
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "SharedCase(" + tests.length + " tests, " + stepPatterns.length + " steps)";
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package de.unruh.javapatterns;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/** A capturing variable for {@code double} values.<p>
+ *
+ * Behaves like a {@link Capture}{@code <Double>} but stores the captured value unboxed
+ * (and can thus be assigned without allocation when used in a {@link DoublePattern} context,
+ * e.g., in {@link Patterns#AfterDouble}). The value is read with {@link #getDouble()}.<p>
+ *
+ * Create with {@link Pattern#doubleCapture}.
+ */
+public final class DoubleCapture extends DoublePattern {
+    @NotNull private final String name;
+    /** Where this capture was last stored in a {@link MatchManager} frame, see {@link Capture#slotHint}. */
+    int slotHint;
+
+    @Contract(pure = true)
+    DoubleCapture(@NotNull String name) {
+        this.name = name;
+    }
+
+    /** Returns whether this capture has been assigned (in the current pattern match, or in an enclosing
+     * one in the same thread). */
+    public boolean isAssigned() {
+        return MatchManager.find(this, slotHint) != null;
+    }
+
+    /** The current value of the capture.
+     * @throws InvalidPatternMatch if the capture has not been assigned in the current pattern
+     */
+    @Contract(pure = true)
+    public double getDouble() {
+        MatchManager mgr = MatchManager.find(this, slotHint);
+        if (mgr == null)
+            throw new InvalidPatternMatch("Reading undefined capture variable " + name);
+        int index = mgr.found();
+        slotHint = index;
+        return Double.longBitsToDouble(mgr.primitive(index));
+    }
+
+    @Override
+    public boolean matchesDouble(@NotNull MatchManager mgr, double value) {
+        slotHint = mgr.assignPrimitive(this, Double.doubleToRawLongBits(value));
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,36 @@
+package de.unruh.javapatterns;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/** A pattern that matches {@code double} values.<p>
+ *
+ * Such a pattern can be matched against an unboxed {@code double} using {@link #matchesDouble}
+ * (e.g., by {@link Patterns#AfterDouble}), and against a boxed {@link Double} like any other pattern
+ * ({@code null} is rejected then).<p>
+ *
+ * To implement such a pattern, only {@link #matchesDouble} and {@link #toString()} need to be implemented.
+ *
+ * @see DoubleCapture
+ */
+public abstract class DoublePattern extends Pattern<Double> {
+    /** Performs the pattern match on an unboxed value.
+     * Same as {@link #matches(MatchManager, Double) matches}, see there.
+     *
+     * @param mgr the {@link MatchManager} that manages the life-cycle of the captures in this
+     *            pattern match. Same as in {@link #apply apply}.
+     * @param value the value to be pattern-matched
+     * @return whether the value matched the pattern
+     */
+    public abstract boolean matchesDouble(@NotNull MatchManager mgr, double value);
+
+    @Override
+    public final void apply(@NotNull MatchManager mgr, @Nullable Double value) throws PatternMatchReject {
+        if (!matches(mgr, value)) reject();
+    }
+
+    @Override
+    public final boolean matches(@NotNull MatchManager mgr, @Nullable Double value) {
+        return value != null && matchesDouble(mgr, value);
+    }
+}
@@ -0,0 +1,119 @@
+package de.unruh.javapatterns;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/** Searches for an assignment of distinct elements of a collection to patterns
+ * (for {@link Patterns#ContainsAll}).<p>
+ *
+ * The patterns are split into two groups:
+ * <ul>
+ * <li>Patterns that may assign captures ({@code searched}). Since the result of later patterns may depend on the captures
+ *     they assign, they are matched in order against all unused elements, backtracking (and resetting the captures
+ *     using {@link MatchManager#rollback}) if the remaining patterns cannot be assigned.</li>
+ * <li>Patterns that assign no captures ({@code free}). Whether such a pattern matches an element does not depend on
+ *     the other patterns in this group, so they are assigned by a maximum bipartite matching (augmenting paths).
+ *     This takes polynomial time (each pattern is matched against each element at most once),
+ *     instead of trying all permutations.</li>
+ * </ul>
+ * An instance is used for a single search.
+ */
+final class ElementAssignment {
+    private static final byte UNKNOWN = 0;
+    private static final byte MATCHES = 1;
+    private static final byte FAILS = 2;
+
+    @NotNull private final MatchManager mgr;
+    @NotNull private final Pattern<Object> @NotNull [] searched;
+    @NotNull private final Pattern<Object> @NotNull [] free;
+    @Nullable private final Object @NotNull [] elements;
+    private final int count;
+    /** Which elements are assigned to a pattern from {@code searched}. */
+    private final boolean @NotNull [] used;
+    /** For each element, the index of the pattern in {@code free} it is assigned to, or -1. */
+    private final int @NotNull [] owner;
+    /** The elements visited in the current augmenting path search. */
+    private final boolean @NotNull [] visited;
+    /** Cached results of matching {@code free[i]} against {@code elements[j]} (at index {@code i*count+j}). */
+    private final byte @NotNull [] results;
+
+    /**
+     * @param searched the patterns that may assign captures
+     * @param free the patterns that assign no captures
+     * @param elements the elements to assign (only the first {@code count} are used)
+     */
+    @SuppressWarnings("unchecked")
+    ElementAssignment(@NotNull MatchManager mgr, @NotNull Pattern<?> @NotNull [] searched, @NotNull Pattern<?> @NotNull [] free,
+                      @Nullable Object @NotNull [] elements, int count) {
+        this.mgr = mgr;
+        this.searched = (Pattern<Object>[]) searched;
+        this.free = (Pattern<Object>[]) free;
+        this.elements = elements;
+        this.count = count;
+        used = new boolean[count];
+        owner = new int[count];
+        visited = new boolean[count];
+        results = new byte[free.length * count];
+    }
+
+    /** Whether there is an assignment. If so, the captures assigned by the patterns from {@code searched}
+     * (for the assignment that was found) remain assigned. */
+    boolean search() {
+        if (count < searched.length + free.length) return false;
+        return search(0);
+    }
+
+    private boolean search(int i) {
+        if (i == searched.length)
+            return assignFree();
+        Pattern<Object> pattern = searched[i];
+        for (int j = 0; j < count; j++) {
+            if (used[j]) continue;
+            int mark = mgr.mark();
+            if (pattern.matches(mgr, elements[j])) {
+                used[j] = true;
+                if (search(i + 1)) return true;
+                used[j] = false;
+            }
+            mgr.rollback(mark);
+        }
+        return false;
+    }
+
+    private boolean assignFree() {
+        if (free.length == 0) return true;
+        // Results depend on the captures assigned by the searched patterns
+        Arrays.fill(results, UNKNOWN);
+        Arrays.fill(owner, -1);
+        for (int i = 0; i < free.length; i++) {
+            Arrays.fill(visited, false);
+            if (!augment(i)) return false;
+        }
+        return true;
+    }
+
+    /** Tries to assign an element to {@code free[i]}, possibly reassigning other free patterns. */
+    private boolean augment(int i) {
+        for (int j = 0; j < count; j++) {
+            if (used[j] || visited[j] || !matches(i, j)) continue;
+            visited[j] = true;
+            if (owner[j] < 0 || augment(owner[j])) {
+                owner[j] = i;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matches(int i, int j) {
+        int index = i * count + j;
+        byte result = results[index];
+        if (result == UNKNOWN) {
+            result = free[i].matches(mgr, elements[j]) ? MATCHES : FAILS;
+            results[index] = result;
+        }
+        return result == MATCHES;
+    }
+}
@@ -0,0 +1,36 @@
+package de.unruh.javapatterns;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/** Superclass of the classes generated by {@link MatcherGenerator}.<p>
+ *
+ * A generated class contains the code of all cases of one {@link Matcher}. Each case is represented by
+ * an instance of the generated class, with {@link #caseIndex} telling which code to run in {@link #matches}.
+ */
+abstract class GeneratedPattern extends Pattern<Object> {
+    /** The objects referenced by the generated code (subpatterns, classes, constants, …). */
+    final Object @NotNull [] constants;
+    /** The index of the case whose pattern this is. */
+    final int caseIndex;
+    /** The pattern this is compiled from. */
+    @NotNull private final Pattern<?> source;
+
+    @Contract(pure = true)
+    GeneratedPattern(Object @NotNull [] constants, int caseIndex, @NotNull Pattern<?> source) {
+        this.constants = constants;
+        this.caseIndex = caseIndex;
+        this.source = source;
+    }
+
+    @Override
+    public final void apply(@NotNull MatchManager mgr, @Nullable Object value) throws PatternMatchReject {
+        if (!matches(mgr, value)) reject();
+    }
+
+    @Override
+    public String toString() {
+        return source.toString();
+    }
+}
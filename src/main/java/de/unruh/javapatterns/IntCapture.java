@@ -0,0 +1,54 @@
+package de.unruh.javapatterns;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/** A capturing variable for {@code int} values.<p>
+ *
+ * Behaves like a {@link Capture}{@code <Integer>} but stores the captured value unboxed
+ * (and can thus be assigned without allocation when used in an {@link IntPattern} context,
+ * e.g., in {@link Patterns#AfterInt}). The value is read with {@link #getInt()}, and can be compared
+ * with {@link Patterns#IsInt(IntCapture)}.<p>
+ *
+ * Create with {@link Pattern#intCapture}.
+ */
+public final class IntCapture extends IntPattern {
+    @NotNull private final String name;
+    /** Where this capture was last stored in a {@link MatchManager} frame, see {@link Capture#slotHint}. */
+    int slotHint;
+
+    @Contract(pure = true)
+    IntCapture(@NotNull String name) {
+        this.name = name;
+    }
+
+    /** Returns whether this capture has been assigned (in the current pattern match, or in an enclosing
+     * one in the same thread). */
+    public boolean isAssigned() {
+        return MatchManager.find(this, slotHint) != null;
+    }
+
+    /** The current value of the capture.
+     * @throws InvalidPatternMatch if the capture has not been assigned in the current pattern
+     */
+    @Contract(pure = true)
+    public int getInt() {
+        MatchManager mgr = MatchManager.find(this, slotHint);
+        if (mgr == null)
+            throw new InvalidPatternMatch("Reading undefined capture variable " + name);
+        int index = mgr.found();
+        slotHint = index;
+        return (int) mgr.primitive(index);
+    }
+
+    @Override
+    public boolean matchesInt(@NotNull MatchManager mgr, int value) {
+        slotHint = mgr.assignPrimitive(this, value);
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
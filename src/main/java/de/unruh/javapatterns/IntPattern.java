@@ -0,0 +1,36 @@
+package de.unruh.javapatterns;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/** A pattern that matches {@code int} values.<p>
+ *
+ * Such a pattern can be matched against an unboxed {@code int} using {@link #matchesInt}
+ * (e.g., by {@link Patterns#AfterInt}), and against a boxed {@link Integer} like any other pattern
+ * ({@code null} is rejected then).<p>
+ *
+ * To implement such a pattern, only {@link #matchesInt} and {@link #toString()} need to be implemented.
+ *
+ * @see IntCapture
+ */
+public abstract class IntPattern extends Pattern<Integer> {
+    /** Performs the pattern match on an unboxed value.
+     * Same as {@link #matches(MatchManager, Integer) matches}, see there.
+     *
+     * @param mgr the {@link MatchManager} that manages the life-cycle of the captures in this
+     *            pattern match. Same as in {@link #apply apply}.
+     * @param value the value to be pattern-matched
+     * @return whether the value matched the pattern
+     */
+    public abstract boolean matchesInt(@NotNull MatchManager mgr, int value);
+
+    @Override
+    public final void apply(@NotNull MatchManager mgr, @Nullable Integer value) throws PatternMatchReject {
+        if (!matches(mgr, value)) reject();
+    }
+
+    @Override
+    public final boolean matches(@NotNull MatchManager mgr, @Nullable Integer value) {
+        return value != null && matchesInt(mgr, value);
+    }
+}
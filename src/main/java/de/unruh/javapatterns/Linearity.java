@@ -0,0 +1,134 @@
+package de.unruh.javapatterns;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/** Checks statically that a pattern never assigns a capture twice.<p>
+ *
+ * A pattern is <i>linear</i> if on every path through it, each capture is assigned at most once.
+ * (The alternatives of {@link Patterns#Or Or} are different paths, so the same capture may occur in several of them.
+ * The captures assigned inside {@link Patterns#NoMatch NoMatch} are always reset.) For linear patterns,
+ * the check for re-assigned captures can be skipped at runtime (see {@link MatchManager#linear}).<p>
+ *
+ * The check only understands the built-in patterns from {@link Patterns} (and captures). Other patterns
+ * (e.g., user-defined ones) are considered non-linear, since they could assign arbitrary captures.
+ */
+final class Linearity {
+    private Linearity() {}
+
+    /** Returns whether {@code pattern} is linear. */
+    @Contract(pure = true)
+    static boolean isLinear(@NotNull Pattern<?> pattern) {
+        return assigned(pattern, newSet());
+    }
+
+    /** Returns whether {@code pattern} never assigns a capture (as far as this can be determined statically). */
+    @Contract(pure = true)
+    static boolean assignsNoCaptures(@NotNull Pattern<?> pattern) {
+        Set<Object> assigned = newSet();
+        return assigned(pattern, assigned) && assigned.isEmpty();
+    }
+
+    @NotNull
+    private static Set<Object> newSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /** Adds the captures that may be assigned by {@code pattern} to {@code assigned}
+     * (which contains the captures that may have been assigned before).
+     * @return {@code false} if {@code pattern} may assign a capture that is already in {@code assigned}
+     *         (or contains patterns that are not understood) */
+    private static boolean assigned(@NotNull Pattern<?> pattern, @NotNull Set<Object> assigned) {
+        if (pattern instanceof Patterns.Instance)
+            pattern = ((Patterns.Instance<?>) pattern).instancePattern;
+
+        if (pattern.assignsNoCaptures())
+            return true;
+        if (pattern instanceof Capture || pattern instanceof IntCapture ||
+                pattern instanceof LongCapture || pattern instanceof DoubleCapture)
+            return assigned.add(pattern);
+        if (pattern instanceof Patterns.NotNullOf)
+            return assigned(((Patterns.NotNullOf<?>) pattern).pattern, assigned);
+        if (pattern instanceof Patterns.InstanceOf)
+            return assigned(((Patterns.InstanceOf<?>) pattern).pattern, assigned);
+        if (pattern instanceof Patterns.AllOf)
+            return allAssigned(((Patterns.AllOf<?>) pattern).patterns, assigned);
+        if (pattern instanceof Patterns.ArrayOf)
+            return allAssigned(((Patterns.ArrayOf<?>) pattern).patterns, assigned);
+        if (pattern instanceof Patterns.ArrayWithRest) {
+            Patterns.ArrayWithRest<?> array = (Patterns.ArrayWithRest<?>) pattern;
+            return allAssigned(array.these, assigned) && assigned(array.more, assigned);
+        }
+        if (pattern instanceof Patterns.ArrayPrefixOf) {
+            Patterns.ArrayPrefixOf<?> array = (Patterns.ArrayPrefixOf<?>) pattern;
+            return allAssigned(array.these, assigned) && assigned(array.rest, assigned);
+        }
+        if (pattern instanceof Patterns.SliceOf)
+            return allAssigned(((Patterns.SliceOf<?>) pattern).patterns, assigned);
+        if (pattern instanceof Patterns.SliceWithRest) {
+            Patterns.SliceWithRest<?> slice = (Patterns.SliceWithRest<?>) pattern;
+            return allAssigned(slice.these, assigned) && assigned(slice.rest, assigned);
+        }
+        if (pattern instanceof Patterns.ListOf)
+            return allAssigned(((Patterns.ListOf<?>) pattern).patterns, assigned);
+        if (pattern instanceof Patterns.ListWithRest) {
+            Patterns.ListWithRest<?> list = (Patterns.ListWithRest<?>) pattern;
+            return allAssigned(list.these, assigned) && assigned(list.more, assigned);
+        }
+        if (pattern instanceof Patterns.PrimitiveArrayOf) {
+            Patterns.PrimitiveArrayOf<?, ?> array = (Patterns.PrimitiveArrayOf<?, ?>) pattern;
+            return allAssigned(array.patterns, assigned) && (array.rest == null || assigned(array.rest, assigned));
+        }
+        if (pattern instanceof Patterns.ContainsOf)
+            return assigned(((Patterns.ContainsOf<?>) pattern).pattern, assigned);
+        if (pattern instanceof Patterns.ContainsAllOf)
+            return allAssigned(((Patterns.ContainsAllOf<?>) pattern).patterns, assigned);
+        if (pattern instanceof Patterns.OptionalOf)
+            return assigned(((Patterns.OptionalOf<?>) pattern).pattern, assigned);
+        if (pattern instanceof Patterns.MapOf) {
+            Patterns.MapOf<?, ?> map = (Patterns.MapOf<?, ?>) pattern;
+            for (Map.Entry<?, ? extends Pattern<?>> entry : map.patterns)
+                if (!assigned(entry.getValue(), assigned))
+                    return false;
+            return map.rest == null || assigned(map.rest, assigned);
+        }
+        if (pattern instanceof Patterns.WithCost)
+            return assigned(((Patterns.WithCost<?>) pattern).pattern, assigned);
+        if (pattern instanceof Patterns.AfterOf)
+            return assigned(((Patterns.AfterOf<?, ?>) pattern).pattern, assigned);
+        if (pattern instanceof Patterns.AfterView)
+            return assigned(((Patterns.AfterView<?, ?>) pattern).pattern, assigned);
+        if (pattern instanceof Patterns.AnyOf) {
+            // Each alternative starts from the same state, afterwards the captures of any of them may be assigned
+            Set<Object> before = newSet();
+            before.addAll(assigned);
+            for (Pattern<?> p : ((Patterns.AnyOf<?>) pattern).patterns) {
+                Set<Object> branch = newSet();
+                branch.addAll(before);
+                if (!assigned(p, branch))
+                    return false;
+                assigned.addAll(branch);
+            }
+            return true;
+        }
+        if (pattern instanceof Patterns.NoMatchOf) {
+            // The captures are reset when the subpattern fails (and otherwise, NoMatch fails)
+            Set<Object> inner = newSet();
+            inner.addAll(assigned);
+            return assigned(((Patterns.NoMatchOf<?>) pattern).pattern, inner);
+        }
+        return false;
+    }
+
+    private static boolean allAssigned(@NotNull Pattern<?> @NotNull [] patterns, @NotNull Set<Object> assigned) {
+        for (Pattern<?> p : patterns)
+            if (!assigned(p, assigned))
+                return false;
+        return true;
+    }
+}
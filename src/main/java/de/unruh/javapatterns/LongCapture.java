@@ -0,0 +1,54 @@
+package de.unruh.javapatterns;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/** A capturing variable for {@code long} values.<p>
+ *
+ * Behaves like a {@link Capture}{@code <Long>} but stores the captured value unboxed
+ * (and can thus be assigned without allocation when used in a {@link LongPattern} context,
+ * e.g., in {@link Patterns#AfterLong}). The value is read with {@link #getLong()}, and can be compared
+ * with {@link Patterns#IsLong(LongCapture)}.<p>
+ *
+ * Create with {@link Pattern#longCapture}.
+ */
+public final class LongCapture extends LongPattern {
+    @NotNull private final String name;
+    /** Where this capture was last stored in a {@link MatchManager} frame, see {@link Capture#slotHint}. */
+    int slotHint;
+
+    @Contract(pure = true)
+    LongCapture(@NotNull String name) {
+        this.name = name;
+    }
+
+    /** Returns whether this capture has been assigned (in the current pattern match, or in an enclosing
+     * one in the same thread). */
+    public boolean isAssigned() {
+        return MatchManager.find(this, slotHint) != null;
+    }
+
+    /** The current value of the capture.
+     * @throws InvalidPatternMatch if the capture has not been assigned in the current pattern
+     */
+    @Contract(pure = true)
+    public long getLong() {
+        MatchManager mgr = MatchManager.find(this, slotHint);
+        if (mgr == null)
+            throw new InvalidPatternMatch("Reading undefined capture variable " + name);
+        int index = mgr.found();
+        slotHint = index;
+        return mgr.primitive(index);
+    }
+
+    @Override
+    public boolean matchesLong(@NotNull MatchManager mgr, long value) {
+        slotHint = mgr.assignPrimitive(this, value);
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
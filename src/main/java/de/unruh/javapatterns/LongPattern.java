@@ -0,0 +1,36 @@
+package de.unruh.javapatterns;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/** A pattern that matches {@code long} values.<p>
+ *
+ * Such a pattern can be matched against an unboxed {@code long} using {@link #matchesLong}
+ * (e.g., by {@link Patterns#AfterLong}), and against a boxed {@link Long} like any other pattern
+ * ({@code null} is rejected then).<p>
+ *
+ * To implement such a pattern, only {@link #matchesLong} and {@link #toString()} need to be implemented.
+ *
+ * @see LongCapture
+ */
+public abstract class LongPattern extends Pattern<Long> {
+    /** Performs the pattern match on an unboxed value.
+     * Same as {@link #matches(MatchManager, Long) matches}, see there.
+     *
+     * @param mgr the {@link MatchManager} that manages the life-cycle of the captures in this
+     *            pattern match. Same as in {@link #apply apply}.
+     * @param value the value to be pattern-matched
+     * @return whether the value matched the pattern
+     */
+    public abstract boolean matchesLong(@NotNull MatchManager mgr, long value);
+
+    @Override
+    public final void apply(@NotNull MatchManager mgr, @Nullable Long value) throws PatternMatchReject {
+        if (!matches(mgr, value)) reject();
+    }
+
+    @Override
+    public final boolean matches(@NotNull MatchManager mgr, @Nullable Long value) {
+        return value != null && matchesLong(mgr, value);
+    }
+}
@@ -4,6 +4,10 @@ import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.Supplier;
+
 /** Functions for invoking pattern matches.
  * This is an uninstantiable class containing only static members.<p>
  *
@@ -17,7 +21,9 @@ import org.jetbrains.annotations.Nullable;
  * For the first pattern that matches, the corresponding action is executed (with access to the values captured
  * by the pattern, see {@link Capture}), and {@code match} returns the return value of that action. An action is a lambda expression of the
  * form {@code () -> ...}, returning either some value or {@code void}. If the action invokes {@link Pattern#reject()},
- * matching continues with the next pattern. If no pattern matches, {@code match} throws a {@link MatchException}.<p>
+ * matching continues with the next pattern. If no pattern matches, {@code match} throws a {@link MatchException}.
+ * (If a failing match is expected to be common, {@link #tryMatch tryMatch} and {@link #matchOrElse matchOrElse}
+ * report the failure without an exception.)<p>
  *
  * The patterns are of type {@link Pattern}, see there for explanations how to specify patterns.<p>
  *
@@ -26,7 +32,10 @@ import org.jetbrains.annotations.Nullable;
  * result = match(value, pattern1, action1, pattern2, action2, ...)
  * </pre>
  * with at most 22 pattern/action pairs. (This is enabled via a large number of helper functions in this class,
- * all called {@code match}. These helper functions are elided from this API documentation to keep things readable.)
+ * all called {@code match}. These helper functions are elided from this API documentation to keep things readable.)<p>
+ *
+ * If the same match is performed many times, it can be prepared once using {@link #compile compile}
+ * which returns a reusable {@link Matcher}.
  */
 public final class Match {
     /** Make this class uninstantiable */
@@ -80,14 +89,147 @@ public final class Match {
      * @throws MatchException if none of the cases match
      */
     @SafeVarargs
+    @SuppressWarnings("unchecked")
     public static <In, Return, Exn extends Throwable> Return match(@Nullable In value, @NotNull Case<In, Return, Exn>... cases) throws Exn, MatchException {
-        MatchManager mgr = new MatchManager();
-        for (Case<In, Return, Exn> cas : cases) {
-            PatternResult<Return> result = cas.apply(mgr, value);
-            if (!result.isEmpty())
-                return result.get();
+        Object result = matchCases(value, cases);
+        if (result == NO_MATCH)
+            throw new MatchException(value);
+        return (Return) result;
+    }
+
+    /** Performs a pattern match that may fail without an exception.
+     * Like {@link #match(Object, Case[])}, but returns the return value of the first successful case
+     * wrapped in an {@link Optional}, and {@link Optional#empty()} if none of the cases match.
+     * (If the action of the successful case returns {@code null}, the result is {@link Optional#empty()} as well.
+     * Use {@link #matchOrElse} if this needs to be distinguished from a match failure.)
+     *
+     * @param value The value to be pattern matched
+     * @param cases Cases to try. See {@link Case}.
+     * @param <In> Type of the value to be pattern matched.
+     * @param <Exn> Exceptions that the action might throw ({@link PatternMatchReject} does not need to be
+     *             declared here even if {@link Pattern#reject()} is used.)
+     * @param <Return> Return type of the action
+     * @throws Exn if the action throws it
+     * @return the result of the first successful case, or {@link Optional#empty()} if none of the cases match
+     */
+    @SafeVarargs
+    @SuppressWarnings("unchecked")
+    public static <In, Return, Exn extends Throwable> @NotNull Optional<Return> tryMatch(@Nullable In value, @NotNull Case<In, Return, Exn>... cases) throws Exn {
+        Object result = matchCases(value, cases);
+        if (result == NO_MATCH)
+            return Optional.empty();
+        return Optional.ofNullable((Return) result);
+    }
+
+    /** Performs a pattern match with a fallback.
+     * Like {@link #match(Object, Case[])}, but if none of the cases match, the result of {@code fallback} is returned
+     * instead of throwing a {@link MatchException}.
+     *
+     * @param value The value to be pattern matched
+     * @param fallback computes the return value if none of the cases match
+     * @param cases Cases to try. See {@link Case}.
+     * @param <In> Type of the value to be pattern matched.
+     * @param <Exn> Exceptions that the action might throw ({@link PatternMatchReject} does not need to be
+     *             declared here even if {@link Pattern#reject()} is used.)
+     * @param <Return> Return type of the action
+     * @throws Exn if the action throws it
+     * @return the result of the first successful case, or the result of {@code fallback} if none of the cases match
+     */
+    @SafeVarargs
+    @SuppressWarnings("unchecked")
+    public static <In, Return, Exn extends Throwable> Return matchOrElse(@Nullable In value, @NotNull Supplier<? extends Return> fallback,
+                                                                        @NotNull Case<In, Return, Exn>... cases) throws Exn {
+        Object result = matchCases(value, cases);
+        if (result == NO_MATCH)
+            return fallback.get();
+        return (Return) result;
+    }
+
+    /** Returned by {@link #matchCases} if none of the cases match (and by {@link Case#apply} if the case does not match).
+     * Distinct from all values an action can return. */
+    static final Object NO_MATCH = new Object();
+
+    /** Applies each of the cases in sequence to {@code value}, and returns the return value of the first
+     * successful case, or {@link #NO_MATCH} if there is none. */
+    static <In, Return, Exn extends Throwable> Object matchCases(@Nullable In value, @NotNull Case<In, Return, Exn> @NotNull [] cases) throws Exn {
+        MatchManager mgr = MatchManager.start();
+        try {
+            for (Case<In, Return, Exn> cas : cases) {
+                Object result = cas.apply(mgr, value);
+                if (result != NO_MATCH)
+                    return result;
+            }
+            return NO_MATCH;
+        } finally {
+            mgr.finish();
+        }
+    }
+
+    /** Prepares a pattern match for repeated use.
+     * Returns a {@link Matcher} that, when applied to a value, behaves like {@link #match(Object, Case[])}
+     * with the given cases. The matcher can be stored (e.g., in a static field) and applied many times
+     * without constructing the cases again.
+     *
+     * @param cases Cases to try. Each case consists of a pattern and an action that is executed in case of
+     *              a successful match. See {@link Case}.
+     * @param <In> Type of the value to be pattern matched.
+     * @param <Exn> Exceptions that the action might throw ({@link PatternMatchReject} does not need to be
+     *             declared here even if {@link Pattern#reject()} is used.)
+     * @param <Return> Return type of the action
+     * @return the matcher
+     */
+    @SafeVarargs
+    @Contract(pure = true, value = "_ -> new")
+    public static <In, Return, Exn extends Throwable> @NotNull Matcher<In, Return, Exn> compile(@NotNull Case<In, Return, Exn>... cases) {
+        return new Matcher<>(Matcher.Backend.SHARED_TESTS, cases);
+    }
+
+    /** Prepares a pattern match for repeated use, using a specific implementation strategy.
+     * Same as {@link #compile(Case[])}, except that {@code backend} determines how the patterns
+     * of the cases are executed. This has no influence on the result of the match, only on its performance.
+     *
+     * @param backend how to execute the patterns, see {@link Matcher.Backend}
+     * @param cases Cases to try. Each case consists of a pattern and an action that is executed in case of
+     *              a successful match. See {@link Case}.
+     * @param <In> Type of the value to be pattern matched.
+     * @param <Exn> Exceptions that the action might throw ({@link PatternMatchReject} does not need to be
+     *             declared here even if {@link Pattern#reject()} is used.)
+     * @param <Return> Return type of the action
+     * @return the matcher
+     */
+    @SafeVarargs
+    @Contract(pure = true, value = "_, _ -> new")
+    public static <In, Return, Exn extends Throwable> @NotNull Matcher<In, Return, Exn> compile(@NotNull Matcher.Backend backend,
+                                                                                                @NotNull Case<In, Return, Exn>... cases) {
+        return new Matcher<>(backend, cases);
+    }
+
+    /** Prepares a pattern match without actions, for extracting values.
+     * Returns a {@link Matcher} with one case for each pattern, which returns the index of the
+     * first matching pattern (when applied using {@link Matcher#apply}). Typically, the matcher is used with
+     * {@link Matcher#bind} instead, which returns the index together with the captured values.
+     *
+     * @param patterns the patterns to try
+     * @param <In> Type of the value to be pattern matched.
+     * @return the matcher
+     */
+    @SafeVarargs
+    @Contract(pure = true, value = "_ -> new")
+    public static <In> @NotNull Matcher<In, Integer, RuntimeException> compile(@NotNull Pattern<? super In>... patterns) {
+        Case<In, Integer, RuntimeException>[] cases = newArray(patterns.length);
+        for (int i = 0; i < patterns.length; i++) {
+            Integer index = i;
+            cases[i] = withCase(patterns[i], () -> index);
         }
-        throw new MatchException(value);
+        return compile(cases);
+    }
+
+    /** Returns a new array of length {@code length} with element type {@code E}.
+     * ({@code empty} is only used to obtain the array type; it is created by the compiler when no arguments are given.) */
+    @SafeVarargs
+    @Contract(pure = true)
+    private static <E> E @NotNull [] newArray(int length, E @NotNull ... empty) {
+        return Arrays.copyOf(empty, length);
     }
 
     /** @hidden */
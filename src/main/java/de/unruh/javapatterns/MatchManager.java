@@ -2,11 +2,14 @@ package de.unruh.javapatterns;
 
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.Arrays;
 
 /** Manages the state of captured variables in a pattern match. <p>
+ *
+ * The values of the captures are stored in a frame that belongs to the match (and not in the
+ * {@link Capture} objects). Therefore the same patterns can be used in concurrent matches.<p>
  *
  * This class should never be used outside of {@link Pattern#apply}, see there.
  */
@@ -15,17 +18,217 @@ public final class MatchManager {
     @Contract(pure = true)
     MatchManager() {}
 
-    @NotNull
-    private final Deque<Capture<?>> captured = new ArrayDeque<>(10);
+    /** The manager of the innermost match that is currently running in this thread.
+     * (Or, if no match is running, the outermost manager of this thread, for reuse by the next match.) <p>
+     *
+     * Each thread has a stack of managers (linked via {@link #outer} and {@link #inner}) with one active manager
+     * per level of nested matches. The managers are kept after a match ends, so in the steady state,
+     * starting a match does not allocate. */
+    private static final ThreadLocal<MatchManager> current = new ThreadLocal<>();
+    /** The manager of the enclosing match (when this match was started from the action or pattern of another match). */
+    @Nullable private MatchManager outer;
+    /** The manager that will be used for the next match started while this one is running. */
+    @Nullable private MatchManager inner;
+    /** Whether this manager is in use by a running match. */
+    private boolean active;
+
+    /** The captures assigned in this match, in order of assignment.
+     * ({@link Capture}, {@link IntCapture}, {@link LongCapture}, or {@link DoubleCapture}.) */
+    @Nullable private Object @NotNull [] captured = new Object[10];
+    /** {@code values[i]} is the value assigned to {@code captured[i]} (if it is a {@link Capture}). */
+    @Nullable private Object @NotNull [] values = new Object[10];
+    /** {@code primitives[i]} is the value assigned to {@code captured[i]} (if it is a primitive capture,
+     * doubles are stored as their raw bits). */
+    private long @NotNull [] primitives = new long[10];
+    /** The index of the capture found by the last invocation of {@link #find}. */
+    private int found;
+    /** The {@link View}s computed in this match: {@code viewResults[i]} is the result of {@code views[i]}
+     * applied to {@code viewInputs[i]}. The first {@link #viewCount} entries are used. */
+    @Nullable private Object @Nullable [] views, viewInputs, viewResults;
+    private int viewCount;
+    /** Returned by {@link #viewResult} if the view has not been computed. */
+    static final Object UNKNOWN_VIEW = new Object();
+
+    /** Whether the patterns of the current match are known to be linear (see {@link Linearity}).
+     * Then captures are assigned without checking whether they are already assigned. */
+    boolean linear;
+    /** Number of assigned captures. */
+    private int size = 0;
+
+    /** Results of the tests shared between cases in the current match, see {@link DecisionDag}. */
+    byte @Nullable [] testResults;
+    /** Values of the paths shared between cases in the current match, see {@link DecisionDag}. */
+    @Nullable Object @Nullable [] pathValues;
+    /** Number of entries of {@link #pathValues} used in the current match (cleared by {@link #finish()}). */
+    int pathValueCount;
+
+    /** Object registers of the {@link PatternProgram} running in the current match. */
+    @Nullable Object @Nullable [] registers;
+    /** Number of entries of {@link #registers} used in the current match (cleared by {@link #finish()}). */
+    int registerCount;
+    /** Int registers (marks) of the {@link PatternProgram} running in the current match. */
+    int @Nullable [] marks;
+
+    /** Starts a new match in the current thread. Must be followed by {@link #finish()} when the match is done. */
+    static @NotNull MatchManager start() {
+        MatchManager mgr = current.get();
+        if (mgr == null) {
+            mgr = new MatchManager();
+            current.set(mgr);
+        } else if (mgr.active) {
+            MatchManager inner = mgr.inner;
+            if (inner == null) {
+                inner = new MatchManager();
+                inner.outer = mgr;
+                mgr.inner = inner;
+            }
+            mgr = inner;
+            current.set(mgr);
+        }
+        mgr.active = true;
+        mgr.linear = false;
+        return mgr;
+    }
+
+    /** Ends the match started by {@link #start()}. The manager is kept for reuse by the next match on the same level
+     * (without references to the values of the finished match). */
+    void finish() {
+        rollback(0);
+        if (viewCount > 0) {
+            assert views != null && viewInputs != null && viewResults != null;
+            Arrays.fill(views, 0, viewCount, null);
+            Arrays.fill(viewInputs, 0, viewCount, null);
+            Arrays.fill(viewResults, 0, viewCount, null);
+            viewCount = 0;
+        }
+        // Do not keep the matched value (or parts of it) reachable from the pooled manager
+        if (pathValueCount > 0) {
+            assert pathValues != null;
+            Arrays.fill(pathValues, 0, pathValueCount, null);
+            pathValueCount = 0;
+        }
+        if (registerCount > 0) {
+            assert registers != null;
+            Arrays.fill(registers, 0, registerCount, null);
+            registerCount = 0;
+        }
+        active = false;
+        if (outer != null)
+            current.set(outer);
+    }
+
+    /** Position of {@code x} in {@link #captured}, or -1. */
+    private int indexOf(@NotNull Object x) {
+        for (int i = size - 1; i >= 0; i--)
+            if (captured[i] == x)
+                return i;
+        return -1;
+    }
+
+    /** Adds {@code x} to the captures assigned in this match.
+     * @return the index where the value of {@code x} needs to be stored */
+    private int add(@NotNull Object x) {
+        if (!linear && indexOf(x) >= 0)
+            throw new InvalidPatternMatch("Re-assigned " + x + " in pattern match");
+        if (size == captured.length) {
+            captured = Arrays.copyOf(captured, 2 * size);
+            values = Arrays.copyOf(values, 2 * size);
+            primitives = Arrays.copyOf(primitives, 2 * size);
+        }
+        captured[size] = x;
+        return size++;
+    }
+
+    <T> void assign(@NotNull Capture<T> x, @Nullable T value) {
+        int index = add(x);
+        values[index] = value;
+        x.slotHint = index;
+    }
 
-    <T> void assigned(@NotNull Capture<T> x) {
-        captured.add(x);
+    /** Assigns {@code x} without boxing. Used by {@link IntCapture}, {@link LongCapture}, {@link DoubleCapture}
+     * (the latter stores the raw bits of the double).
+     * @return the index where the value is stored (to be used as slot hint) */
+    int assignPrimitive(@NotNull Object x, long value) {
+        int index = add(x);
+        primitives[index] = value;
+        return index;
+    }
+
+    /** Looks up {@code x} in the innermost match in the current thread in which it is assigned.
+     * The index of {@code x} in that match is then available via {@link #found()}.
+     *
+     * @param hint where {@code x} was stored recently. (It may have been set by another match, even in another thread,
+     *             so it is only used if it turns out to be correct.)
+     * @return the manager of that match, or {@code null} if {@code x} is not assigned
+     */
+    static @Nullable MatchManager find(@NotNull Object x, int hint) {
+        MatchManager mgr = current.get();
+        if (mgr == null || !mgr.active) return null;
+        if (hint < mgr.size && mgr.captured[hint] == x) {
+            mgr.found = hint;
+            return mgr;
+        }
+        for (; mgr != null; mgr = mgr.outer) {
+            int index = mgr.indexOf(x);
+            if (index >= 0) {
+                mgr.found = index;
+                return mgr;
+            }
+        }
+        return null;
+    }
+
+    /** The value of {@code x} in this match, or {@code null} if it is not assigned. */
+    @Nullable Object assignedValue(@NotNull Capture<?> x) {
+        int index = indexOf(x);
+        return index >= 0 ? values[index] : null;
+    }
+
+    /** The result of {@code view} applied to {@code input} (compared by identity) in this match,
+     * or {@link #UNKNOWN_VIEW} if it has not been computed yet. */
+    @Nullable Object viewResult(@NotNull View<?, ?> view, @Nullable Object input) {
+        for (int i = 0; i < viewCount; i++) {
+            assert views != null && viewInputs != null && viewResults != null;
+            if (views[i] == view && viewInputs[i] == input)
+                return viewResults[i];
+        }
+        return UNKNOWN_VIEW;
+    }
+
+    /** Remembers the result of {@code view} applied to {@code input} until the end of this match. */
+    void storeViewResult(@NotNull View<?, ?> view, @Nullable Object input, @Nullable Object result) {
+        if (views == null || viewInputs == null || viewResults == null) {
+            views = new Object[4];
+            viewInputs = new Object[4];
+            viewResults = new Object[4];
+        } else if (viewCount == views.length) {
+            views = Arrays.copyOf(views, 2 * viewCount);
+            viewInputs = Arrays.copyOf(viewInputs, 2 * viewCount);
+            viewResults = Arrays.copyOf(viewResults, 2 * viewCount);
+        }
+        views[viewCount] = view;
+        viewInputs[viewCount] = input;
+        viewResults[viewCount] = result;
+        viewCount++;
+    }
+
+    /** The index of the capture found by the last {@link #find}. */
+    int found() {
+        return found;
+    }
+
+    /** The value of the {@link Capture} at position {@code index}. */
+    @Nullable Object value(int index) {
+        return values[index];
+    }
+
+    /** The value of the primitive capture at position {@code index}. */
+    long primitive(int index) {
+        return primitives[index];
     }
 
     void clearCaptured() {
-        for (Capture<?> capture : captured)
-            capture.clear();
-        captured.clear();
+        rollback(0);
     }
 
     /** Executes a proctected block during a pattern match.<p>
@@ -42,19 +245,50 @@ public final class MatchManager {
      *         {@code block} threw a {@link PatternMatchReject} exception
      */
     public boolean protectedBlock(@NotNull PatternRunnable block) {
-        int size = captured.size();
+        int mark = mark();
         try {
             block.run();
         } catch (PatternMatchReject e) {
-            while (captured.size() > size) {
-                Capture<?> capture = captured.pop();
-                capture.clear();
-            }
+            rollback(mark);
             return false;
         }
         return true;
     }
 
+    /** Returns a savepoint of the current state of the captures. To be passed to {@link #rollback}.<p>
+     *
+     * Together with {@link #rollback}, this is an alternative to {@link #protectedBlock} that does not need
+     * a lambda. It is typically used with {@link Pattern#matches} for trying a subpattern:
+     * <pre>
+     * int mark = mgr.mark();
+     * if (subpattern.matches(mgr, value)) ...
+     * else mgr.rollback(mark);
+     * </pre>
+     * (If a subpattern is invoked with {@link Pattern#apply}, the {@link PatternMatchReject} needs to be
+     * caught, and {@link #rollback} invoked in the {@code catch} block.)
+     *
+     * @return the savepoint (valid until the end of the current pattern match)
+     */
+    @Contract(pure = true)
+    public int mark() {
+        return size;
+    }
+
+    /** Resets all captures that were assigned since {@code mark} was returned by {@link #mark()}.
+     * Savepoints can be nested, i.e., after rolling back to {@code mark}, savepoints obtained before
+     * {@code mark} remain valid (but those obtained after it do not).
+     *
+     * @param mark a savepoint returned by {@link #mark()} in the current pattern match
+     */
+    public void rollback(int mark) {
+        for (int i = mark; i < size; i++) {
+            captured[i] = null;
+            values[i] = null;
+        }
+        if (mark < size)
+            size = mark;
+    }
+
 /*    @Nullable
     public <T> T excursion(@NotNull PatternSupplier<T> excursion, @NotNull Predicate<T> shouldReset, @Nullable T failValue) {
         int size = captured.size();
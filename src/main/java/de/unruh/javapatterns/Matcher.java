@@ -0,0 +1,323 @@
+package de.unruh.javapatterns;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/** A pattern match that has been prepared once and can be applied to many values.<p>
+ *
+ * A {@link Matcher} is created from a list of cases using {@link Match#compile(Case[]) Match.compile}.
+ * Applying it to a value (<code>matcher.{@link #apply apply}(value)</code>) has the same effect as
+ * <code>{@link Match#match(Object, Case[]) Match.match}(value, cases...)</code>, but the cases are only constructed
+ * once. This makes it possible to store the matcher in a static field and avoid building the case list
+ * again for every match:
+ * <pre>
+ * static final Capture&lt;String&gt; x = capture("x");
+ * static final Matcher&lt;Object, String, RuntimeException&gt; matcher = compile(
+ *     withCase(Instance(String.class, x), () -&gt; "string " + x.v()),
+ *     withCase(Any, () -&gt; "something else"));
+ * ...
+ * String result = matcher.apply(value);
+ * </pre>
+ *
+ * When the matcher is created, the cases are analyzed to speed up matching. In particular, if the patterns of
+ * the cases are type tests ({@link Patterns#Instance(Class, Pattern) Instance}), only the cases for the runtime
+ * type of the matched value are tried. And if the patterns are comparisons with constants
+ * ({@link Patterns#Is(Object) Is}), the cases for the matched value are found by a table lookup instead
+ * of comparing with each constant. Furthermore, tests that several cases have in common (such as
+ * {@link Patterns#NotNull NotNull}, the same {@link Patterns#Instance(Class, Pattern) Instance} test
+ * on an array element, or the length check of {@link Patterns#Array(Pattern[]) Array}) are performed only
+ * once per matched value, and so are shared destructuring steps (such as accessing an array element or
+ * looking up a key in a map). Alternatives in {@link Patterns#Or Or} that compare with constants are combined into
+ * a single hash lookup (see {@link Patterns#IsOneOf IsOneOf}). In any case, the first matching case (in the order given) is used, and captures
+ * are reset between cases as in {@link Match#match(Object, Case[]) Match.match}.<p>
+ *
+ * Shared tests and lookups are not necessarily performed in the order in which they occur in the patterns.
+ * For example, in {@code Array(Is(p), Is("a"))}, the comparison of the second element with {@code "a"} may be
+ * performed before the predicate {@code p} is applied to the first element, and it may be performed even if
+ * an earlier case already failed on a different test. This does not change the result as long as the patterns
+ * have no side effects and do not throw exceptions. But comparisons with constants invoke {@link Object#equals}
+ * of the constant, and map lookups invoke {@link java.util.Map#get}. If these or other subpatterns
+ * throw an exception (or have side effects), the result may differ from
+ * {@link Match#match(Object, Case[]) Match.match}: a case may be rejected by a failed test before
+ * a subpattern that would throw an exception is applied, or an exception is thrown where
+ * {@code Match.match} would have rejected the case before.<p>
+ *
+ * A matcher is immutable. Note however that it uses the capture variables given in its cases,
+ * so the restrictions described in {@link Capture} apply.
+ *
+ * @param <In> Type of the value that is pattern matched
+ * @param <Return> Return value of the actions
+ * @param <Exn> Exception that the actions may throw
+ */
+public final class Matcher<In, Return, Exn extends Throwable> {
+    @NotNull
+    private final Case<In, Return, Exn> @NotNull [] cases;
+    @Nullable
+    private final CaseDispatch dispatch;
+    /** For each case, the pattern that is used instead of the pattern of the case (after {@link #dispatch}). */
+    @NotNull
+    private final Pattern<?> @NotNull [] patterns;
+    /** Set if {@link #patterns} were created by a {@link DecisionDag}. */
+    @Nullable
+    private final DecisionDag dag;
+    /** Set if {@link #patterns} run a {@link PatternProgram}. */
+    @Nullable
+    private final PatternProgram program;
+    @NotNull
+    private final Backend backend;
+    /** Whether the patterns of all cases are linear (see {@link Linearity}). */
+    private final boolean linear;
+
+    /** How a {@link Matcher} executes the patterns of its cases (see {@link Match#compile(Backend, Case[])}).<p>
+     *
+     * In all backends, type tests and comparisons with constants at the top of the patterns are used to
+     * select the cases to try (see {@link Matcher}). The backends differ in how the rest of the patterns is executed.
+     */
+    public enum Backend {
+        /** The patterns are executed by invoking them, and tests and destructuring steps that are common to several
+         * cases are performed only once per match (see {@link Matcher}). This is the default. */
+        SHARED_TESTS,
+        /** A class with specialized bytecode for the patterns of all cases is generated.
+         * The built-in patterns from {@link Patterns} (such as {@link Patterns#Is(Object) Is},
+         * {@link Patterns#Instance(Class, Pattern) Instance}, {@link Patterns#Array(Pattern[]) Array},
+         * {@link Patterns#Map Map}, {@link Patterns#Optional(Pattern) Optional}, {@link Patterns#And And},
+         * {@link Patterns#Or Or}, {@link Patterns#NoMatch NoMatch}, {@link Patterns#After After})
+         * are translated into code, other patterns are invoked from the generated code.
+         * This gives the JIT the opportunity to optimize each pattern as a whole.
+         * Generating the code takes some time, so this is only useful for matchers that are applied very often.<p>
+         *
+         * Requires Java 9 or newer. On Java 8, {@link #SHARED_TESTS} is used instead.
+         */
+        BYTECODE,
+        /** The pattern of each case is translated into a method handle, see {@link PatternHandles}.
+         * This is cheaper to set up than {@link #BYTECODE}, but the JIT can inline less since the
+         * handles are not constants. */
+        METHOD_HANDLES,
+        /** The patterns of all cases are compiled into one compact array of instructions that is executed by an
+         * interpreter (see {@link PatternProgram}). This needs much less memory than the other backends
+         * and is suitable for matchers with very many cases. */
+        INSTRUCTIONS
+    }
+
+    @Contract(pure = true)
+    Matcher(@NotNull Backend backend, @NotNull Case<In, Return, Exn> @NotNull [] cases) {
+        this.cases = cases.clone();
+        for (int i = 0; i < cases.length; i++)
+            this.cases[i] = cases[i].withPattern(PatternOptimizer.optimize(cases[i].pattern()));
+        boolean linear = true;
+        for (Case<In, Return, Exn> cas : this.cases)
+            linear &= Linearity.isLinear(cas.pattern());
+        this.linear = linear;
+        this.dispatch = CaseDispatch.create(this.cases);
+        Pattern<?>[] bodies = new Pattern<?>[cases.length];
+        for (int i = 0; i < cases.length; i++)
+            bodies[i] = dispatch == null ? this.cases[i].pattern() : dispatch.body(i);
+        Pattern<?>[] generated = backend == Backend.BYTECODE ? MatcherGenerator.generate(bodies) : null;
+        if (generated != null) {
+            this.patterns = generated;
+            this.dag = null;
+            this.program = null;
+            this.backend = Backend.BYTECODE;
+        } else if (backend == Backend.METHOD_HANDLES) {
+            this.patterns = new Pattern<?>[cases.length];
+            for (int i = 0; i < cases.length; i++)
+                this.patterns[i] = PatternHandles.lowered(bodies[i]);
+            this.dag = null;
+            this.program = null;
+            this.backend = Backend.METHOD_HANDLES;
+        } else if (backend == Backend.INSTRUCTIONS) {
+            this.program = PatternProgram.compile(bodies);
+            this.patterns = new Pattern<?>[cases.length];
+            for (int i = 0; i < cases.length; i++)
+                this.patterns[i] = program.pattern(i, bodies[i]);
+            this.dag = null;
+            this.backend = Backend.INSTRUCTIONS;
+        } else {
+            this.program = null;
+            this.dag = new DecisionDag(bodies);
+            this.patterns = new Pattern<?>[cases.length];
+            for (int i = 0; i < cases.length; i++)
+                this.patterns[i] = dag.pattern(i);
+            this.backend = Backend.SHARED_TESTS;
+        }
+    }
+
+    /** Whether the patterns of this matcher are verified to never assign a capture twice.
+     * If so, the runtime checks for re-assigned captures are skipped. This is the case if the patterns
+     * consist only of captures and built-in patterns from {@link Patterns}, with each capture occurring
+     * at most once in each pattern (except in different alternatives of {@link Patterns#Or Or}).
+     * (Otherwise, re-assigning a capture raises an {@link InvalidPatternMatch} at runtime, as in
+     * {@link Match#match(Object, Case[]) Match.match}.) */
+    @Contract(pure = true)
+    public boolean isLinear() {
+        return linear;
+    }
+
+    /** The backend that this matcher uses. (This can differ from the one requested
+     * in {@link Match#compile(Backend, Case[])} if that one is not available.) */
+    @Contract(pure = true)
+    public @NotNull Backend backend() {
+        return backend;
+    }
+
+    /** Applies the cases to {@code value}, and returns the return value of the first
+     * successful case, or {@link Match#NO_MATCH} if there is none. */
+    private Object matchCases(@Nullable In value) throws Exn {
+        MatchManager mgr = MatchManager.start();
+        mgr.linear = linear;
+        try {
+            return matchCases(mgr, value, null);
+        } finally {
+            mgr.finish();
+        }
+    }
+
+    /** Applies the cases to {@code value}. If {@code bindings} is {@code null}, returns the return value of the first
+     * successful case. Otherwise, the actions are not executed, instead {@code bindings} is filled with the captures of the
+     * first case whose pattern matches, and {@code bindings} is returned.
+     * In both cases, {@link Match#NO_MATCH} is returned if there is no matching case. */
+    private Object matchCases(@NotNull MatchManager mgr, @Nullable In value, @Nullable Bindings bindings) throws Exn {
+        if (dag != null)
+            dag.prepare(mgr);
+        if (program != null)
+            program.prepare(mgr);
+        if (dispatch == null) {
+            for (int i = 0; i < cases.length; i++) {
+                Object result = applyCase(mgr, i, value, bindings);
+                if (result != Match.NO_MATCH)
+                    return result;
+            }
+            return Match.NO_MATCH;
+        }
+        int[] candidates = dispatch.candidates(value);
+        int[] constantCandidates = dispatch.constantCandidates(value);
+        // Merging the two sorted lists of candidates
+        int next = 0, nextConstant = 0;
+        while (next < candidates.length || nextConstant < constantCandidates.length) {
+            int i;
+            if (nextConstant >= constantCandidates.length ||
+                    (next < candidates.length && candidates[next] < constantCandidates[nextConstant]))
+                i = candidates[next++];
+            else
+                i = constantCandidates[nextConstant++];
+            Object result = applyCase(mgr, i, value, bindings);
+            if (result != Match.NO_MATCH)
+                return result;
+        }
+        return Match.NO_MATCH;
+    }
+
+    /** Applies case {@code i}, see {@link #matchCases(MatchManager, Object, Bindings)}. */
+    @SuppressWarnings("unchecked")
+    private Object applyCase(@NotNull MatchManager mgr, int i, @Nullable In value, @Nullable Bindings bindings) throws Exn {
+        Pattern<Object> pattern = (Pattern<Object>) patterns[i];
+        if (bindings == null)
+            return cases[i].apply(mgr, pattern, value);
+        try {
+            if (!pattern.matches(mgr, value))
+                return Match.NO_MATCH;
+            bindings.fill(mgr, i);
+            return bindings;
+        } finally {
+            mgr.clearCaptured();
+        }
+    }
+
+    /** Performs the pattern match without executing the actions, only returning the captured values.
+     * Finds the first case whose pattern matches {@code value} (the actions of the cases are not executed, so
+     * they cannot reject the match) and stores its index and the values of the captures in {@code bindings}.
+     * This does not allocate any objects (unless the patterns do), so {@code bindings} can be reused for many matches
+     * (but not concurrently):
+     * <pre>
+     * static final Matcher&lt;Object, Integer, RuntimeException&gt; matcher = compile(
+     *     Instance(String.class, x), Array(x, y));
+     * ...
+     * Bindings bindings = Bindings.of(x, y);
+     * if (matcher.bind(value, bindings)) ... bindings.caseIndex() ... bindings.get(x) ...
+     * </pre>
+     *
+     * @param value The value to be pattern matched
+     * @param bindings Where the result is stored. Captures that are not assigned by the matching case are set to {@code null}.
+     * @return whether some case matched (if not, {@link Bindings#caseIndex()} is -1 afterwards)
+     */
+    public boolean bind(@Nullable In value, @NotNull Bindings bindings) {
+        MatchManager mgr = MatchManager.start();
+        mgr.linear = linear;
+        try {
+            Object result;
+            try {
+                result = matchCases(mgr, value, bindings);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                // Only actions throw Exn, and they are not invoked
+                throw new AssertionError(e);
+            }
+            if (result == Match.NO_MATCH) {
+                bindings.clear();
+                return false;
+            }
+            return true;
+        } finally {
+            mgr.finish();
+        }
+    }
+
+    /** Performs the pattern match.
+     * Applies each of the cases of this matcher in sequence to {@code value}, and returns the return value
+     * of the first successful case. Same as {@link Match#match(Object, Case[])}.
+     *
+     * @param value The value to be pattern matched
+     * @throws Exn if the action throws it
+     * @throws MatchException if none of the cases match
+     * @return the return value of the action of the first matching case
+     */
+    @SuppressWarnings("unchecked")
+    public Return apply(@Nullable In value) throws Exn, MatchException {
+        Object result = matchCases(value);
+        if (result == Match.NO_MATCH)
+            throw new MatchException(value);
+        return (Return) result;
+    }
+
+    /** Performs the pattern match, returning {@link Optional#empty()} if none of the cases match.
+     * Same as {@link Match#tryMatch(Object, Case[])}.
+     *
+     * @param value The value to be pattern matched
+     * @throws Exn if the action throws it
+     * @return the return value of the action of the first matching case, or {@link Optional#empty()}
+     *         if there is none or the action returned {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    public @NotNull Optional<Return> tryApply(@Nullable In value) throws Exn {
+        Object result = matchCases(value);
+        if (result == Match.NO_MATCH)
+            return Optional.empty();
+        return Optional.ofNullable((Return) result);
+    }
+
+    /** Performs the pattern match, returning the result of {@code fallback} if none of the cases match.
+     * Same as {@link Match#matchOrElse(Object, Supplier, Case[])}.
+     *
+     * @param value The value to be pattern matched
+     * @param fallback computes the return value if none of the cases match
+     * @throws Exn if the action throws it
+     * @return the return value of the action of the first matching case, or the result of {@code fallback}
+     */
+    @SuppressWarnings("unchecked")
+    public Return applyOrElse(@Nullable In value, @NotNull Supplier<? extends Return> fallback) throws Exn {
+        Object result = matchCases(value);
+        if (result == Match.NO_MATCH)
+            return fallback.get();
+        return (Return) result;
+    }
+
+    @Override
+    public String toString() {
+        return "Matcher(" + cases.length + " cases, " + backend + ")";
+    }
+}
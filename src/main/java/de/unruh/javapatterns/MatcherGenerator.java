@@ -0,0 +1,474 @@
+package de.unruh.javapatterns;
+
+import de.unruh.javapatterns.ClassWriter.Code;
+import de.unruh.javapatterns.ClassWriter.Label;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static de.unruh.javapatterns.ClassWriter.*;
+
+/** Generates bytecode for the patterns of the cases of a {@link Matcher} ({@link Matcher.Backend#BYTECODE}).<p>
+ *
+ * One class (a subclass of {@link GeneratedPattern}) is generated per matcher, with one method per case.
+ * The built-in patterns {@link Patterns#Is(Object) Is}, {@link Patterns#Null Null},
+ * {@link Patterns#NotNull NotNull}, {@link Patterns#Instance(Class, Pattern) Instance},
+ * {@link Patterns#And And}, {@link Patterns#Or Or}, {@link Patterns#NoMatch NoMatch},
+ * {@link Patterns#Array(Pattern[]) Array}, {@link Patterns#Optional(Pattern) Optional},
+ * {@link Patterns#Map Map}, and {@link Patterns#After After} are translated into straight-line code.
+ * Other patterns (including captures) are invoked via {@link Pattern#matches}; since each such call site
+ * only ever sees one pattern, the JIT can inline it.<p>
+ *
+ * The class is defined as a hidden class (Java 15 and newer, so that it can be unloaded together with
+ * the matcher) or via {@link MethodHandles.Lookup}{@code .defineClass} (Java 9 to 14). On Java 8, no
+ * bytecode is generated and {@link #generate} returns {@code null}.
+ */
+final class MatcherGenerator {
+    private static final String GENERATED_PATTERN = "de/unruh/javapatterns/GeneratedPattern";
+    private static final String MATCH_MANAGER = "de/unruh/javapatterns/MatchManager";
+    private static final String PATTERN = "de/unruh/javapatterns/Pattern";
+    private static final String AFTER = "de/unruh/javapatterns/Patterns$AfterOf";
+    private static final String MAP = "de/unruh/javapatterns/Patterns$MapOf";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String OBJECT_ARRAY = "[Ljava/lang/Object;";
+    private static final String MATCHES_DESCRIPTOR = "(L" + MATCH_MANAGER + ";Ljava/lang/Object;)Z";
+    private static final String CONSTRUCTOR_DESCRIPTOR = "([Ljava/lang/Object;IL" + PATTERN + ";)V";
+    /** Local holding {@link GeneratedPattern#constants} in the method of a case. */
+    private static final int CONSTANTS_LOCAL = 3;
+
+    private static final AtomicInteger counter = new AtomicInteger();
+
+    @FunctionalInterface
+    private interface ClassDefiner {
+        @NotNull Class<?> define(byte @NotNull [] bytes) throws ReflectiveOperationException;
+    }
+
+    @Nullable private static final ClassDefiner definer = findDefiner();
+
+    @Nullable
+    private static ClassDefiner findDefiner() {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            Class<?> classOption = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            Object noOptions = Array.newInstance(classOption, 0);
+            Method defineHiddenClass = MethodHandles.Lookup.class.getMethod("defineHiddenClass",
+                    byte[].class, boolean.class, noOptions.getClass());
+            return bytes -> ((MethodHandles.Lookup) defineHiddenClass.invoke(lookup, bytes, true, noOptions)).lookupClass();
+        } catch (ReflectiveOperationException ignored) {}
+        try {
+            Method defineClass = MethodHandles.Lookup.class.getMethod("defineClass", byte[].class);
+            return bytes -> (Class<?>) defineClass.invoke(lookup, bytes);
+        } catch (ReflectiveOperationException ignored) {}
+        return null;
+    }
+
+    @NotNull private final String className = "de/unruh/javapatterns/GeneratedMatcher$" + counter.incrementAndGet();
+    @NotNull private final List<Object> constants = new ArrayList<>();
+    @NotNull private final Map<Object, Integer> constantIndices = new IdentityHashMap<>();
+
+    private MatcherGenerator() {}
+
+    /** Generates a class for the given patterns (one per case).
+     * @return the patterns to be used instead of {@code patterns} (equivalent to them),
+     *         or {@code null} if classes cannot be generated on this JVM
+     *         or the class would exceed the limits of the class file format (e.g., for very many cases)
+     */
+    @Nullable
+    static Pattern<?> @Nullable [] generate(@NotNull Pattern<?> @NotNull [] patterns) {
+        if (definer == null) return null;
+        return new MatcherGenerator().generateClass(patterns);
+    }
+
+    @Nullable
+    private Pattern<?> @Nullable [] generateClass(@NotNull Pattern<?> @NotNull [] patterns) {
+        ClassWriter writer = new ClassWriter(className, GENERATED_PATTERN);
+        byte[] bytes;
+        try {
+            for (int i = 0; i < patterns.length; i++) {
+                try {
+                    new CaseMethod(writer, patterns[i], false).generate("case" + i);
+                } catch (TooLarge e) {
+                    // Fall back to invoking the pattern as a whole
+                    new CaseMethod(writer, patterns[i], true).generate("case" + i);
+                }
+            }
+            generateConstructor(writer);
+            generateMatches(writer, patterns.length);
+            bytes = writer.toByteArray();
+        } catch (TooLarge e) {
+            // Too many cases for one class (the dispatching method or the constant pool is too large)
+            return null;
+        }
+
+        try {
+            Class<?> clazz = definer.define(bytes);
+            Constructor<?> constructor = clazz.getDeclaredConstructor(Object[].class, int.class, Pattern.class);
+            Object[] constantArray = constants.toArray();
+            Pattern<?>[] result = new Pattern<?>[patterns.length];
+            for (int i = 0; i < patterns.length; i++)
+                result[i] = (Pattern<?>) constructor.newInstance(constantArray, i, patterns[i]);
+            return result;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private void generateConstructor(@NotNull ClassWriter writer) {
+        List<String> locals = new ArrayList<>();
+        locals.add(GENERATED_PATTERN);
+        locals.add(OBJECT_ARRAY);
+        locals.add("I");
+        locals.add(PATTERN);
+        Code code = writer.new Code(locals);
+        code.local(ALOAD, 0);
+        code.local(ALOAD, 1);
+        code.local(ILOAD, 2);
+        code.local(ALOAD, 3);
+        code.ref(INVOKESPECIAL, writer.methodRef(GENERATED_PATTERN, "<init>", CONSTRUCTOR_DESCRIPTOR));
+        code.op(RETURN);
+        code.finish(0x0001, "<init>", CONSTRUCTOR_DESCRIPTOR);
+    }
+
+    /** Generates {@link Pattern#matches} that invokes the method of case {@link GeneratedPattern#caseIndex}. */
+    private void generateMatches(@NotNull ClassWriter writer, int caseCount) {
+        List<String> locals = new ArrayList<>();
+        locals.add(className);
+        locals.add(MATCH_MANAGER);
+        locals.add(OBJECT);
+        Code code = writer.new Code(locals);
+        Label[] targets = new Label[caseCount];
+        for (int i = 0; i < caseCount; i++)
+            targets[i] = new Label();
+        Label noCase = new Label();
+        code.local(ALOAD, 0);
+        code.ref(GETFIELD, writer.fieldRef(GENERATED_PATTERN, "caseIndex", "I"));
+        code.tableSwitch(noCase, targets);
+        for (int i = 0; i < caseCount; i++) {
+            code.bind(targets[i]);
+            code.local(ALOAD, 0);
+            code.local(ALOAD, 1);
+            code.local(ALOAD, 2);
+            code.ref(INVOKEVIRTUAL, writer.methodRef(className, "case" + i, MATCHES_DESCRIPTOR));
+            code.op(IRETURN);
+        }
+        code.bind(noCase);
+        code.op(ICONST_0);
+        code.op(IRETURN);
+        code.finish(0x0001, "matches", MATCHES_DESCRIPTOR);
+    }
+
+    private int constant(@NotNull Object value) {
+        return constantIndices.computeIfAbsent(value, v -> {
+            constants.add(v);
+            return constants.size() - 1;
+        });
+    }
+
+    /** Whether the generated class can refer to {@code clazz} by name (so that {@code instanceof} can be used). */
+    private static boolean accessible(@NotNull Class<?> clazz) {
+        if (clazz.isPrimitive()) return false;
+        for (Class<?> c = clazz; c != null; c = c.isArray() ? c.getComponentType() : c.getDeclaringClass())
+            if (!c.isArray() && !c.isPrimitive() && !Modifier.isPublic(c.getModifiers()))
+                return false;
+        try {
+            return Class.forName(clazz.getName(), false, MatcherGenerator.class.getClassLoader()) == clazz;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /** Generates the method for one case. The code is generated twice: first to find out which locals are needed,
+     * and then with all locals initialized at the start (so that they have the same type at every branch target). */
+    private final class CaseMethod {
+        @NotNull private final ClassWriter writer;
+        @NotNull private final Pattern<?> pattern;
+        private final boolean opaque;
+        @NotNull private final List<String> locals = new ArrayList<>();
+        private Code code;
+
+        CaseMethod(@NotNull ClassWriter writer, @NotNull Pattern<?> pattern, boolean opaque) {
+            this.writer = writer;
+            this.pattern = pattern;
+            this.opaque = opaque;
+        }
+
+        void generate(@NotNull String name) {
+            // First pass, with a scratch class writer, to determine the locals
+            code = new ClassWriter(className, GENERATED_PATTERN).new Code(new ArrayList<>());
+            body();
+            List<String> allLocals = new ArrayList<>(locals);
+            locals.clear();
+
+            code = writer.new Code(allLocals);
+            code.local(ALOAD, 0);
+            code.ref(GETFIELD, writer.fieldRef(GENERATED_PATTERN, "constants", "[Ljava/lang/Object;"));
+            code.local(ASTORE, CONSTANTS_LOCAL);
+            for (int i = CONSTANTS_LOCAL + 1; i < allLocals.size(); i++) {
+                if (allLocals.get(i).equals("I")) {
+                    code.op(ICONST_0);
+                    code.local(ISTORE, i);
+                } else {
+                    code.op(ACONST_NULL);
+                    code.local(ASTORE, i);
+                }
+            }
+            body();
+            code.finish(0x0001, name, MATCHES_DESCRIPTOR);
+        }
+
+        private void body() {
+            locals.add(className);
+            locals.add(MATCH_MANAGER);
+            locals.add(OBJECT);
+            locals.add(OBJECT_ARRAY);
+            Label fail = new Label();
+            if (opaque)
+                opaque(pattern, 2, fail);
+            else
+                pattern(pattern, 2, fail);
+            code.op(ICONST_1);
+            code.op(IRETURN);
+            code.bind(fail);
+            code.op(ICONST_0);
+            code.op(IRETURN);
+        }
+
+        private int newLocal(@NotNull String type) {
+            locals.add(type);
+            if (locals.size() > 0xff) throw new TooLarge("too many locals");
+            return locals.size() - 1;
+        }
+
+        /** Pushes {@code value} (from the constant array) onto the stack. */
+        private void loadConstant(@NotNull Object value, @Nullable String type) {
+            code.local(ALOAD, CONSTANTS_LOCAL);
+            code.pushInt(constant(value));
+            code.op(AALOAD);
+            if (type != null)
+                code.ref(CHECKCAST, writer.classRef(type));
+        }
+
+        private void load(int local, @NotNull String type) {
+            code.local(ALOAD, local);
+            code.ref(CHECKCAST, writer.classRef(type));
+        }
+
+        private void invokeMatchManager(@NotNull String name, @NotNull String descriptor) {
+            code.ref(INVOKEVIRTUAL, writer.methodRef(MATCH_MANAGER, name, descriptor));
+        }
+
+        /** Generates code that jumps to {@code fail} unless {@code pattern} matches the value in local {@code value}. */
+        private void pattern(@NotNull Pattern<?> pattern, int value, @NotNull Label fail) {
+            if (pattern instanceof Patterns.Instance)
+                pattern = ((Patterns.Instance<?>) pattern).instancePattern;
+
+            if (pattern == Patterns.Any) {
+                return;
+            } else if (pattern == Patterns.Null) {
+                code.local(ALOAD, value);
+                code.jump(IFNONNULL, fail);
+            } else if (pattern instanceof Patterns.IsValue) {
+                Object expected = ((Patterns.IsValue<?>) pattern).expected;
+                if (expected == null) {
+                    code.local(ALOAD, value);
+                    code.jump(IFNONNULL, fail);
+                } else if (expected instanceof Enum) {
+                    loadConstant(expected, null);
+                    code.local(ALOAD, value);
+                    code.jump(IF_ACMPNE, fail);
+                } else {
+                    loadConstant(expected, null);
+                    code.local(ALOAD, value);
+                    code.ref(INVOKEVIRTUAL, writer.methodRef(OBJECT, "equals", "(Ljava/lang/Object;)Z"));
+                    code.jump(IFEQ, fail);
+                }
+            } else if (pattern instanceof Patterns.NotNullOf) {
+                code.local(ALOAD, value);
+                code.jump(IFNULL, fail);
+                pattern(((Patterns.NotNullOf<?>) pattern).pattern, value, fail);
+            } else if (pattern instanceof Patterns.InstanceOf) {
+                Patterns.InstanceOf<?> instanceOf = (Patterns.InstanceOf<?>) pattern;
+                if (accessible(instanceOf.clazz)) {
+                    code.local(ALOAD, value);
+                    code.ref(INSTANCEOF, writer.classRef(instanceOf.clazz.getName().replace('.', '/')));
+                } else {
+                    loadConstant(instanceOf.clazz, "java/lang/Class");
+                    code.local(ALOAD, value);
+                    code.ref(INVOKEVIRTUAL, writer.methodRef("java/lang/Class", "isInstance", "(Ljava/lang/Object;)Z"));
+                }
+                code.jump(IFEQ, fail);
+                pattern(instanceOf.pattern, value, fail);
+            } else if (pattern instanceof Patterns.AllOf) {
+                for (Pattern<?> conjunct : ((Patterns.AllOf<?>) pattern).patterns)
+                    pattern(conjunct, value, fail);
+            } else if (pattern instanceof Patterns.AnyOf) {
+                anyOf(((Patterns.AnyOf<?>) pattern).patterns, value, fail);
+            } else if (pattern instanceof Patterns.NoMatchOf) {
+                int mark = newLocal("I");
+                code.local(ALOAD, 1);
+                invokeMatchManager("mark", "()I");
+                code.local(ISTORE, mark);
+                Label noMatch = new Label();
+                pattern(((Patterns.NoMatchOf<?>) pattern).pattern, value, noMatch);
+                rollback(mark);
+                code.jump(GOTO, fail);
+                code.bind(noMatch);
+                rollback(mark);
+            } else if (pattern instanceof Patterns.ArrayOf) {
+                Pattern<?>[] elements = ((Patterns.ArrayOf<?>) pattern).patterns;
+                arrayLength(value, elements.length, IF_ICMPNE, fail);
+                elements(elements, value, fail);
+            } else if (pattern instanceof Patterns.ArrayWithRest) {
+                Patterns.ArrayWithRest<?> array = (Patterns.ArrayWithRest<?>) pattern;
+                arrayLength(value, array.these.length, IF_ICMPLT, fail);
+                elements(array.these, value, fail);
+                if (array.more != Patterns.Any) {
+                    load(value, OBJECT_ARRAY);
+                    code.pushInt(array.these.length);
+                    load(value, OBJECT_ARRAY);
+                    code.op(ARRAYLENGTH);
+                    code.ref(INVOKESTATIC, writer.methodRef("java/util/Arrays", "copyOfRange",
+                            "([Ljava/lang/Object;II)[Ljava/lang/Object;"));
+                    int rest = newLocal(OBJECT);
+                    code.local(ASTORE, rest);
+                    pattern(array.more, rest, fail);
+                }
+            } else if (pattern instanceof Patterns.OptionalOf) {
+                optionalPresent(value, IFEQ, fail);
+                Pattern<?> content = ((Patterns.OptionalOf<?>) pattern).pattern;
+                if (content != Patterns.Any) {
+                    load(value, "java/util/Optional");
+                    code.ref(INVOKEVIRTUAL, writer.methodRef("java/util/Optional", "get", "()Ljava/lang/Object;"));
+                    int local = newLocal(OBJECT);
+                    code.local(ASTORE, local);
+                    pattern(content, local, fail);
+                }
+            } else if (pattern instanceof Patterns.OptionalEmpty) {
+                optionalPresent(value, IFNE, fail);
+            } else if (pattern instanceof Patterns.MapOf && ((Patterns.MapOf<?, ?>) pattern).rest == null) {
+                code.local(ALOAD, value);
+                code.ref(INSTANCEOF, writer.classRef("java/util/Map"));
+                code.jump(IFEQ, fail);
+                for (Map.Entry<?, ? extends Pattern<?>> entry : ((Patterns.MapOf<?, ?>) pattern).patterns) {
+                    if (entry.getValue() == Patterns.Any) {
+                        mapLookup(value, entry.getKey(), "containsKey", "(Ljava/lang/Object;)Z");
+                        code.jump(IFEQ, fail);
+                    } else {
+                        code.local(ALOAD, value);
+                        loadKey(entry.getKey());
+                        code.ref(INVOKESTATIC, writer.methodRef(MAP, "lookup",
+                                "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;"));
+                        int local = newLocal(OBJECT);
+                        code.local(ASTORE, local);
+                        code.local(ALOAD, local);
+                        code.ref(GETSTATIC, writer.fieldRef(MAP, "MISSING", "Ljava/lang/Object;"));
+                        code.jump(IF_ACMPEQ, fail);
+                        pattern(entry.getValue(), local, fail);
+                    }
+                }
+            } else if (pattern instanceof Patterns.AfterOf) {
+                Patterns.AfterOf<?, ?> after = (Patterns.AfterOf<?, ?>) pattern;
+                loadConstant(after.function, "java/util/function/Function");
+                code.local(ALOAD, value);
+                code.ref(INVOKESTATIC, writer.methodRef(AFTER, "transform",
+                        "(Ljava/util/function/Function;Ljava/lang/Object;)Ljava/lang/Object;"));
+                int result = newLocal(OBJECT);
+                code.local(ASTORE, result);
+                code.local(ALOAD, result);
+                code.ref(GETSTATIC, writer.fieldRef(AFTER, "REJECTED", "Ljava/lang/Object;"));
+                code.jump(IF_ACMPEQ, fail);
+                pattern(after.pattern, result, fail);
+            } else {
+                opaque(pattern, value, fail);
+            }
+        }
+
+        /** Generates an invocation of {@link Pattern#matches}. */
+        private void opaque(@NotNull Pattern<?> pattern, int value, @NotNull Label fail) {
+            loadConstant(pattern, PATTERN);
+            code.local(ALOAD, 1);
+            code.local(ALOAD, value);
+            code.ref(INVOKEVIRTUAL, writer.methodRef(PATTERN, "matches", MATCHES_DESCRIPTOR));
+            code.jump(IFEQ, fail);
+        }
+
+        private void anyOf(@NotNull Pattern<?> @NotNull [] alternatives, int value, @NotNull Label fail) {
+            int mark = newLocal("I");
+            code.local(ALOAD, 1);
+            invokeMatchManager("mark", "()I");
+            code.local(ISTORE, mark);
+            Label success = new Label();
+            for (Pattern<?> alternative : alternatives) {
+                Label next = new Label();
+                pattern(alternative, value, next);
+                code.jump(GOTO, success);
+                code.bind(next);
+                rollback(mark);
+            }
+            code.jump(GOTO, fail);
+            code.bind(success);
+        }
+
+        private void rollback(int mark) {
+            code.local(ALOAD, 1);
+            code.local(ILOAD, mark);
+            invokeMatchManager("rollback", "(I)V");
+        }
+
+        /** Jumps to {@code fail} unless the value is an array and {@code length op expected} does not hold,
+         * where {@code op} is the negated comparison. */
+        private void arrayLength(int value, int expected, int failComparison, @NotNull Label fail) {
+            code.local(ALOAD, value);
+            code.ref(INSTANCEOF, writer.classRef(OBJECT_ARRAY));
+            code.jump(IFEQ, fail);
+            load(value, OBJECT_ARRAY);
+            code.op(ARRAYLENGTH);
+            code.pushInt(expected);
+            code.jump(failComparison, fail);
+        }
+
+        private void elements(@NotNull Pattern<?> @NotNull [] elements, int value, @NotNull Label fail) {
+            for (int i = 0; i < elements.length; i++) {
+                if (elements[i] == Patterns.Any) continue;
+                load(value, OBJECT_ARRAY);
+                code.pushInt(i);
+                code.op(AALOAD);
+                int element = newLocal(OBJECT);
+                code.local(ASTORE, element);
+                pattern(elements[i], element, fail);
+            }
+        }
+
+        private void optionalPresent(int value, int failIf, @NotNull Label fail) {
+            code.local(ALOAD, value);
+            code.ref(INSTANCEOF, writer.classRef("java/util/Optional"));
+            code.jump(IFEQ, fail);
+            load(value, "java/util/Optional");
+            code.ref(INVOKEVIRTUAL, writer.methodRef("java/util/Optional", "isPresent", "()Z"));
+            code.jump(failIf, fail);
+        }
+
+        private void loadKey(@Nullable Object key) {
+            if (key == null)
+                code.op(ACONST_NULL);
+            else
+                loadConstant(key, null);
+        }
+
+        private void mapLookup(int value, @Nullable Object key, @NotNull String method, @NotNull String descriptor) {
+            load(value, "java/util/Map");
+            loadKey(key);
+            code.invokeInterface(writer.interfaceMethodRef("java/util/Map", method, descriptor), 1);
+        }
+    }
+}
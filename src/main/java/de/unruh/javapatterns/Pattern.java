@@ -14,8 +14,11 @@ import org.jetbrains.annotations.Nullable;
  * <li>It can invoke the {@link #apply apply} function of other patterns on the values obtained by analyzing {@code value}. (Typically, those would be given as arguments
  *     when constructing this pattern.) If any of the subpatterns fail, the this pattern fails, too (unless this is
  *     caught via a protected block (see below).</li>
- * <li>It can invoke {@code mgr}.{@link MatchManager#protectedBlock protectedBlock} to execute a protected block of actions (see below).</li>
+ * <li>It can invoke {@code mgr}.{@link MatchManager#protectedBlock protectedBlock} to execute a protected block of actions (see below),
+ *     or equivalently, use {@code mgr}.{@link MatchManager#mark() mark}/{@link MatchManager#rollback rollback}.</li>
  * </ul>
+ * Optionally, a pattern can additionally override {@link #matches matches} which performs the same match
+ * but returns {@code false} instead of rejecting. This avoids the cost of throwing an exception on every failed match.
  * <p>
  *
  * <b>Some important notes:</b>
@@ -31,6 +34,10 @@ import org.jetbrains.annotations.Nullable;
  *     we need to execute the pattern in a protected block by invoking
  *     <code>mgr.{@link MatchManager#protectedBlock(PatternRunnable) protectedBlock}}(...)</code>. This
  *     protected block then returns {@code false} if the subpattern(s) in {@code ...} fail.
+ *     (Alternatively, save the state with <code>int mark = mgr.{@link MatchManager#mark() mark}()</code>,
+ *     invoke the subpattern with {@link #matches matches}, and call
+ *     <code>mgr.{@link MatchManager#rollback rollback}(mark)</code> if it returns {@code false}.
+ *     This avoids allocating a lambda for each attempt.)
  *     </li>
  * <li>When invoking patterns that were passed as arguments when constructing this pattern,
  *     it is recommended to do so in the order were given. This is to ensure that captures are assigned
@@ -128,12 +135,48 @@ public abstract class Pattern<T> {
      */
     public abstract void apply(@NotNull MatchManager mgr, @Nullable T value) throws PatternMatchReject;
 
+    /** Performs the pattern match, signalling failure by the return value instead of an exception.<p>
+     *
+     * This does the same as {@link #apply apply} but returns {@code false} where {@link #apply apply}
+     * would throw a {@link PatternMatchReject}. After {@code false} was returned, the captures are in the
+     * same undefined state as after a rejection. So the caller must fail itself (by returning {@code false}
+     * or by invoking {@link #reject()}) unless it is a protected block that resets the captures.<p>
+     *
+     * The default implementation invokes {@link #apply apply} and catches the {@link PatternMatchReject}.
+     * Patterns where most values are expected to be rejected can override this method to avoid throwing the
+     * exception. In that case, {@link #apply apply} should be implemented as
+     * {@code if (!matches(mgr, value)) reject();}. (All patterns in {@link Patterns} and {@link ScalaPatterns}
+     * do this.) When a pattern invokes its subpatterns, it may use either method, but using {@code matches}
+     * avoids the exception if the subpattern supports it.
+     *
+     * @param mgr the {@link MatchManager} that manages the life-cycle of the captures in this
+     *            pattern match. Same as in {@link #apply apply}.
+     * @param value the value to be pattern-matched
+     * @return whether the value matched the pattern
+     */
+    public boolean matches(@NotNull MatchManager mgr, @Nullable T value) {
+        try {
+            apply(mgr, value);
+            return true;
+        } catch (PatternMatchReject e) {
+            return false;
+        }
+    }
+
 /*    @Contract(pure = true, value = "-> this")
     public final <U extends T> Pattern<U> contravariance() {
         //noinspection unchecked
         return (Pattern<U>) this;
     }*/
 
+    /** Whether this pattern never assigns any captures (because it has no subpatterns).
+     * Used by {@link Linearity}. (It is safe to return {@code false} for any pattern, so only the
+     * built-in patterns override this.) */
+    @Contract(pure = true)
+    boolean assignsNoCaptures() {
+        return false;
+    }
+
     /** Should give a human readable representation of this pattern.
      * Used in error messages. */
     @Override
@@ -170,4 +213,34 @@ public abstract class Pattern<T> {
     public static <T> Capture<T> capture(@NotNull String name) {
         return new Capture<T>(name);
     }
+
+    /** Creates a new capture variable for {@code int} values (stored without boxing).
+     *
+     * @param name Name of the capture, see {@link #capture}.
+     * @return the capture variable
+     */
+    @Contract(pure = true, value = "_ -> new")
+    public static IntCapture intCapture(@NotNull String name) {
+        return new IntCapture(name);
+    }
+
+    /** Creates a new capture variable for {@code long} values (stored without boxing).
+     *
+     * @param name Name of the capture, see {@link #capture}.
+     * @return the capture variable
+     */
+    @Contract(pure = true, value = "_ -> new")
+    public static LongCapture longCapture(@NotNull String name) {
+        return new LongCapture(name);
+    }
+
+    /** Creates a new capture variable for {@code double} values (stored without boxing).
+     *
+     * @param name Name of the capture, see {@link #capture}.
+     * @return the capture variable
+     */
+    @Contract(pure = true, value = "_ -> new")
+    public static DoubleCapture doubleCapture(@NotNull String name) {
+        return new DoubleCapture(name);
+    }
 }
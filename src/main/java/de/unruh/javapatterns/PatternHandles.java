@@ -0,0 +1,363 @@
+package de.unruh.javapatterns;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/** Translation of patterns into method handles.<p>
+ *
+ * {@link #lower lower}{@code (pattern)} returns a {@link MethodHandle} of type {@link #TYPE}, i.e.,
+ * {@code (MatchManager, Object) -> boolean}, that behaves like <code>pattern.{@link Pattern#matches matches}</code>.
+ * The built-in patterns from {@link Patterns} ({@link Patterns#Is(Object) Is}, {@link Patterns#Null Null},
+ * {@link Patterns#NotNull NotNull}, {@link Patterns#Instance(Class, Pattern) Instance}, {@link Patterns#And And},
+ * {@link Patterns#Or Or}, {@link Patterns#NoMatch NoMatch}, {@link Patterns#Array(Pattern[]) Array},
+ * {@link Patterns#Optional(Pattern) Optional}, {@link Patterns#Map Map}, {@link Patterns#After After})
+ * are translated into method handle combinators (such as {@link MethodHandles#guardWithTest guardWithTest}
+ * and {@link MethodHandles#filterArguments filterArguments}); other patterns are invoked via {@link Pattern#matches}.<p>
+ *
+ * If the resulting handle is stored in a {@code static final} field, the JIT compiler treats it as a constant
+ * and can inline the whole pattern into the code invoking it (instead of going through a chain of
+ * {@link Pattern#matches} calls that cannot be inlined because they see many different patterns).
+ * For example, a pattern can be defined as:
+ * <pre>
+ * static final MethodHandle handle = PatternHandles.lower(Array(Is(1), Instance(String.class, x)));
+ * static final Pattern&lt;Object[]&gt; pattern = new Pattern&lt;Object[]&gt;() {
+ *     public boolean matches(MatchManager mgr, Object[] value) {
+ *         return PatternHandles.invoke(handle, mgr, value);
+ *     }
+ *     public void apply(MatchManager mgr, Object[] value) throws PatternMatchReject {
+ *         if (!matches(mgr, value)) reject();
+ *     }
+ *     public String toString() { return "..."; }
+ * };
+ * </pre>
+ *
+ * Matchers created with {@link Matcher.Backend#METHOD_HANDLES} use this translation for the pattern of each case.
+ */
+public final class PatternHandles {
+    private PatternHandles() {}
+
+    /** The type of the method handles returned by {@link #lower}: {@code (MatchManager, Object) -> boolean}. */
+    public static final MethodType TYPE = methodType(boolean.class, MatchManager.class, Object.class);
+
+    private static final MethodHandle TRUE = MethodHandles.dropArguments(
+            MethodHandles.constant(boolean.class, true), 0, MatchManager.class, Object.class);
+    private static final MethodHandle FALSE = MethodHandles.dropArguments(
+            MethodHandles.constant(boolean.class, false), 0, MatchManager.class, Object.class);
+    private static final MethodHandle MATCHES;
+    private static final MethodHandle IS_NULL;
+    private static final MethodHandle IS_NOT_NULL;
+    private static final MethodHandle EQUALS;
+    private static final MethodHandle SAME;
+    private static final MethodHandle IS_INSTANCE;
+    private static final MethodHandle HAS_LENGTH;
+    private static final MethodHandle HAS_MIN_LENGTH;
+    private static final MethodHandle ELEMENT;
+    private static final MethodHandle REST;
+    private static final MethodHandle IS_PRESENT;
+    private static final MethodHandle IS_EMPTY;
+    private static final MethodHandle OPTIONAL_GET;
+    private static final MethodHandle CONTAINS_KEY;
+    private static final MethodHandle MAP_LOOKUP;
+    private static final MethodHandle IS_MISSING;
+    private static final MethodHandle TRANSFORM;
+    private static final MethodHandle IS_REJECTED;
+    private static final MethodHandle MARK;
+    private static final MethodHandle ROLLBACK_FALSE;
+    private static final MethodHandle ROLLBACK_TRUE;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            MATCHES = lookup.findVirtual(Pattern.class, "matches", methodType(boolean.class, MatchManager.class, Object.class));
+            IS_NULL = lookup.findStatic(Objects.class, "isNull", methodType(boolean.class, Object.class));
+            IS_NOT_NULL = lookup.findStatic(Objects.class, "nonNull", methodType(boolean.class, Object.class));
+            EQUALS = lookup.findStatic(Objects.class, "equals", methodType(boolean.class, Object.class, Object.class));
+            SAME = lookup.findStatic(PatternHandles.class, "same", methodType(boolean.class, Object.class, Object.class));
+            IS_INSTANCE = lookup.findVirtual(Class.class, "isInstance", methodType(boolean.class, Object.class));
+            HAS_LENGTH = lookup.findStatic(PatternHandles.class, "hasLength", methodType(boolean.class, int.class, Object.class));
+            HAS_MIN_LENGTH = lookup.findStatic(PatternHandles.class, "hasMinLength", methodType(boolean.class, int.class, Object.class));
+            ELEMENT = lookup.findStatic(PatternHandles.class, "element", methodType(Object.class, int.class, Object.class));
+            REST = lookup.findStatic(PatternHandles.class, "rest", methodType(Object.class, int.class, Object.class));
+            IS_PRESENT = lookup.findStatic(PatternHandles.class, "isPresent", methodType(boolean.class, Object.class));
+            IS_EMPTY = lookup.findStatic(PatternHandles.class, "isEmpty", methodType(boolean.class, Object.class));
+            OPTIONAL_GET = lookup.findStatic(PatternHandles.class, "optionalGet", methodType(Object.class, Object.class));
+            CONTAINS_KEY = lookup.findStatic(PatternHandles.class, "containsKey", methodType(boolean.class, Object.class, Object.class));
+            MAP_LOOKUP = lookup.findStatic(PatternHandles.class, "mapLookup", methodType(Object.class, Object.class, Object.class));
+            IS_MISSING = lookup.findStatic(PatternHandles.class, "isMissing", methodType(boolean.class, Object.class));
+            TRANSFORM = lookup.findStatic(Patterns.AfterOf.class, "transform", methodType(Object.class, Function.class, Object.class));
+            IS_REJECTED = lookup.findStatic(PatternHandles.class, "isRejected", methodType(boolean.class, Object.class));
+            MARK = lookup.findVirtual(MatchManager.class, "mark", methodType(int.class));
+            ROLLBACK_FALSE = lookup.findStatic(PatternHandles.class, "rollbackFalse", methodType(boolean.class, int.class, MatchManager.class));
+            ROLLBACK_TRUE = lookup.findStatic(PatternHandles.class, "rollbackTrue", methodType(boolean.class, int.class, MatchManager.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static boolean same(@Nullable Object expected, @Nullable Object value) {
+        return expected == value;
+    }
+
+    private static boolean hasLength(int length, @Nullable Object value) {
+        return value instanceof Object[] && ((Object[]) value).length == length;
+    }
+
+    private static boolean hasMinLength(int length, @Nullable Object value) {
+        return value instanceof Object[] && ((Object[]) value).length >= length;
+    }
+
+    @Nullable
+    private static Object element(int index, @NotNull Object array) {
+        return ((Object[]) array)[index];
+    }
+
+    @NotNull
+    private static Object rest(int from, @NotNull Object array) {
+        Object[] values = (Object[]) array;
+        return Arrays.copyOfRange(values, from, values.length);
+    }
+
+    private static boolean isPresent(@Nullable Object value) {
+        return value instanceof Optional && ((Optional<?>) value).isPresent();
+    }
+
+    private static boolean isEmpty(@Nullable Object value) {
+        return value instanceof Optional && !((Optional<?>) value).isPresent();
+    }
+
+    @NotNull
+    private static Object optionalGet(@NotNull Object optional) {
+        return ((Optional<?>) optional).get();
+    }
+
+    private static boolean containsKey(@Nullable Object key, @Nullable Object value) {
+        return value instanceof Map && ((Map<?, ?>) value).containsKey(key);
+    }
+
+    @Nullable
+    private static Object mapLookup(@Nullable Object key, @Nullable Object map) {
+        return Patterns.MapOf.lookup(map, key);
+    }
+
+    private static boolean isMissing(@Nullable Object value) {
+        return value == Patterns.MapOf.MISSING;
+    }
+
+    private static boolean isRejected(@Nullable Object value) {
+        return value == Patterns.AfterOf.REJECTED;
+    }
+
+    private static boolean rollbackFalse(int mark, @NotNull MatchManager mgr) {
+        mgr.rollback(mark);
+        return false;
+    }
+
+    private static boolean rollbackTrue(int mark, @NotNull MatchManager mgr) {
+        mgr.rollback(mark);
+        return true;
+    }
+
+    /** Turns a test {@code (Object) -> boolean} on the matched value into a handle of type {@link #TYPE}. */
+    @NotNull
+    private static MethodHandle test(@NotNull MethodHandle test) {
+        return MethodHandles.dropArguments(test, 0, MatchManager.class);
+    }
+
+    /** {@code handle} if {@code test} holds, {@code false} otherwise. */
+    @NotNull
+    private static MethodHandle guard(@NotNull MethodHandle test, @NotNull MethodHandle handle) {
+        return MethodHandles.guardWithTest(test, handle, FALSE);
+    }
+
+    /** Applies {@code handle} to the result of {@code filter} (of type {@code (Object) -> Object}) applied to the matched value. */
+    @NotNull
+    private static MethodHandle filter(@NotNull MethodHandle handle, @NotNull MethodHandle filter) {
+        return MethodHandles.filterArguments(handle, 1, filter);
+    }
+
+    /** Applies {@code handle} to the result of {@code transform} (of type {@code (Object) -> Object}) applied to the
+     * matched value, unless {@code failed} (of type {@code (Object) -> boolean}) holds for that result. */
+    @NotNull
+    private static MethodHandle filterUnless(@NotNull MethodHandle handle, @NotNull MethodHandle transform, @NotNull MethodHandle failed) {
+        // (Object result, MatchManager mgr, Object value) -> failed(result) ? false : handle(mgr, result)
+        MethodHandle body = MethodHandles.guardWithTest(
+                MethodHandles.dropArguments(failed, 1, MatchManager.class, Object.class),
+                MethodHandles.dropArguments(FALSE, 0, Object.class),
+                MethodHandles.dropArguments(
+                        MethodHandles.permuteArguments(handle,
+                                methodType(boolean.class, Object.class, MatchManager.class), 1, 0),
+                        2, Object.class));
+        return MethodHandles.foldArguments(body, MethodHandles.dropArguments(transform, 0, MatchManager.class));
+    }
+
+    /** Like {@code handle}, but resets the captures assigned by {@code handle} if it returns {@code false}. */
+    @NotNull
+    private static MethodHandle rollbackOnFailure(@NotNull MethodHandle handle) {
+        // (int mark, MatchManager mgr, Object value) -> handle(mgr, value) ? true : rollbackFalse(mark, mgr)
+        MethodHandle body = MethodHandles.guardWithTest(
+                MethodHandles.dropArguments(handle, 0, int.class),
+                MethodHandles.dropArguments(TRUE, 0, int.class),
+                MethodHandles.dropArguments(ROLLBACK_FALSE, 2, Object.class));
+        return MethodHandles.foldArguments(body, MARK);
+    }
+
+    /** Returns a method handle of type {@link #TYPE} that behaves like <code>pattern.{@link Pattern#matches matches}</code>.
+     * See the {@linkplain PatternHandles class description}.
+     *
+     * @param pattern the pattern to translate
+     * @return the method handle
+     */
+    @NotNull
+    @Contract(pure = true)
+    public static MethodHandle lower(@NotNull Pattern<?> pattern) {
+        if (pattern instanceof Patterns.Instance)
+            pattern = ((Patterns.Instance<?>) pattern).instancePattern;
+
+        if (pattern == Patterns.Any) {
+            return TRUE;
+        } else if (pattern == Patterns.Null) {
+            return test(IS_NULL);
+        } else if (pattern instanceof Patterns.IsValue) {
+            Object expected = ((Patterns.IsValue<?>) pattern).expected;
+            return test(MethodHandles.insertArguments(expected instanceof Enum ? SAME : EQUALS, 0, expected));
+        } else if (pattern instanceof Patterns.NotNullOf) {
+            return guard(test(IS_NOT_NULL), lower(((Patterns.NotNullOf<?>) pattern).pattern));
+        } else if (pattern instanceof Patterns.InstanceOf) {
+            Patterns.InstanceOf<?> instanceOf = (Patterns.InstanceOf<?>) pattern;
+            return guard(test(IS_INSTANCE.bindTo(instanceOf.clazz)), lower(instanceOf.pattern));
+        } else if (pattern instanceof Patterns.AllOf) {
+            return and(((Patterns.AllOf<?>) pattern).patterns);
+        } else if (pattern instanceof Patterns.AnyOf) {
+            Pattern<?>[] alternatives = ((Patterns.AnyOf<?>) pattern).patterns;
+            MethodHandle handle = FALSE;
+            for (int i = alternatives.length - 1; i >= 0; i--)
+                handle = MethodHandles.guardWithTest(rollbackOnFailure(lower(alternatives[i])), TRUE, handle);
+            return handle;
+        } else if (pattern instanceof Patterns.NoMatchOf) {
+            // (int mark, MatchManager mgr, Object value) -> handle(mgr, value) ? rollbackFalse(...) : rollbackTrue(...)
+            MethodHandle body = MethodHandles.guardWithTest(
+                    MethodHandles.dropArguments(lower(((Patterns.NoMatchOf<?>) pattern).pattern), 0, int.class),
+                    MethodHandles.dropArguments(ROLLBACK_FALSE, 2, Object.class),
+                    MethodHandles.dropArguments(ROLLBACK_TRUE, 2, Object.class));
+            return MethodHandles.foldArguments(body, MARK);
+        } else if (pattern instanceof Patterns.ArrayOf) {
+            Pattern<?>[] elements = ((Patterns.ArrayOf<?>) pattern).patterns;
+            return guard(test(MethodHandles.insertArguments(HAS_LENGTH, 0, elements.length)), elements(elements, null));
+        } else if (pattern instanceof Patterns.ArrayWithRest) {
+            Patterns.ArrayWithRest<?> array = (Patterns.ArrayWithRest<?>) pattern;
+            MethodHandle rest = array.more == Patterns.Any ? null
+                    : filter(lower(array.more), MethodHandles.insertArguments(REST, 0, array.these.length));
+            return guard(test(MethodHandles.insertArguments(HAS_MIN_LENGTH, 0, array.these.length)),
+                    elements(array.these, rest));
+        } else if (pattern instanceof Patterns.OptionalOf) {
+            return guard(test(IS_PRESENT), filter(lower(((Patterns.OptionalOf<?>) pattern).pattern), OPTIONAL_GET));
+        } else if (pattern instanceof Patterns.OptionalEmpty) {
+            return test(IS_EMPTY);
+        } else if (pattern instanceof Patterns.MapOf && ((Patterns.MapOf<?, ?>) pattern).rest == null) {
+            Map.Entry<?, ? extends Pattern<?>>[] entries = ((Patterns.MapOf<?, ?>) pattern).patterns;
+            MethodHandle handle = test(IS_NOT_NULL);
+            for (int i = entries.length - 1; i >= 0; i--) {
+                Object key = entries[i].getKey();
+                MethodHandle entry = entries[i].getValue() == Patterns.Any
+                        ? test(MethodHandles.insertArguments(CONTAINS_KEY, 0, key))
+                        : filterUnless(lower(entries[i].getValue()), MethodHandles.insertArguments(MAP_LOOKUP, 0, key), IS_MISSING);
+                handle = i == entries.length - 1 ? entry : MethodHandles.guardWithTest(entry, handle, FALSE);
+            }
+            return handle;
+        } else if (pattern instanceof Patterns.AfterOf) {
+            Patterns.AfterOf<?, ?> after = (Patterns.AfterOf<?, ?>) pattern;
+            return filterUnless(lower(after.pattern), TRANSFORM.bindTo(after.function), IS_REJECTED);
+        } else {
+            return MATCHES.bindTo(pattern);
+        }
+    }
+
+    @NotNull
+    private static MethodHandle and(@NotNull Pattern<?> @NotNull [] patterns) {
+        MethodHandle handle = null;
+        for (int i = patterns.length - 1; i >= 0; i--) {
+            if (patterns[i] == Patterns.Any) continue;
+            MethodHandle conjunct = lower(patterns[i]);
+            handle = handle == null ? conjunct : MethodHandles.guardWithTest(conjunct, handle, FALSE);
+        }
+        return handle == null ? TRUE : handle;
+    }
+
+    /** The conjunction of all {@code elements[i]} applied to the {@code i}-th element of the matched value,
+     * and {@code last} (if not {@code null}). */
+    @NotNull
+    private static MethodHandle elements(@NotNull Pattern<?> @NotNull [] elements, @Nullable MethodHandle last) {
+        MethodHandle handle = last;
+        for (int i = elements.length - 1; i >= 0; i--) {
+            if (elements[i] == Patterns.Any) continue;
+            MethodHandle element = filter(lower(elements[i]), MethodHandles.insertArguments(ELEMENT, 0, i));
+            handle = handle == null ? element : MethodHandles.guardWithTest(element, handle, FALSE);
+        }
+        return handle == null ? TRUE : handle;
+    }
+
+    /** The pattern used by {@link Matcher.Backend#METHOD_HANDLES} instead of {@code pattern}. */
+    @NotNull
+    static Pattern<Object> lowered(@NotNull Pattern<?> pattern) {
+        return new Lowered(lower(pattern), pattern);
+    }
+
+    private static final class Lowered extends Pattern<Object> {
+        @NotNull private final MethodHandle handle;
+        @NotNull private final Pattern<?> source;
+
+        @Contract(pure = true)
+        Lowered(@NotNull MethodHandle handle, @NotNull Pattern<?> source) {
+            this.handle = handle;
+            this.source = source;
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable Object value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable Object value) {
+            return invoke(handle, mgr, value);
+        }
+
+        @Override
+        public String toString() {
+            return source.toString();
+        }
+    }
+
+    /** Invokes a method handle returned by {@link #lower}.<p>
+     *
+     * This method is small enough to be inlined by the JIT, so if {@code handle} is a constant
+     * (e.g., a {@code static final} field) at the call site, the pattern is inlined as well.
+     *
+     * @param handle a handle of type {@link #TYPE}
+     * @param mgr the {@link MatchManager} passed to {@link Pattern#matches}
+     * @param value the matched value
+     * @return whether the pattern matched
+     */
+    public static boolean invoke(@NotNull MethodHandle handle, @NotNull MatchManager mgr, @Nullable Object value) {
+        try {
+            return (boolean) handle.invokeExact(mgr, value);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            // Patterns cannot throw checked exceptions
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -8,7 +8,8 @@ import org.jetbrains.annotations.Contract;
  * and can be thrown using {@link Pattern#reject()}.<p>
  *
  * This exception should not be caught inside a pattern match because the state of the captures
- * may be undefined then. Instead, to recover from a match failure of a subpattern, use {@link MatchManager#protectedBlock}.
+ * may be undefined then. Instead, to recover from a match failure of a subpattern, use {@link MatchManager#protectedBlock}
+ * (or {@link MatchManager#mark()} and {@link MatchManager#rollback}).
  */
 public final class PatternMatchReject extends Exception {
     @Override
@@ -0,0 +1,455 @@
+package de.unruh.javapatterns;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Rewrites the patterns of a {@link Matcher} into equivalent patterns that are faster to match.<p>
+ *
+ * The rewritten pattern matches the same values and assigns the same captures as the original one.
+ * Only the built-in patterns from {@link Patterns} are rewritten, other patterns are kept as they are
+ * (together with their subpatterns). The following rewrites are performed:
+ * <ul>
+ * <li>In {@link Patterns#Or Or}, consecutive alternatives that are comparisons with constants
+ *     ({@link Patterns#Is(Object) Is}) or type tests without subpattern
+ *     (<code>{@link Patterns#Instance(Class, Pattern) Instance}(…, {@link Patterns#Any Any})</code>)
+ *     are combined into a single set lookup (see {@link Patterns#IsOneOf}).</li>
+ * <li>The subpatterns of {@link Patterns#And And} are reordered so that cheap subpatterns come first,
+ *     as far as the dependencies between the subpatterns allow (see {@link #mustPrecede}).
+ *     The cost of a subpattern is estimated (see {@link Effects}) or declared using {@link Patterns#Cost}.</li>
+ * <li>{@link Patterns#Cost} is removed (after reordering).</li>
+ * </ul>
+ */
+final class PatternOptimizer {
+    private PatternOptimizer() {}
+
+    /** Returns a pattern equivalent to {@code pattern} (possibly {@code pattern} itself). */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    @Contract(pure = true)
+    @NotNull
+    static <T> Pattern<T> optimize(@NotNull Pattern<T> pattern) {
+        if (pattern instanceof Patterns.Instance)
+            return (Pattern<T>) optimize(((Patterns.Instance<?>) pattern).instancePattern);
+        if (pattern instanceof Patterns.NotNullOf) {
+            Pattern<?> sub = ((Patterns.NotNullOf<?>) pattern).pattern;
+            Pattern<?> optimized = optimize(sub);
+            return optimized == sub ? pattern : new Patterns.NotNullOf(optimized);
+        }
+        if (pattern instanceof Patterns.InstanceOf) {
+            Patterns.InstanceOf<?> instanceOf = (Patterns.InstanceOf<?>) pattern;
+            Pattern<?> optimized = optimize(instanceOf.pattern);
+            return optimized == instanceOf.pattern ? pattern : (Pattern<T>) new Patterns.InstanceOf(instanceOf.clazz, optimized);
+        }
+        if (pattern instanceof Patterns.NoMatchOf) {
+            Pattern<?> sub = ((Patterns.NoMatchOf<?>) pattern).pattern;
+            Pattern<?> optimized = optimize(sub);
+            return optimized == sub ? pattern : new Patterns.NoMatchOf(optimized);
+        }
+        if (pattern instanceof Patterns.OptionalOf) {
+            Pattern<?> sub = ((Patterns.OptionalOf<?>) pattern).pattern;
+            Pattern<?> optimized = optimize(sub);
+            return optimized == sub ? pattern : new Patterns.OptionalOf(optimized);
+        }
+        if (pattern instanceof Patterns.AfterOf) {
+            Patterns.AfterOf<?, ?> after = (Patterns.AfterOf<?, ?>) pattern;
+            Pattern<?> optimized = optimize(after.pattern);
+            return optimized == after.pattern ? pattern : new Patterns.AfterOf(after.function, optimized);
+        }
+        if (pattern instanceof Patterns.AfterView) {
+            Patterns.AfterView<?, ?> after = (Patterns.AfterView<?, ?>) pattern;
+            Pattern<?> optimized = optimize(after.pattern);
+            return optimized == after.pattern ? pattern : new Patterns.AfterView(after.view, optimized);
+        }
+        if (pattern instanceof Patterns.WithCost)
+            return optimize(((Patterns.WithCost<T>) pattern).pattern);
+        if (pattern instanceof Patterns.AllOf)
+            return optimizeAnd((Patterns.AllOf<T>) pattern);
+        if (pattern instanceof Patterns.ArrayOf) {
+            Pattern<?>[] patterns = ((Patterns.ArrayOf<?>) pattern).patterns;
+            Pattern<?>[] optimized = optimizeAll(patterns);
+            return optimized == patterns ? pattern : (Pattern<T>) new Patterns.ArrayOf(optimized);
+        }
+        if (pattern instanceof Patterns.ArrayWithRest) {
+            Patterns.ArrayWithRest<?> array = (Patterns.ArrayWithRest<?>) pattern;
+            Pattern<?>[] these = optimizeAll(array.these);
+            Pattern<?> more = optimize(array.more);
+            return these == array.these && more == array.more ? pattern : (Pattern<T>) new Patterns.ArrayWithRest(these, more);
+        }
+        if (pattern instanceof Patterns.ArrayPrefixOf) {
+            Patterns.ArrayPrefixOf<?> array = (Patterns.ArrayPrefixOf<?>) pattern;
+            Pattern<?>[] these = optimizeAll(array.these);
+            Pattern<?> rest = optimize(array.rest);
+            return these == array.these && rest == array.rest ? pattern : (Pattern<T>) new Patterns.ArrayPrefixOf(these, rest);
+        }
+        if (pattern instanceof Patterns.SliceOf) {
+            Pattern<?>[] patterns = ((Patterns.SliceOf<?>) pattern).patterns;
+            Pattern<?>[] optimized = optimizeAll(patterns);
+            return optimized == patterns ? pattern : (Pattern<T>) new Patterns.SliceOf(optimized);
+        }
+        if (pattern instanceof Patterns.SliceWithRest) {
+            Patterns.SliceWithRest<?> slice = (Patterns.SliceWithRest<?>) pattern;
+            Pattern<?>[] these = optimizeAll(slice.these);
+            Pattern<?> rest = optimize(slice.rest);
+            return these == slice.these && rest == slice.rest ? pattern : (Pattern<T>) new Patterns.SliceWithRest(these, rest);
+        }
+        if (pattern instanceof Patterns.ListOf) {
+            Pattern<?>[] patterns = ((Patterns.ListOf<?>) pattern).patterns;
+            Pattern<?>[] optimized = optimizeAll(patterns);
+            return optimized == patterns ? pattern : (Pattern<T>) new Patterns.ListOf(optimized);
+        }
+        if (pattern instanceof Patterns.ListWithRest) {
+            Patterns.ListWithRest<?> list = (Patterns.ListWithRest<?>) pattern;
+            Pattern<?>[] these = optimizeAll(list.these);
+            Pattern<?> more = optimize(list.more);
+            return these == list.these && more == list.more ? pattern : (Pattern<T>) new Patterns.ListWithRest(these, more);
+        }
+        if (pattern instanceof Patterns.PrimitiveArrayOf) {
+            Patterns.PrimitiveArrayOf<?, ?> array = (Patterns.PrimitiveArrayOf<?, ?>) pattern;
+            Pattern<?>[] patterns = optimizeAll(array.patterns);
+            Pattern<?> rest = array.rest == null ? null : optimize(array.rest);
+            return patterns == array.patterns && rest == array.rest ? pattern : (Pattern<T>) array.with((Pattern[]) patterns, rest);
+        }
+        if (pattern instanceof Patterns.ContainsOf) {
+            Pattern<?> sub = ((Patterns.ContainsOf<?>) pattern).pattern;
+            Pattern<?> optimized = optimize(sub);
+            return optimized == sub ? pattern : new Patterns.ContainsOf(optimized);
+        }
+        if (pattern instanceof Patterns.ContainsAllOf) {
+            Pattern<?>[] patterns = ((Patterns.ContainsAllOf<?>) pattern).patterns;
+            Pattern<?>[] optimized = optimizeAll(patterns);
+            return optimized == patterns ? pattern : (Pattern<T>) new Patterns.ContainsAllOf(optimized);
+        }
+        if (pattern instanceof Patterns.MapOf) {
+            Patterns.MapOf<?, ?> map = (Patterns.MapOf<?, ?>) pattern;
+            Map.Entry<?, ? extends Pattern<?>>[] entries = map.patterns;
+            Map.Entry<?, ? extends Pattern<?>>[] optimized = null;
+            for (int i = 0; i < entries.length; i++) {
+                Pattern<?> sub = optimize(entries[i].getValue());
+                if (sub != entries[i].getValue()) {
+                    if (optimized == null) optimized = entries.clone();
+                    optimized[i] = new AbstractMap.SimpleImmutableEntry<>(entries[i].getKey(), sub);
+                }
+            }
+            Pattern<?> rest = map.rest == null ? null : optimize(map.rest);
+            return optimized == null && rest == map.rest ? pattern
+                    : (Pattern<T>) new Patterns.MapOf(optimized == null ? entries : optimized, rest);
+        }
+        if (pattern instanceof Patterns.AnyOf)
+            return optimizeOr((Patterns.AnyOf<T>) pattern);
+        return pattern;
+    }
+
+    /** Optimizes all of {@code patterns}. Returns {@code patterns} itself if nothing changed. */
+    @NotNull
+    private static Pattern<?> @NotNull [] optimizeAll(@NotNull Pattern<?> @NotNull [] patterns) {
+        Pattern<?>[] result = patterns;
+        for (int i = 0; i < patterns.length; i++) {
+            Pattern<?> optimized = optimize(patterns[i]);
+            if (optimized != patterns[i]) {
+                if (result == patterns) result = patterns.clone();
+                result[i] = optimized;
+            }
+        }
+        return result;
+    }
+
+    /** Whether {@code pattern} can be part of a {@link Patterns.OneOf}. */
+    private static boolean isSetMember(@NotNull Pattern<?> pattern) {
+        return pattern instanceof Patterns.IsValue || pattern instanceof Patterns.OneOf ||
+                (pattern instanceof Patterns.InstanceOf && ((Patterns.InstanceOf<?>) pattern).pattern == Patterns.Any);
+    }
+
+    /** Combines consecutive alternatives of {@code or} into {@link Patterns.OneOf} patterns. */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    @NotNull
+    private static <T> Pattern<T> optimizeOr(@NotNull Patterns.AnyOf<T> or) {
+        Pattern<?>[] alternatives = optimizeAll(or.patterns);
+        List<Pattern<?>> result = new ArrayList<>();
+        for (int i = 0; i < alternatives.length; ) {
+            int end = i;
+            while (end < alternatives.length && isSetMember(alternatives[end]))
+                end++;
+            if (end - i < 2) {
+                result.add(alternatives[i]);
+                i++;
+                continue;
+            }
+            List<Object> values = new ArrayList<>();
+            List<Class<?>> classes = new ArrayList<>();
+            for (; i < end; i++) {
+                Pattern<?> alternative = alternatives[i];
+                if (alternative instanceof Patterns.IsValue)
+                    values.add(((Patterns.IsValue<?>) alternative).expected);
+                else if (alternative instanceof Patterns.InstanceOf)
+                    classes.add(((Patterns.InstanceOf<?>) alternative).clazz);
+                else {
+                    Patterns.OneOf<?> oneOf = (Patterns.OneOf<?>) alternative;
+                    values.addAll(oneOf.values);
+                    if (oneOf.containsNull) values.add(null);
+                    for (Class<?> clazz : oneOf.classes)
+                        classes.add(clazz);
+                }
+            }
+            result.add(new Patterns.OneOf<>(values, classes.toArray(new Class<?>[0])));
+        }
+        if (result.size() == 1)
+            return (Pattern<T>) result.get(0);
+        if (result.size() == or.patterns.length && alternatives == or.patterns)
+            return or;
+        return new Patterns.AnyOf(result.toArray(new Pattern<?>[0]));
+    }
+
+    /** Reorders the subpatterns of {@code and}, cheapest first, but respecting {@link #mustPrecede}. */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    @NotNull
+    private static <T> Pattern<T> optimizeAnd(@NotNull Patterns.AllOf<T> and) {
+        Pattern<?>[] patterns = and.patterns;
+        int n = patterns.length;
+        Effects[] effects = new Effects[n];
+        for (int i = 0; i < n; i++)
+            effects[i] = effects(patterns[i]);
+        Pattern<?>[] optimized = optimizeAll(patterns);
+
+        // Repeatedly pick the cheapest subpattern all of whose predecessors have been picked
+        Pattern<?>[] result = new Pattern<?>[n];
+        boolean[] placed = new boolean[n];
+        boolean reordered = false;
+        for (int k = 0; k < n; k++) {
+            int best = -1;
+            candidates:
+            for (int j = 0; j < n; j++) {
+                if (placed[j]) continue;
+                for (int i = 0; i < j; i++)
+                    if (!placed[i] && mustPrecede(effects[i], effects[j]))
+                        continue candidates;
+                if (best == -1 || effects[j].cost < effects[best].cost)
+                    best = j;
+            }
+            assert best != -1; // the first unplaced subpattern is always a candidate
+            placed[best] = true;
+            result[k] = optimized[best];
+            if (best != k) reordered = true;
+        }
+        if (!reordered && optimized == patterns)
+            return and;
+        return new Patterns.AllOf(result);
+    }
+
+    /** What is known about a subpattern of {@link Patterns#And And}, for deciding whether it can be moved. */
+    private static final class Effects {
+        /** The captures that the pattern may assign, {@code null} if unknown. */
+        @Nullable Set<Object> writes = newSet();
+        /** The captures that the pattern may read, {@code null} if unknown. */
+        @Nullable Set<Object> reads = newSet();
+        /** Whether the pattern contains code that is not known (lambda expressions or user-defined patterns).
+         * Such code may throw exceptions or read captures. */
+        boolean opaque;
+        /** Whether the pattern is or contains a type test ({@link Patterns.InstanceOf}), e.g., in an alternative of
+         * {@link Patterns#Or Or}. */
+        boolean typeTest;
+        /** Whether the pattern (or a subpattern) casts the matched value (e.g., to an array). Such a pattern could fail
+         * with an exception if it is tried before a type test. */
+        boolean casts;
+        /** The estimated cost of matching the pattern. */
+        double cost;
+
+        /** Adds the effects and cost of a subpattern. */
+        void add(@NotNull Effects sub) {
+            writes = union(writes, sub.writes);
+            reads = union(reads, sub.reads);
+            opaque |= sub.opaque;
+            typeTest |= sub.typeTest;
+            casts |= sub.casts;
+            cost += sub.cost;
+        }
+    }
+
+    @NotNull
+    private static Set<Object> newSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    @Nullable
+    private static Set<Object> union(@Nullable Set<Object> a, @Nullable Set<Object> b) {
+        if (a == null || b == null) return null;
+        a.addAll(b);
+        return a;
+    }
+
+    /** Whether the sets of captures {@code a} and {@code b} may intersect ({@code null} meaning unknown). */
+    private static boolean intersects(@Nullable Set<Object> a, @Nullable Set<Object> b) {
+        if (a == null) return b == null || !b.isEmpty();
+        if (b == null) return !a.isEmpty();
+        for (Object x : a)
+            if (b.contains(x))
+                return true;
+        return false;
+    }
+
+    /** Whether a subpattern with effects {@code first} must stay before a later subpattern with effects {@code second}.<p>
+     *
+     * Opaque patterns are never moved before a preceding pattern (since they might throw an exception that the preceding
+     * pattern would have prevented), nor are casting patterns moved before type tests. And a pattern that reads or assigns a
+     * capture stays after a pattern that may assign or read it.
+     */
+    private static boolean mustPrecede(@NotNull Effects first, @NotNull Effects second) {
+        if (second.opaque)
+            return true;
+        if (second.casts && (first.typeTest || first.opaque))
+            return true;
+        return intersects(first.writes, second.reads) || intersects(first.reads, second.writes) ||
+                intersects(first.writes, second.writes);
+    }
+
+    /** Analyzes {@code pattern}. */
+    @NotNull
+    private static Effects effects(@NotNull Pattern<?> pattern) {
+        if (pattern instanceof Patterns.Instance)
+            pattern = ((Patterns.Instance<?>) pattern).instancePattern;
+        Effects effects = new Effects();
+
+        if (pattern instanceof Patterns.WithCost) {
+            Patterns.WithCost<?> withCost = (Patterns.WithCost<?>) pattern;
+            effects = effects(withCost.pattern);
+            effects.cost = withCost.cost;
+        } else if (pattern == Patterns.Any) {
+            effects.cost = 0;
+        } else if (pattern == Patterns.Null || pattern instanceof Patterns.IsValue) {
+            effects.cost = 1;
+        } else if (pattern instanceof Patterns.OneOf) {
+            effects.cost = 2;
+        } else if (pattern instanceof Capture || pattern instanceof IntCapture ||
+                pattern instanceof LongCapture || pattern instanceof DoubleCapture) {
+            assert effects.writes != null;
+            effects.writes.add(pattern);
+            effects.cost = 2;
+        } else if (pattern instanceof Patterns.IsCapture) {
+            assert effects.reads != null;
+            effects.reads.add(((Patterns.IsCapture<?>) pattern).capture);
+            effects.cost = 3;
+        } else if (pattern instanceof Patterns.NotNullOf) {
+            effects.add(effects(((Patterns.NotNullOf<?>) pattern).pattern));
+            effects.cost += 1;
+        } else if (pattern instanceof Patterns.InstanceOf) {
+            effects.add(effects(((Patterns.InstanceOf<?>) pattern).pattern));
+            effects.typeTest = true;
+            // Casts in the subpattern are protected by the type test
+            effects.casts = false;
+            effects.cost += 1;
+        } else if (pattern instanceof Patterns.AllOf) {
+            for (Pattern<?> sub : ((Patterns.AllOf<?>) pattern).patterns)
+                effects.add(effects(sub));
+        } else if (pattern instanceof Patterns.AnyOf) {
+            for (Pattern<?> sub : ((Patterns.AnyOf<?>) pattern).patterns) {
+                effects.add(effects(sub));
+                effects.cost += 1;
+            }
+        } else if (pattern instanceof Patterns.NoMatchOf) {
+            effects.add(effects(((Patterns.NoMatchOf<?>) pattern).pattern));
+            effects.cost += 1;
+        } else if (pattern instanceof Patterns.ArrayOf) {
+            for (Pattern<?> sub : ((Patterns.ArrayOf<?>) pattern).patterns)
+                effects.add(effects(sub));
+            effects.casts = true;
+            effects.cost += 2;
+        } else if (pattern instanceof Patterns.ArrayWithRest) {
+            Patterns.ArrayWithRest<?> array = (Patterns.ArrayWithRest<?>) pattern;
+            for (Pattern<?> sub : array.these)
+                effects.add(effects(sub));
+            effects.add(effects(array.more));
+            effects.casts = true;
+            effects.cost += 5;
+        } else if (pattern instanceof Patterns.ArrayPrefixOf) {
+            Patterns.ArrayPrefixOf<?> array = (Patterns.ArrayPrefixOf<?>) pattern;
+            for (Pattern<?> sub : array.these)
+                effects.add(effects(sub));
+            effects.add(effects(array.rest));
+            effects.casts = true;
+            effects.cost += 3;
+        } else if (pattern instanceof Patterns.SliceOf) {
+            for (Pattern<?> sub : ((Patterns.SliceOf<?>) pattern).patterns)
+                effects.add(effects(sub));
+            effects.casts = true;
+            effects.cost += 2;
+        } else if (pattern instanceof Patterns.SliceWithRest) {
+            Patterns.SliceWithRest<?> slice = (Patterns.SliceWithRest<?>) pattern;
+            for (Pattern<?> sub : slice.these)
+                effects.add(effects(sub));
+            effects.add(effects(slice.rest));
+            effects.casts = true;
+            effects.cost += 3;
+        } else if (pattern instanceof Patterns.ListOf) {
+            for (Pattern<?> sub : ((Patterns.ListOf<?>) pattern).patterns)
+                effects.add(effects(sub));
+            effects.casts = true;
+            effects.cost += 3;
+        } else if (pattern instanceof Patterns.ListWithRest) {
+            Patterns.ListWithRest<?> list = (Patterns.ListWithRest<?>) pattern;
+            for (Pattern<?> sub : list.these)
+                effects.add(effects(sub));
+            effects.add(effects(list.more));
+            effects.casts = true;
+            effects.cost += 4;
+        } else if (pattern instanceof Patterns.PrimitiveArrayOf) {
+            Patterns.PrimitiveArrayOf<?, ?> array = (Patterns.PrimitiveArrayOf<?, ?>) pattern;
+            for (Pattern<?> sub : array.patterns)
+                effects.add(effects(sub));
+            if (array.rest != null)
+                effects.add(effects(array.rest));
+            effects.casts = true;
+            effects.cost += 2;
+        } else if (pattern instanceof Patterns.ContainsOf) {
+            effects.add(effects(((Patterns.ContainsOf<?>) pattern).pattern));
+            effects.casts = true;
+            effects.cost += 20;
+        } else if (pattern instanceof Patterns.ContainsAllOf) {
+            for (Pattern<?> sub : ((Patterns.ContainsAllOf<?>) pattern).patterns)
+                effects.add(effects(sub));
+            effects.casts = true;
+            effects.cost += 50;
+        } else if (pattern instanceof Patterns.OptionalOf) {
+            effects.add(effects(((Patterns.OptionalOf<?>) pattern).pattern));
+            effects.casts = true;
+            effects.cost += 2;
+        } else if (pattern instanceof Patterns.OptionalEmpty) {
+            effects.casts = true;
+            effects.cost = 2;
+        } else if (pattern instanceof Patterns.MapOf) {
+            Patterns.MapOf<?, ?> map = (Patterns.MapOf<?, ?>) pattern;
+            for (Map.Entry<?, ? extends Pattern<?>> entry : map.patterns) {
+                effects.add(effects(entry.getValue()));
+                effects.cost += 10;
+            }
+            if (map.rest != null) {
+                effects.add(effects(map.rest));
+                effects.cost += 5;
+            }
+            effects.casts = true;
+        } else if (pattern instanceof Patterns.AfterOf || pattern instanceof Patterns.AfterView) {
+            effects.add(effects(pattern instanceof Patterns.AfterOf ? ((Patterns.AfterOf<?, ?>) pattern).pattern
+                    : ((Patterns.AfterView<?, ?>) pattern).pattern));
+            effects.opaque = true;
+            effects.reads = null;
+            effects.cost += 20;
+        } else {
+            // Built-in patterns with lambda expressions (such as Is(predicate)), or user-defined patterns
+            effects.opaque = true;
+            effects.reads = null;
+            if (pattern.assignsNoCaptures()) {
+                effects.cost = 20;
+            } else {
+                effects.writes = null;
+                effects.cost = 50;
+            }
+        }
+        return effects;
+    }
+}
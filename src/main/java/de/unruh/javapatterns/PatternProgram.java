@@ -0,0 +1,435 @@
+package de.unruh.javapatterns;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+
+/** The patterns of the cases of a {@link Matcher}, compiled into a flat array of instructions
+ * ({@link Matcher.Backend#INSTRUCTIONS}).<p>
+ *
+ * All cases share one {@code int[]} array of instructions and one array of constants (subpatterns, classes,
+ * constant values, …), which are executed by the interpreter loop in {@link #run}.
+ * The built-in patterns from {@link Patterns} are translated into instructions, other patterns are invoked
+ * via {@link Pattern#matches} by the {@link #CALL} instruction.<p>
+ *
+ * The interpreter works on registers: object registers hold the matched value (register 0) and the values
+ * extracted from it (e.g., array elements), and int registers hold the marks for resetting captures
+ * ({@link MatchManager#mark()}). The registers are stored in the {@link MatchManager}.
+ * Each instruction consists of an opcode followed by its operands. Tests jump to their "fail" operand
+ * if the test does not hold.
+ */
+final class PatternProgram {
+    /** {@code IS_NULL reg fail}: fails if register {@code reg} is not {@code null}. */
+    static final int IS_NULL = 0;
+    /** {@code NOT_NULL reg fail}: fails if register {@code reg} is {@code null}. */
+    static final int NOT_NULL = 1;
+    /** {@code EQUALS reg fail const}: fails unless register {@code reg} equals constant {@code const}. */
+    static final int EQUALS = 2;
+    /** {@code SAME reg fail const}: fails unless register {@code reg} is constant {@code const}. */
+    static final int SAME = 3;
+    /** {@code INSTANCE reg fail const}: fails unless register {@code reg} is an instance of class {@code const}. */
+    static final int INSTANCE = 4;
+    /** {@code LENGTH reg fail n}: fails unless register {@code reg} is an array of length {@code n}. */
+    static final int LENGTH = 5;
+    /** {@code MIN_LENGTH reg fail n}: fails unless register {@code reg} is an array of length at least {@code n}. */
+    static final int MIN_LENGTH = 6;
+    /** {@code ELEMENT reg i dst}: stores element {@code i} of array {@code reg} in register {@code dst}. */
+    static final int ELEMENT = 7;
+    /** {@code REST reg i dst}: stores the elements from {@code i} on of array {@code reg} as a new array in register {@code dst}. */
+    static final int REST = 8;
+    /** {@code PRESENT reg fail}: fails unless register {@code reg} is a nonempty {@link Optional}. */
+    static final int PRESENT = 9;
+    /** {@code EMPTY reg fail}: fails unless register {@code reg} is an empty {@link Optional}. */
+    static final int EMPTY = 10;
+    /** {@code OPTIONAL_GET reg dst}: stores the content of the {@link Optional} {@code reg} in register {@code dst}. */
+    static final int OPTIONAL_GET = 11;
+    /** {@code CONTAINS_KEY reg fail const}: fails unless register {@code reg} is a {@link Map} containing key {@code const}. */
+    static final int CONTAINS_KEY = 12;
+    /** {@code MAP_LOOKUP reg fail const dst}: fails unless register {@code reg} is a {@link Map} containing key {@code const},
+     * stores the value for that key in register {@code dst} (see {@link Patterns.MapOf#lookup}). */
+    static final int MAP_LOOKUP = 13;
+    /** {@code TRANSFORM reg fail const dst}: applies the function {@code const} (see {@link Patterns#After}) to register
+     * {@code reg} and stores the result in register {@code dst}. Fails if the function rejects. */
+    static final int TRANSFORM = 14;
+    /** {@code CALL reg fail const}: fails unless pattern {@code const} matches register {@code reg}. */
+    static final int CALL = 15;
+    /** {@code MARK mark}: stores {@link MatchManager#mark()} in int register {@code mark}. */
+    static final int MARK = 16;
+    /** {@code ROLLBACK mark}: resets the captures assigned since the mark in int register {@code mark}. */
+    static final int ROLLBACK = 17;
+    /** {@code GOTO target}: continues at {@code target}. */
+    static final int GOTO = 18;
+    /** {@code SUCCEED}: the case matches. */
+    static final int SUCCEED = 19;
+    /** {@code FAIL}: the case does not match. */
+    static final int FAIL = 20;
+
+    private final int @NotNull [] code;
+    @Nullable private final Object @NotNull [] constants;
+    /** For each case, the position of its first instruction. */
+    private final int @NotNull [] entries;
+    private final int registerCount;
+    private final int markCount;
+
+    @Contract(pure = true)
+    private PatternProgram(int @NotNull [] code, @Nullable Object @NotNull [] constants, int @NotNull [] entries,
+                           int registerCount, int markCount) {
+        this.code = code;
+        this.constants = constants;
+        this.entries = entries;
+        this.registerCount = registerCount;
+        this.markCount = markCount;
+    }
+
+    /** Compiles the given patterns (one per case) into one program. */
+    @NotNull
+    static PatternProgram compile(@NotNull Pattern<?> @NotNull [] patterns) {
+        Compiler compiler = new Compiler();
+        int[] entries = new int[patterns.length];
+        for (int i = 0; i < patterns.length; i++)
+            entries[i] = compiler.compileCase(patterns[i]);
+        return new PatternProgram(Arrays.copyOf(compiler.code, compiler.length), compiler.constants.toArray(),
+                entries, compiler.maxRegisters, compiler.maxMarks);
+    }
+
+    /** Prepares {@code mgr} for running this program (allocates the registers if needed). */
+    void prepare(@NotNull MatchManager mgr) {
+        if (mgr.registers == null || mgr.registers.length < registerCount)
+            mgr.registers = new Object[registerCount];
+        mgr.registerCount = registerCount;
+        if (markCount > 0 && (mgr.marks == null || mgr.marks.length < markCount))
+            mgr.marks = new int[markCount];
+    }
+
+    /** Runs the code of case {@code caseIndex} on {@code value}. {@code mgr} must have been {@linkplain #prepare prepared}.
+     * @return whether the pattern of the case matches */
+    @SuppressWarnings("unchecked")
+    boolean run(int caseIndex, @NotNull MatchManager mgr, @Nullable Object value) {
+        final int[] code = this.code;
+        final Object[] constants = this.constants;
+        final Object[] registers = mgr.registers;
+        final int[] marks = mgr.marks;
+        assert registers != null;
+        registers[0] = value;
+        int pc = entries[caseIndex];
+        while (true) {
+            switch (code[pc]) {
+                case IS_NULL:
+                    pc = registers[code[pc + 1]] == null ? pc + 3 : code[pc + 2];
+                    break;
+                case NOT_NULL:
+                    pc = registers[code[pc + 1]] != null ? pc + 3 : code[pc + 2];
+                    break;
+                case EQUALS:
+                    pc = Objects.equals(constants[code[pc + 3]], registers[code[pc + 1]]) ? pc + 4 : code[pc + 2];
+                    break;
+                case SAME:
+                    pc = constants[code[pc + 3]] == registers[code[pc + 1]] ? pc + 4 : code[pc + 2];
+                    break;
+                case INSTANCE:
+                    pc = ((Class<?>) constants[code[pc + 3]]).isInstance(registers[code[pc + 1]]) ? pc + 4 : code[pc + 2];
+                    break;
+                case LENGTH: {
+                    Object array = registers[code[pc + 1]];
+                    pc = array instanceof Object[] && ((Object[]) array).length == code[pc + 3] ? pc + 4 : code[pc + 2];
+                    break;
+                }
+                case MIN_LENGTH: {
+                    Object array = registers[code[pc + 1]];
+                    pc = array instanceof Object[] && ((Object[]) array).length >= code[pc + 3] ? pc + 4 : code[pc + 2];
+                    break;
+                }
+                case ELEMENT:
+                    registers[code[pc + 3]] = ((Object[]) registers[code[pc + 1]])[code[pc + 2]];
+                    pc += 4;
+                    break;
+                case REST: {
+                    Object[] array = (Object[]) registers[code[pc + 1]];
+                    registers[code[pc + 3]] = Arrays.copyOfRange(array, code[pc + 2], array.length);
+                    pc += 4;
+                    break;
+                }
+                case PRESENT: {
+                    Object optional = registers[code[pc + 1]];
+                    pc = optional instanceof Optional && ((Optional<?>) optional).isPresent() ? pc + 3 : code[pc + 2];
+                    break;
+                }
+                case EMPTY: {
+                    Object optional = registers[code[pc + 1]];
+                    pc = optional instanceof Optional && !((Optional<?>) optional).isPresent() ? pc + 3 : code[pc + 2];
+                    break;
+                }
+                case OPTIONAL_GET:
+                    registers[code[pc + 2]] = ((Optional<?>) registers[code[pc + 1]]).get();
+                    pc += 3;
+                    break;
+                case CONTAINS_KEY: {
+                    Object map = registers[code[pc + 1]];
+                    pc = map instanceof Map && ((Map<?, ?>) map).containsKey(constants[code[pc + 3]]) ? pc + 4 : code[pc + 2];
+                    break;
+                }
+                case MAP_LOOKUP: {
+                    Object result = Patterns.MapOf.lookup(registers[code[pc + 1]], constants[code[pc + 3]]);
+                    if (result == Patterns.MapOf.MISSING) {
+                        pc = code[pc + 2];
+                    } else {
+                        registers[code[pc + 4]] = result;
+                        pc += 5;
+                    }
+                    break;
+                }
+                case TRANSFORM: {
+                    Object result = Patterns.AfterOf.transform(
+                            (Function<Object, ?>) constants[code[pc + 3]], registers[code[pc + 1]]);
+                    if (result == Patterns.AfterOf.REJECTED) {
+                        pc = code[pc + 2];
+                    } else {
+                        registers[code[pc + 4]] = result;
+                        pc += 5;
+                    }
+                    break;
+                }
+                case CALL:
+                    pc = ((Pattern<Object>) constants[code[pc + 3]]).matches(mgr, registers[code[pc + 1]]) ? pc + 4 : code[pc + 2];
+                    break;
+                case MARK:
+                    assert marks != null;
+                    marks[code[pc + 1]] = mgr.mark();
+                    pc += 2;
+                    break;
+                case ROLLBACK:
+                    assert marks != null;
+                    mgr.rollback(marks[code[pc + 1]]);
+                    pc += 2;
+                    break;
+                case GOTO:
+                    pc = code[pc + 1];
+                    break;
+                case SUCCEED:
+                    return true;
+                case FAIL:
+                    return false;
+                default:
+                    throw new AssertionError("invalid opcode " + code[pc]);
+            }
+        }
+    }
+
+    /** The pattern used for case {@code caseIndex} by {@link Matcher.Backend#INSTRUCTIONS}. */
+    @NotNull
+    Pattern<Object> pattern(int caseIndex, @NotNull Pattern<?> source) {
+        return new Pattern<Object>() {
+            @Override
+            public void apply(@NotNull MatchManager mgr, @Nullable Object value) throws PatternMatchReject {
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Object value) {
+                return run(caseIndex, mgr, value);
+            }
+
+            @Override
+            public String toString() {
+                return source.toString();
+            }
+        };
+    }
+
+    /** A position in the code that may not be known yet. */
+    private static final class Label {
+        int position = -1;
+        /** Positions of operands that refer to this label (before it is bound). */
+        final List<Integer> uses = new ArrayList<>(2);
+    }
+
+    private static final class Compiler {
+        int[] code = new int[64];
+        int length = 0;
+        final List<Object> constants = new ArrayList<>();
+        final Map<Object, Integer> constantIndices = new IdentityHashMap<>();
+        int registers;
+        int marks;
+        int maxRegisters = 1;
+        int maxMarks = 0;
+
+        private void emit(int word) {
+            if (length == code.length) code = Arrays.copyOf(code, 2 * length);
+            code[length++] = word;
+        }
+
+        private void emitLabel(@NotNull Label label) {
+            if (label.position >= 0)
+                emit(label.position);
+            else {
+                label.uses.add(length);
+                emit(-1);
+            }
+        }
+
+        private void bind(@NotNull Label label) {
+            label.position = length;
+            for (int use : label.uses)
+                code[use] = length;
+        }
+
+        private int constant(@Nullable Object value) {
+            return constantIndices.computeIfAbsent(value, v -> {
+                constants.add(v);
+                return constants.size() - 1;
+            });
+        }
+
+        private int newRegister() {
+            maxRegisters = Math.max(maxRegisters, registers + 1);
+            return registers++;
+        }
+
+        private int newMark() {
+            maxMarks = Math.max(maxMarks, marks + 1);
+            return marks++;
+        }
+
+        /** Emits a test instruction with operands {@code reg fail} and optionally one more. */
+        private void test(int opcode, int register, @NotNull Label fail, int... more) {
+            emit(opcode);
+            emit(register);
+            emitLabel(fail);
+            for (int operand : more) emit(operand);
+        }
+
+        int compileCase(@NotNull Pattern<?> pattern) {
+            int entry = length;
+            registers = 1;
+            marks = 0;
+            Label fail = new Label();
+            pattern(pattern, 0, fail);
+            emit(SUCCEED);
+            bind(fail);
+            emit(FAIL);
+            return entry;
+        }
+
+        private void pattern(@NotNull Pattern<?> pattern, int register, @NotNull Label fail) {
+            if (pattern instanceof Patterns.Instance)
+                pattern = ((Patterns.Instance<?>) pattern).instancePattern;
+
+            if (pattern == Patterns.Any) {
+                return;
+            } else if (pattern == Patterns.Null) {
+                test(IS_NULL, register, fail);
+            } else if (pattern instanceof Patterns.IsValue) {
+                Object expected = ((Patterns.IsValue<?>) pattern).expected;
+                test(expected == null || expected instanceof Enum ? SAME : EQUALS, register, fail, constant(expected));
+            } else if (pattern instanceof Patterns.NotNullOf) {
+                test(NOT_NULL, register, fail);
+                pattern(((Patterns.NotNullOf<?>) pattern).pattern, register, fail);
+            } else if (pattern instanceof Patterns.InstanceOf) {
+                Patterns.InstanceOf<?> instanceOf = (Patterns.InstanceOf<?>) pattern;
+                test(INSTANCE, register, fail, constant(instanceOf.clazz));
+                pattern(instanceOf.pattern, register, fail);
+            } else if (pattern instanceof Patterns.AllOf) {
+                for (Pattern<?> conjunct : ((Patterns.AllOf<?>) pattern).patterns)
+                    pattern(conjunct, register, fail);
+            } else if (pattern instanceof Patterns.AnyOf) {
+                int mark = newMark();
+                emit(MARK);
+                emit(mark);
+                Label success = new Label();
+                for (Pattern<?> alternative : ((Patterns.AnyOf<?>) pattern).patterns) {
+                    Label next = new Label();
+                    pattern(alternative, register, next);
+                    emit(GOTO);
+                    emitLabel(success);
+                    bind(next);
+                    emit(ROLLBACK);
+                    emit(mark);
+                }
+                emit(GOTO);
+                emitLabel(fail);
+                bind(success);
+            } else if (pattern instanceof Patterns.NoMatchOf) {
+                int mark = newMark();
+                emit(MARK);
+                emit(mark);
+                Label noMatch = new Label();
+                pattern(((Patterns.NoMatchOf<?>) pattern).pattern, register, noMatch);
+                emit(ROLLBACK);
+                emit(mark);
+                emit(GOTO);
+                emitLabel(fail);
+                bind(noMatch);
+                emit(ROLLBACK);
+                emit(mark);
+            } else if (pattern instanceof Patterns.ArrayOf) {
+                Pattern<?>[] elements = ((Patterns.ArrayOf<?>) pattern).patterns;
+                test(LENGTH, register, fail, elements.length);
+                elements(elements, register, fail);
+            } else if (pattern instanceof Patterns.ArrayWithRest) {
+                Patterns.ArrayWithRest<?> array = (Patterns.ArrayWithRest<?>) pattern;
+                test(MIN_LENGTH, register, fail, array.these.length);
+                elements(array.these, register, fail);
+                if (array.more != Patterns.Any) {
+                    int rest = newRegister();
+                    emit(REST);
+                    emit(register);
+                    emit(array.these.length);
+                    emit(rest);
+                    pattern(array.more, rest, fail);
+                }
+            } else if (pattern instanceof Patterns.OptionalOf) {
+                test(PRESENT, register, fail);
+                Pattern<?> content = ((Patterns.OptionalOf<?>) pattern).pattern;
+                if (content != Patterns.Any) {
+                    int value = newRegister();
+                    emit(OPTIONAL_GET);
+                    emit(register);
+                    emit(value);
+                    pattern(content, value, fail);
+                }
+            } else if (pattern instanceof Patterns.OptionalEmpty) {
+                test(EMPTY, register, fail);
+            } else if (pattern instanceof Patterns.MapOf && ((Patterns.MapOf<?, ?>) pattern).rest == null) {
+                test(NOT_NULL, register, fail);
+                for (Map.Entry<?, ? extends Pattern<?>> entry : ((Patterns.MapOf<?, ?>) pattern).patterns) {
+                    int key = constant(entry.getKey());
+                    if (entry.getValue() == Patterns.Any) {
+                        test(CONTAINS_KEY, register, fail, key);
+                    } else {
+                        int value = newRegister();
+                        test(MAP_LOOKUP, register, fail, key, value);
+                        pattern(entry.getValue(), value, fail);
+                    }
+                }
+            } else if (pattern instanceof Patterns.AfterOf) {
+                Patterns.AfterOf<?, ?> after = (Patterns.AfterOf<?, ?>) pattern;
+                int result = newRegister();
+                test(TRANSFORM, register, fail, constant(after.function), result);
+                pattern(after.pattern, result, fail);
+            } else {
+                test(CALL, register, fail, constant(pattern));
+            }
+        }
+
+        private void elements(@NotNull Pattern<?> @NotNull [] elements, int register, @NotNull Label fail) {
+            for (int i = 0; i < elements.length; i++) {
+                if (elements[i] == Patterns.Any) continue;
+                int element = newRegister();
+                emit(ELEMENT);
+                emit(register);
+                emit(i);
+                emit(element);
+                pattern(elements[i], element, fail);
+            }
+        }
+    }
+}
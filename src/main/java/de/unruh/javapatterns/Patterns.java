@@ -8,11 +8,19 @@ import org.jetbrains.annotations.Nullable;
 
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 import java.util.stream.Stream;
 
 /**
@@ -50,17 +58,38 @@ public final class Patterns {
     @NotNull
     @Contract(pure = true, value = "_ -> new")
     public static <T> Pattern<T> Is(@Nullable T expected) {
-        return new Pattern<T>() {
-            @Override
-            public void apply(@NotNull MatchManager mgr, @Nullable T value) throws PatternMatchReject {
-                if (!Objects.equals(expected,value)) reject();
-            }
+        return new IsValue<>(expected);
+    }
 
-            @Override
-            public String toString() {
-                return "=" + expected;
-            }
-        };
+    /** The pattern constructed by {@link #Is(Object)}.
+     * (A named class so that {@link Matcher} can recognize the comparison with a constant.) */
+    static final class IsValue<T> extends Pattern<T> {
+        @Nullable final T expected;
+
+        @Contract(pure = true)
+        IsValue(@Nullable T expected) {
+            this.expected = expected;
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable T value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable T value) {
+            return Objects.equals(expected, value);
+        }
+
+        @Override
+        boolean assignsNoCaptures() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "=" + expected;
+        }
     }
 
     /** Pattern that matches if the matched value equals the value computed by {@code expected}.<p>
@@ -78,7 +107,17 @@ public final class Patterns {
         return new Pattern<T>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable T value) throws PatternMatchReject {
-                if (!Objects.equals(expected.get(), value)) reject();
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable T value) {
+                return Objects.equals(expected.get(), value);
+            }
+
+            @Override
+            boolean assignsNoCaptures() {
+                return true;
             }
 
             @Override
@@ -101,7 +140,38 @@ public final class Patterns {
     @NotNull
     @Contract(pure = true, value = "_ -> new")
     public static <T> Pattern<T> Is(@NotNull Capture<T> expected) {
-        return Is(expected::v);
+        return new IsCapture<>(expected);
+    }
+
+    /** The pattern constructed by {@link #Is(Capture)}.
+     * (A named class so that {@link Matcher} knows which capture it reads.) */
+    static final class IsCapture<T> extends Pattern<T> {
+        @NotNull final Capture<T> capture;
+
+        @Contract(pure = true)
+        IsCapture(@NotNull Capture<T> capture) {
+            this.capture = capture;
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable T value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable T value) {
+            return Objects.equals(capture.v(), value);
+        }
+
+        @Override
+        boolean assignsNoCaptures() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "=" + capture;
+        }
     }
 
     /** Pattern that matches if the matched value satisfies a predicate.
@@ -116,7 +186,17 @@ public final class Patterns {
         return new Pattern<T>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable T value) throws PatternMatchReject {
-                if (!predicate.test(value)) reject();
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable T value) {
+                return predicate.test(value);
+            }
+
+            @Override
+            boolean assignsNoCaptures() {
+                return true;
             }
 
             @Override
@@ -126,6 +206,102 @@ public final class Patterns {
         };
     }
 
+    /** Pattern that matches if the matched value equals one of {@code values}.<p>
+     *
+     * Same as <code>{@link #Or Or}({@link #Is(Object) Is}(v1), {@link #Is(Object) Is}(v2), …)</code>, but the matched
+     * value is looked up in a hash set (or in an {@link EnumSet} if the values are constants of one enum type)
+     * instead of being compared with each value in turn. (This assumes that {@link Object#equals equals}
+     * and {@link Object#hashCode hashCode} of the values are consistent.)<p>
+     *
+     * A {@link Matcher} performs this optimization automatically for {@link #Or Or} patterns that consist of
+     * several {@link #Is(Object) Is} patterns.
+     *
+     * @param values the values that the matched value is compared to (may include {@code null})
+     * @param <T> type of the matched value
+     * @return the pattern
+     */
+    @NotNull
+    @Contract(pure = true, value = "_ -> new")
+    @SafeVarargs
+    public static <T> Pattern<T> IsOneOf(@Nullable T @NotNull ... values) {
+        return new OneOf<>(Arrays.asList(values), new Class<?>[0]);
+    }
+
+    /** The pattern constructed by {@link #IsOneOf}.
+     * Also matches instances of {@link #classes} (used when a {@link Matcher} rewrites
+     * <code>{@link #Or Or}(Is(…), Instance(Foo.class, Any), …)</code>). */
+    static final class OneOf<T> extends Pattern<T> {
+        /** The non-null values. */
+        @NotNull final Set<Object> values;
+        final boolean containsNull;
+        @NotNull final Class<?> @NotNull [] classes;
+        /** Caches whether a class is a subclass of one of {@link #classes}. */
+        @NotNull private final ClassValue<Boolean> isInstance = new ClassValue<Boolean>() {
+            @Override
+            protected Boolean computeValue(@NotNull Class<?> type) {
+                for (Class<?> clazz : classes)
+                    if (clazz.isAssignableFrom(type))
+                        return true;
+                return false;
+            }
+        };
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        @Contract(pure = true)
+        OneOf(@NotNull Collection<?> values, @NotNull Class<?> @NotNull [] classes) {
+            Class<?> enumClass = null;
+            for (Object value : values) {
+                if (value == null)
+                    continue;
+                Class<?> clazz = value instanceof Enum ? ((Enum<?>) value).getDeclaringClass() : null;
+                if (clazz == null || (enumClass != null && enumClass != clazz)) {
+                    enumClass = null;
+                    break;
+                }
+                enumClass = clazz;
+            }
+            Set<Object> set = enumClass != null ? EnumSet.noneOf((Class) enumClass) : new HashSet<>();
+            boolean containsNull = false;
+            for (Object value : values)
+                if (value == null)
+                    containsNull = true;
+                else
+                    set.add(value);
+            this.values = set;
+            this.containsNull = containsNull;
+            this.classes = classes;
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable T value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable T value) {
+            if (value == null) return containsNull;
+            if (values.contains(value)) return true;
+            return classes.length > 0 && isInstance.get(value.getClass());
+        }
+
+        @Override
+        boolean assignsNoCaptures() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner(", ");
+            if (containsNull)
+                joiner.add("null");
+            for (Object value : values)
+                joiner.add(value.toString());
+            for (Class<?> clazz : classes)
+                joiner.add("Instance(" + clazz.getName() + ")");
+            return "IsOneOf(" + joiner + ")";
+        }
+    }
+
     /** Pattern that matches everything (including {@code null}). */
     @NotNull
     public static final Pattern<Object> Any = new Pattern<Object>() {
@@ -133,6 +309,16 @@ public final class Patterns {
         public void apply(@NotNull MatchManager mgr, @Nullable Object value) {
         }
 
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable Object value) {
+            return true;
+        }
+
+        @Override
+        boolean assignsNoCaptures() {
+            return true;
+        }
+
         @Override
         public String toString() {
             return "_";
@@ -147,6 +333,16 @@ public final class Patterns {
             if (value != null) reject();
         }
 
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable Object value) {
+            return value == null;
+        }
+
+        @Override
+        boolean assignsNoCaptures() {
+            return true;
+        }
+
         @Override
         public String toString() {
             return "null";
@@ -169,18 +365,32 @@ public final class Patterns {
     @NotNull
     @Contract(pure = true, value = "_ -> new")
     public static <T> Pattern<T> NotNull(@NotNull Pattern<@NotNull ? super T> pattern) {
-        return new Pattern<T>() {
-            @Override
-            public void apply(@NotNull MatchManager mgr, @Nullable T value) throws PatternMatchReject {
-                if (value == null) reject();
-                pattern.apply(mgr, value);
-            }
+        return new NotNullOf<>(pattern);
+    }
 
-            @Override
-            public String toString() {
-                return "null";
-            }
-        };
+    /** The pattern constructed by {@link #NotNull}. */
+    static final class NotNullOf<T> extends Pattern<T> {
+        @NotNull final Pattern<? super T> pattern;
+
+        @Contract(pure = true)
+        NotNullOf(@NotNull Pattern<? super T> pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable T value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable T value) {
+            return value != null && pattern.matches(mgr, value);
+        }
+
+        @Override
+        public String toString() {
+            return "null";
+        }
     }
 
 
@@ -189,7 +399,13 @@ public final class Patterns {
      * This pattern matches if all subpatterns in {@code patterns} match the matched value.<p>
      *
      * All captures assigned by the subpatterns will be assigned by this pattern.
-     * Consequently, the subpatterns must not assign the same captures.
+     * Consequently, the subpatterns must not assign the same captures.<p>
+     *
+     * The subpatterns are matched from left to right. However, in a {@link Matcher}, built-in subpatterns
+     * that cannot throw exceptions (such as {@link #Is(Object) Is}, {@link #Instance(Class, Pattern) Instance},
+     * or captures) may be moved before more expensive subpatterns (see also {@link #Cost}), unless they
+     * read or assign captures that those subpatterns assign or read. Subpatterns containing lambda expressions
+     * or user-defined patterns are never moved before the subpatterns preceding them.
      *
      * @param patterns subpatterns that all should match
      * @param <T> type of the matched value
@@ -199,21 +415,37 @@ public final class Patterns {
     @Contract(pure = true, value = "_ -> new")
     @SafeVarargs
     public static <T> Pattern<T> And(@NotNull Pattern<? super T>... patterns) {
-        return new Pattern<T>() {
-            @Override
-            public void apply(@NotNull MatchManager mgr, @Nullable T value) throws PatternMatchReject {
-                for (Pattern<? super T> pattern : patterns)
-                    pattern.apply(mgr, value);
-            }
+        return new AllOf<>(patterns);
+    }
 
-            @Override
-            public String toString() {
-                StringJoiner joiner = new StringJoiner(", ");
-                for (Pattern<?> pattern : patterns)
-                    joiner.add(pattern.toString());
-                return "And(" + joiner + ")";
-            }
-        };
+    /** The pattern constructed by {@link #And}. */
+    static final class AllOf<T> extends Pattern<T> {
+        @NotNull final Pattern<? super T> @NotNull [] patterns;
+
+        @Contract(pure = true)
+        AllOf(@NotNull Pattern<? super T> @NotNull [] patterns) {
+            this.patterns = patterns;
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable T value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable T value) {
+            for (Pattern<? super T> pattern : patterns)
+                if (!pattern.matches(mgr, value)) return false;
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner(", ");
+            for (Pattern<?> pattern : patterns)
+                joiner.add(pattern.toString());
+            return "And(" + joiner + ")";
+        }
     }
 
     /** Pattern that combined several subpatterns of which one needs to match.<p>
@@ -231,25 +463,40 @@ public final class Patterns {
     @Contract(pure = true, value = "_ -> new")
     @SafeVarargs
     public static <T> Pattern<T> Or(@NotNull Pattern<? super T>... patterns) {
-        return new Pattern<T>() {
-            @Override
-            public void apply(@NotNull MatchManager mgr, @Nullable T value) throws PatternMatchReject {
-                if (patterns.length == 0) reject();
-                for (int i=0; i<patterns.length-1; i++) {
-                    Pattern<? super T> pattern = patterns[i];
-                    if (mgr.protectedBlock(() -> pattern.apply(mgr, value))) return;
-                }
-                patterns[patterns.length-1].apply(mgr, value);
-            }
+        return new AnyOf<>(patterns);
+    }
 
-            @Override
-            public String toString() {
-                StringJoiner joiner = new StringJoiner(", ");
-                for (Pattern<?> pattern : patterns)
-                    joiner.add(pattern.toString());
-                return "Or(" + joiner + ")";
+    /** The pattern constructed by {@link #Or}. */
+    static final class AnyOf<T> extends Pattern<T> {
+        @NotNull final Pattern<? super T> @NotNull [] patterns;
+
+        @Contract(pure = true)
+        AnyOf(@NotNull Pattern<? super T> @NotNull [] patterns) {
+            this.patterns = patterns;
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable T value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable T value) {
+            for (Pattern<? super T> pattern : patterns) {
+                int mark = mgr.mark();
+                if (pattern.matches(mgr, value)) return true;
+                mgr.rollback(mark);
             }
-        };
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner(", ");
+            for (Pattern<?> pattern : patterns)
+                joiner.add(pattern.toString());
+            return "Or(" + joiner + ")";
+        }
     }
 
     /** Pattern that matches if the matched value has a specific type {@code U}.<p>
@@ -274,20 +521,37 @@ public final class Patterns {
     @NotNull
     @Contract(pure = true, value = "_, _ -> new")
     public static <U> Pattern<Object> Instance(@NotNull Class<U> clazz, @NotNull Pattern<? super U> pattern) {
-        return new Pattern<Object>() {
-            @Override
-            @SuppressWarnings("unchecked")
-            public void apply(@NotNull MatchManager mgr, @Nullable Object value) throws PatternMatchReject {
-                if (!clazz.isInstance(value)) reject();
-                pattern.apply(mgr, (U)value);
-                // we could use Class.cast(value) instead of (U)value, but that probably just duplicates the dynamic type check
-            }
+        return new InstanceOf<>(clazz, pattern);
+    }
 
-            @Override
-            public String toString() {
-                return "Instance("+clazz.getSimpleName()+","+pattern+")";
-            }
-        };
+    /** The pattern constructed by {@link #Instance(Class, Pattern)}.
+     * (A named class so that {@link Matcher} can recognize the type test.) */
+    static final class InstanceOf<U> extends Pattern<Object> {
+        @NotNull final Class<U> clazz;
+        @NotNull final Pattern<? super U> pattern;
+
+        @Contract(pure = true)
+        InstanceOf(@NotNull Class<U> clazz, @NotNull Pattern<? super U> pattern) {
+            this.clazz = clazz;
+            this.pattern = pattern;
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable Object value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean matches(@NotNull MatchManager mgr, @Nullable Object value) {
+            return clazz.isInstance(value) && pattern.matches(mgr, (U)value);
+            // we could use Class.cast(value) instead of (U)value, but that probably just duplicates the dynamic type check
+        }
+
+        @Override
+        public String toString() {
+            return "Instance("+clazz.getSimpleName()+","+pattern+")";
+        }
     }
 
     /** Pattern that matches if the matched value has a specific type {@code U}.<p>
@@ -312,7 +576,7 @@ public final class Patterns {
      * @param <U> the type that the matched value should have
      */
     public abstract static class Instance<U> extends Pattern<U> {
-        private final Pattern<Object> instancePattern;
+        final InstanceOf<U> instancePattern;
         private final Pattern<? super U> pattern;
         private final Type typeU;
 
@@ -336,7 +600,7 @@ public final class Patterns {
             else
                 throw new InvalidPatternMatch("Type parameter of " + Instance.class.getName() +
                         " must be a class, not " + typeU + " " + typeU.getClass());
-            instancePattern = Instance(clazz, pattern);
+            instancePattern = new InstanceOf<>(clazz, pattern);
             this.pattern = pattern;
         }
 
@@ -346,6 +610,12 @@ public final class Patterns {
             instancePattern.apply(mgr, value);
         }
 
+        /** @hidden */
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable U value) {
+            return instancePattern.matches(mgr, value);
+        }
+
         /** @hidden */
         @Override
         public String toString() {
@@ -356,18 +626,35 @@ public final class Patterns {
     @NotNull
     @Contract(pure = true, value = "_ -> new")
     public static <T> Pattern<T> NoMatch(@NotNull Pattern<? super T> pattern) {
-        return new Pattern<T>() {
-            @Override
-            public void apply(@NotNull MatchManager mgr, @Nullable T value) throws PatternMatchReject {
-                boolean matched = mgr.protectedBlock(() -> pattern.apply(mgr, value));
-                if (matched) reject();
-            }
+        return new NoMatchOf<>(pattern);
+    }
 
-            @Override
-            public String toString() {
-                return "NoMatch("+pattern+")";
-            }
-        };
+    /** The pattern constructed by {@link #NoMatch}. */
+    static final class NoMatchOf<T> extends Pattern<T> {
+        @NotNull final Pattern<? super T> pattern;
+
+        @Contract(pure = true)
+        NoMatchOf(@NotNull Pattern<? super T> pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable T value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable T value) {
+            int mark = mgr.mark();
+            boolean matched = pattern.matches(mgr, value);
+            mgr.rollback(mark);
+            return !matched;
+        }
+
+        @Override
+        public String toString() {
+            return "NoMatch("+pattern+")";
+        }
     }
 
     /** Pattern that matches an array. <p>
@@ -386,23 +673,39 @@ public final class Patterns {
     @Contract(pure = true, value = "_ -> new")
     @SafeVarargs
     public static <T> Pattern<T[]> Array(@NotNull Pattern<? super T> @NotNull ... patterns) {
-        return new Pattern<T[]>() {
-            @Override
-            public void apply(@NotNull MatchManager mgr, @Nullable T @Nullable [] value) throws PatternMatchReject {
-                if (value == null) reject();
-                if (value.length != patterns.length) reject();
-                for (int i=0; i<patterns.length; i++)
-                    patterns[i].apply(mgr, value[i]);
-            }
+        return new ArrayOf<>(patterns);
+    }
 
-            @Override
-            public String toString() {
-                StringJoiner joiner = new StringJoiner(", ");
-                for (Pattern<?> pattern : patterns)
-                    joiner.add(pattern.toString());
-                return "Array(" + joiner + ")";
-            }
-        };
+    /** The pattern constructed by {@link #Array(Pattern[])}. */
+    static final class ArrayOf<T> extends Pattern<T[]> {
+        @NotNull final Pattern<? super T> @NotNull [] patterns;
+
+        @Contract(pure = true)
+        ArrayOf(@NotNull Pattern<? super T> @NotNull [] patterns) {
+            this.patterns = patterns;
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable T @Nullable [] value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable T @Nullable [] value) {
+            if (value == null) return false;
+            if (value.length != patterns.length) return false;
+            for (int i=0; i<patterns.length; i++)
+                if (!patterns[i].matches(mgr, value[i])) return false;
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner(", ");
+            for (Pattern<?> pattern : patterns)
+                joiner.add(pattern.toString());
+            return "Array(" + joiner + ")";
+        }
     }
 
 
@@ -425,7 +728,10 @@ public final class Patterns {
      * nor {@code {1}}.<p>
      *
      * All captures assigned by the subpatterns {@code patterns} will be assigned by this pattern.
-     * Consequently, the subpatterns must assign distinct captures.
+     * Consequently, the subpatterns must assign distinct captures.<p>
+     *
+     * The remaining elements are copied into a new array (unless {@code rest} is {@link #Any}).
+     * To avoid the copy, use {@link #ArrayPrefix} instead.
      *
      * @param these the patterns for the prefix of the matched array
      * @param more the pattern for the rest of the matched array
@@ -435,184 +741,1787 @@ public final class Patterns {
     @Contract(value = "_, _ -> new", pure = true)
     public static <T> @NotNull Pattern<T[]> Array(@NotNull Pattern<? super T> @NotNull [] these,
                                                   @NotNull Pattern<? super T[]> more) {
-        return new Pattern<T[]>() {
-            @Override
-            public void apply(@NotNull MatchManager mgr, @Nullable T @Nullable [] value) throws PatternMatchReject {
-                if (value == null) reject();
-                if (value.length < these.length) reject();
-                for (int i=0; i<these.length; i++)
-                    these[i].apply(mgr, value[i]);
-                T[] rest = Arrays.copyOfRange(value, these.length, value.length);
-                more.apply(mgr, rest);
-            }
+        return new ArrayWithRest<>(these, more);
+    }
+
+    /** The pattern constructed by {@link #Array(Pattern[], Pattern)}. */
+    static final class ArrayWithRest<T> extends Pattern<T[]> {
+        @NotNull final Pattern<? super T> @NotNull [] these;
+        @NotNull final Pattern<? super T[]> more;
+
+        @Contract(pure = true)
+        ArrayWithRest(@NotNull Pattern<? super T> @NotNull [] these, @NotNull Pattern<? super T[]> more) {
+            this.these = these;
+            this.more = more;
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable T @Nullable [] value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable T @Nullable [] value) {
+            if (value == null) return false;
+            if (value.length < these.length) return false;
+            for (int i=0; i<these.length; i++)
+                if (!these[i].matches(mgr, value[i])) return false;
+            if (more == Any) return true;
+            T[] rest = Arrays.copyOfRange(value, these.length, value.length);
+            return more.matches(mgr, rest);
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner(", ");
+            for (Pattern<?> pattern : these)
+                joiner.add(pattern.toString());
+            return "Array(these(" + joiner + "), " + more + ")";
+        }
+    }
+
+    /** Pattern that matches an array, passing the remaining elements as an {@link ArraySlice}. <p>
+     *
+     * This function is invoked as
+     * <pre>
+     * ArrayPrefix({@link #these these}(p1,...,pn),rest)
+     * </pre>
+     * and behaves like <code>{@link #Array(Pattern[], Pattern) Array}(these(p1,...,pn),rest)</code>, except that
+     * {@code rest} matches a slice of the matched array instead of a copy of the remaining elements.
+     * So the time needed for matching does not depend on the length of the array.<p>
+     *
+     * Example: {@code ArrayPrefix(these(Is(1),Is(2)), x)} will match {@code {1,2,3,4,5}} and
+     * assign a slice containing {@code 3,4,5} to the capture `x`.
+     *
+     * @param these the patterns for the prefix of the matched array
+     * @param rest the pattern for the rest of the matched array
+     * @param <T> the element type of the array (i.e., the matched value has type {@code T[]})
+     * @return the array pattern
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    public static <T> @NotNull Pattern<T[]> ArrayPrefix(@NotNull Pattern<? super T> @NotNull [] these,
+                                                        @NotNull Pattern<? super ArraySlice<T>> rest) {
+        return new ArrayPrefixOf<>(these, rest);
+    }
+
+    /** Whether the elements {@code offset}, … of {@code array} match {@code patterns}.
+     * The caller must ensure that the array is long enough. */
+    private static <T> boolean prefixMatches(@NotNull MatchManager mgr, @NotNull Pattern<? super T> @NotNull [] patterns,
+                                             @Nullable T @NotNull [] array, int offset) {
+        for (int i=0; i<patterns.length; i++)
+            if (!patterns[i].matches(mgr, array[offset + i])) return false;
+        return true;
+    }
+
+    /** The pattern constructed by {@link #ArrayPrefix}. */
+    static final class ArrayPrefixOf<T> extends Pattern<T[]> {
+        @NotNull final Pattern<? super T> @NotNull [] these;
+        @NotNull final Pattern<? super ArraySlice<T>> rest;
+
+        @Contract(pure = true)
+        ArrayPrefixOf(@NotNull Pattern<? super T> @NotNull [] these, @NotNull Pattern<? super ArraySlice<T>> rest) {
+            this.these = these;
+            this.rest = rest;
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable T @Nullable [] value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable T @Nullable [] value) {
+            if (value == null) return false;
+            if (value.length < these.length) return false;
+            if (!prefixMatches(mgr, these, value, 0)) return false;
+            if (rest == Any) return true;
+            return rest.matches(mgr, ArraySlice.of(value, these.length, value.length));
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner(", ");
+            for (Pattern<?> pattern : these)
+                joiner.add(pattern.toString());
+            return "ArrayPrefix(these(" + joiner + "), " + rest + ")";
+        }
+    }
+
+    /** Pattern that matches an {@link ArraySlice}. <p>
+     *
+     * This function is invoked as {@code ArraySlice(p1,...,pn)} and behaves like
+     * <code>{@link #Array(Pattern[]) Array}(p1,...,pn)</code>, but matches slices instead of arrays.
+     *
+     * @param patterns the patterns for the elements of the slice
+     * @param <T> the element type of the slice
+     * @return the slice pattern
+     */
+    @Contract(value = "_ -> new", pure = true)
+    @SafeVarargs
+    public static <T> @NotNull Pattern<ArraySlice<T>> ArraySlice(@NotNull Pattern<? super T> @NotNull ... patterns) {
+        return new SliceOf<>(patterns);
+    }
+
+    /** The pattern constructed by {@link #ArraySlice(Pattern[])}. */
+    static final class SliceOf<T> extends Pattern<ArraySlice<T>> {
+        @NotNull final Pattern<? super T> @NotNull [] patterns;
+
+        @Contract(pure = true)
+        SliceOf(@NotNull Pattern<? super T> @NotNull [] patterns) {
+            this.patterns = patterns;
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable ArraySlice<T> value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable ArraySlice<T> value) {
+            if (value == null) return false;
+            if (value.length != patterns.length) return false;
+            return prefixMatches(mgr, patterns, value.array, value.offset);
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner(", ");
+            for (Pattern<?> pattern : patterns)
+                joiner.add(pattern.toString());
+            return "ArraySlice(" + joiner + ")";
+        }
+    }
+
+    /** Pattern that matches an {@link ArraySlice}. <p>
+     *
+     * This function is invoked as
+     * <pre>
+     * ArraySlice({@link #these these}(p1,...,pn),rest)
+     * </pre>
+     * and behaves like <code>{@link #ArrayPrefix ArrayPrefix}(these(p1,...,pn),rest)</code>, but matches slices
+     * instead of arrays. The pattern {@code rest} is matched against a slice of the matched slice (without copying).
+     *
+     * @param these the patterns for the prefix of the matched slice
+     * @param rest the pattern for the rest of the matched slice
+     * @param <T> the element type of the slice
+     * @return the slice pattern
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    public static <T> @NotNull Pattern<ArraySlice<T>> ArraySlice(@NotNull Pattern<? super T> @NotNull [] these,
+                                                                 @NotNull Pattern<? super ArraySlice<T>> rest) {
+        return new SliceWithRest<>(these, rest);
+    }
+
+    /** The pattern constructed by {@link #ArraySlice(Pattern[], Pattern)}. */
+    static final class SliceWithRest<T> extends Pattern<ArraySlice<T>> {
+        @NotNull final Pattern<? super T> @NotNull [] these;
+        @NotNull final Pattern<? super ArraySlice<T>> rest;
+
+        @Contract(pure = true)
+        SliceWithRest(@NotNull Pattern<? super T> @NotNull [] these, @NotNull Pattern<? super ArraySlice<T>> rest) {
+            this.these = these;
+            this.rest = rest;
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable ArraySlice<T> value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable ArraySlice<T> value) {
+            if (value == null) return false;
+            if (value.length < these.length) return false;
+            if (!prefixMatches(mgr, these, value.array, value.offset)) return false;
+            if (rest == Any) return true;
+            return rest.matches(mgr, value.slice(these.length, value.length));
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner(", ");
+            for (Pattern<?> pattern : these)
+                joiner.add(pattern.toString());
+            return "ArraySlice(these(" + joiner + "), " + rest + ")";
+        }
+    }
+
+    /** Pattern that matches a {@link List}. <p>
+     *
+     * The pattern matches if the matched value is a list with {@code patterns.length} elements,
+     * and the i-th element of the matched value matches the i-th pattern in {@code patterns}. <p>
+     *
+     * All captures assigned by the subpatterns {@code patterns} will be assigned by this pattern.
+     * Consequently, the subpatterns must assign distinct captures.<p>
+     *
+     * The size of the list is checked first. The elements of {@link RandomAccess} lists (such as {@link ArrayList})
+     * are accessed using {@link List#get}, other lists are traversed once using an iterator.
+     * In contrast to {@link #Iterator(Pattern[]) Iterator}, the elements are not copied.
+     *
+     * @param patterns the patterns for the list elements
+     * @param <T> the element type of the list (i.e., the matched value has type {@link List}{@code <T>})
+     * @return the list pattern
+     */
+    @Contract(value = "_ -> new", pure = true)
+    @SafeVarargs
+    public static <T> @NotNull Pattern<List<T>> List(@NotNull Pattern<? super T> @NotNull ... patterns) {
+        return new ListOf<>(patterns);
+    }
+
+    /** Whether the first {@code patterns.length} elements of {@code list} match {@code patterns}.
+     * The caller must ensure that the list is long enough. */
+    private static <T> boolean prefixMatches(@NotNull MatchManager mgr, @NotNull Pattern<? super T> @NotNull [] patterns,
+                                             @NotNull List<T> list) {
+        if (list instanceof RandomAccess) {
+            for (int i=0; i<patterns.length; i++)
+                if (!patterns[i].matches(mgr, list.get(i))) return false;
+        } else if (patterns.length > 0) {
+            Iterator<T> iterator = list.iterator();
+            for (Pattern<? super T> pattern : patterns)
+                if (!pattern.matches(mgr, iterator.next())) return false;
+        }
+        return true;
+    }
+
+    /** The pattern constructed by {@link #List(Pattern[])}. */
+    static final class ListOf<T> extends Pattern<List<T>> {
+        @NotNull final Pattern<? super T> @NotNull [] patterns;
+
+        @Contract(pure = true)
+        ListOf(@NotNull Pattern<? super T> @NotNull [] patterns) {
+            this.patterns = patterns;
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable List<T> value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable List<T> value) {
+            if (value == null) return false;
+            if (value.size() != patterns.length) return false;
+            return prefixMatches(mgr, patterns, value);
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner(", ");
+            for (Pattern<?> pattern : patterns)
+                joiner.add(pattern.toString());
+            return "List(" + joiner + ")";
+        }
+    }
+
+    /** Pattern that matches a {@link List}. <p>
+     *
+     * This function is invoked as
+     * <pre>
+     * List({@link #these these}(p1,...,pn),rest)
+     * </pre>
+     * where {@code p}1, …, {@code p}<i>n</i> are patterns
+     * matching values of type {@code T}
+     * and {@code rest} is a pattern matching values of type {@code List<T>}.<p>
+     *
+     * The pattern matches if the matched value is a list of size ≥<i>n</i>,
+     * and the <i>i</i>-th element of the matched value matches {@code p}<i>i</i> for
+     * <i>i</i>=1,…,<i>n</i>, and the remaining elements match {@code rest}.
+     * {@code rest} is matched against a {@link List#subList subList} view of the matched list (without copying).
+     * (So {@code rest} must not modify it.)<p>
+     *
+     * All captures assigned by the subpatterns {@code patterns} will be assigned by this pattern.
+     * Consequently, the subpatterns must assign distinct captures.<p>
+     *
+     * Elements are accessed as described in {@link #List(Pattern[])}.
+     *
+     * @param these the patterns for the prefix of the matched list
+     * @param more the pattern for the rest of the matched list
+     * @param <T> the element type of the list (i.e., the matched value has type {@link List}{@code <T>})
+     * @return the list pattern
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    public static <T> @NotNull Pattern<List<T>> List(@NotNull Pattern<? super T> @NotNull [] these,
+                                                     @NotNull Pattern<? super List<T>> more) {
+        return new ListWithRest<>(these, more);
+    }
+
+    /** The pattern constructed by {@link #List(Pattern[], Pattern)}. */
+    static final class ListWithRest<T> extends Pattern<List<T>> {
+        @NotNull final Pattern<? super T> @NotNull [] these;
+        @NotNull final Pattern<? super List<T>> more;
+
+        @Contract(pure = true)
+        ListWithRest(@NotNull Pattern<? super T> @NotNull [] these, @NotNull Pattern<? super List<T>> more) {
+            this.these = these;
+            this.more = more;
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable List<T> value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable List<T> value) {
+            if (value == null) return false;
+            int size = value.size();
+            if (size < these.length) return false;
+            if (!prefixMatches(mgr, these, value)) return false;
+            if (more == Any) return true;
+            return more.matches(mgr, value.subList(these.length, size));
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner(", ");
+            for (Pattern<?> pattern : these)
+                joiner.add(pattern.toString());
+            return "List(these(" + joiner + "), " + more + ")";
+        }
+    }
+
+    /** Pattern that matches a collection containing an element that matches {@code pattern}.<p>
+     *
+     * If {@code pattern} is a constant (<code>{@link #Is(Object) Is}(value)</code>), the element is looked up using
+     * {@link Collection#contains} (e.g., a hash lookup in a {@link HashSet}). Otherwise, the elements are tried in the order
+     * of iteration, and the captures assigned by {@code pattern} are those for the first matching element.
+     *
+     * @param pattern the pattern for the element
+     * @param <T> the element type of the collection
+     * @return the collection pattern
+     */
+    @Contract(value = "_ -> new", pure = true)
+    public static <T> @NotNull Pattern<Collection<T>> Contains(@NotNull Pattern<? super T> pattern) {
+        return new ContainsOf<>(pattern);
+    }
+
+    /** Returns the constant that {@code pattern} compares with, or {@link MapOf#MISSING} if it is not a constant. */
+    @Nullable
+    private static Object constant(@NotNull Pattern<?> pattern) {
+        return pattern instanceof IsValue ? ((IsValue<?>) pattern).expected : MapOf.MISSING;
+    }
+
+    /** Whether {@code collection} contains {@code constant}. Collections that do not support {@code null}
+     * or elements of the type of {@code constant} (e.g., {@code Set.of(…)} or a {@link TreeSet}) may throw
+     * a {@link NullPointerException} or {@link ClassCastException} in {@link Collection#contains}.
+     * Such a collection cannot contain {@code constant}, so this returns {@code false} then. */
+    @Contract(pure = true)
+    private static boolean containsConstant(@NotNull Collection<?> collection, @Nullable Object constant) {
+        try {
+            return collection.contains(constant);
+        } catch (NullPointerException | ClassCastException e) {
+            return false;
+        }
+    }
+
+    /** The pattern constructed by {@link #Contains}. */
+    static final class ContainsOf<T> extends Pattern<Collection<T>> {
+        @NotNull final Pattern<? super T> pattern;
+        /** The result of {@link #constant} for {@link #pattern}. */
+        @Nullable private final Object constant;
+
+        @Contract(pure = true)
+        ContainsOf(@NotNull Pattern<? super T> pattern) {
+            this.pattern = pattern;
+            constant = constant(pattern);
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable Collection<T> value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable Collection<T> value) {
+            if (value == null) return false;
+            if (constant != MapOf.MISSING) return containsConstant(value, constant);
+            for (T element : value) {
+                int mark = mgr.mark();
+                if (pattern.matches(mgr, element)) return true;
+                mgr.rollback(mark);
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "Contains(" + pattern + ")";
+        }
+    }
+
+    /** Pattern that matches a collection containing distinct elements that match {@code patterns}, in any order.<p>
+     *
+     * More precisely, the pattern matches a collection if there are distinct elements <i>e</i>1, …, <i>e</i><i>n</i>
+     * of the matched collection (in any order) such that <i>e</i><i>i</i> matches {@code patterns[i]}.
+     * The matched collection may contain additional elements. If the matched collection is not a {@link Set},
+     * it is considered as a multiset, i.e., {@code ContainsAll(Is(1), Is(1))} matches only collections containing
+     * {@code 1} at least twice.<p>
+     *
+     * Example: {@code ContainsAll(Is("admin"), Instance(String.class, x))} matches {@code Set.of("admin", "root")}
+     * and assigns {@code "root"} to {@code x}.<p>
+     *
+     * All captures assigned by the subpatterns {@code patterns} will be assigned by this pattern.
+     * Consequently, the subpatterns must assign distinct captures.<p>
+     *
+     * Constant subpatterns (<code>{@link #Is(Object) Is}(value)</code>) are looked up using {@link Collection#contains}
+     * if the matched collection is a {@link HashSet}, {@link EnumSet}, or {@link SortedSet}
+     * (or if the constants are distinct and there are no other subpatterns).
+     * The other subpatterns are assigned to the remaining elements using an efficient search
+     * (polynomial for subpatterns that assign no captures), not by trying all permutations.
+     * (Elements are compared to the constants using the comparator of a {@link SortedSet},
+     * and using {@link Object#equals} otherwise.)
+     *
+     * @param patterns the patterns for the elements
+     * @param <T> the element type of the collection
+     * @return the collection pattern
+     */
+    @Contract(value = "_ -> new", pure = true)
+    @SafeVarargs
+    public static <T> @NotNull Pattern<Collection<T>> ContainsAll(@NotNull Pattern<? super T> @NotNull ... patterns) {
+        return new ContainsAllOf<>(patterns);
+    }
+
+    /** The pattern constructed by {@link #ContainsAll}. */
+    static final class ContainsAllOf<T> extends Pattern<Collection<T>> {
+        @NotNull final Pattern<? super T> @NotNull [] patterns;
+        /** The constants of the constant subpatterns (see {@link #constant}), with the number of their occurrences. */
+        @NotNull private final Map<Object, Integer> constants = new HashMap<>();
+        /** Whether the constants occur only once each. */
+        private final boolean distinctConstants;
+        /** The other subpatterns that may assign captures, in their original order. */
+        @NotNull private final Pattern<?> @NotNull [] searched;
+        /** The other subpatterns that do not assign captures. */
+        @NotNull private final Pattern<?> @NotNull [] free;
+
+        @Contract(pure = true)
+        ContainsAllOf(@NotNull Pattern<? super T> @NotNull [] patterns) {
+            this.patterns = patterns;
+            List<Pattern<?>> searched = new ArrayList<>();
+            List<Pattern<?>> free = new ArrayList<>();
+            boolean distinct = true;
+            for (Pattern<?> pattern : patterns) {
+                Object constant = constant(pattern);
+                if (constant != MapOf.MISSING) {
+                    if (constants.merge(constant, 1, Integer::sum) > 1) distinct = false;
+                } else if (Linearity.assignsNoCaptures(pattern))
+                    free.add(pattern);
+                else
+                    searched.add(pattern);
+            }
+            distinctConstants = distinct;
+            this.searched = searched.toArray(new Pattern<?>[0]);
+            this.free = free.toArray(new Pattern<?>[0]);
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable Collection<T> value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable Collection<T> value) {
+            if (value == null) return false;
+            if (value.size() < patterns.length) return false;
+            boolean onlyConstants = searched.length == 0 && free.length == 0;
+            Set<Object> setConstants = constantsInSet(value);
+            if (setConstants != null) {
+                // A set contains each constant at most once
+                if (!distinctConstants || setConstants.size() < constants.size()) return false;
+                for (Object constant : setConstants)
+                    if (!containsConstant(value, constant)) return false;
+                if (onlyConstants) return true;
+            } else if (onlyConstants && distinctConstants) {
+                for (Object constant : constants.keySet())
+                    if (!containsConstant(value, constant)) return false;
+                return true;
+            }
+
+            // The elements that are not used up by the constants
+            Object[] elements = new Object[value.size()];
+            int count = 0;
+            if (constants.isEmpty()) {
+                for (T element : value)
+                    elements[count++] = element;
+            } else if (setConstants != null) {
+                for (T element : value)
+                    if (!setConstants.contains(element))
+                        elements[count++] = element;
+            } else {
+                Map<Object, Integer> missing = new HashMap<>(constants);
+                for (T element : value) {
+                    Integer needed = missing.get(element);
+                    if (needed == null)
+                        elements[count++] = element;
+                    else if (needed == 1)
+                        missing.remove(element);
+                    else
+                        missing.put(element, needed - 1);
+                }
+                if (!missing.isEmpty()) return false;
+            }
+
+            return new ElementAssignment(mgr, searched, free, elements, count).search();
+        }
+
+        /** The constants as a set that uses the same element equality as {@code value}, or {@code null} if
+         * {@code value} is not a set whose element equality is known (then it is treated like any other collection).
+         * For a {@link SortedSet}, this is also {@code null} if some constant cannot be compared with the elements
+         * (e.g., {@code null} or a constant of a different type). */
+        @SuppressWarnings("unchecked")
+        @Nullable
+        private Set<Object> constantsInSet(@NotNull Collection<T> value) {
+            if (value instanceof HashSet || value instanceof EnumSet)
+                return constants.keySet();
+            if (value instanceof SortedSet) {
+                SortedSet<T> sorted = (SortedSet<T>) value;
+                Comparator<Object> comparator = (Comparator<Object>) sorted.comparator();
+                if (comparator == null) comparator = (Comparator<Object>) (Comparator<?>) Comparator.naturalOrder();
+                Set<Object> set = new TreeSet<>(comparator);
+                try {
+                    Object first = sorted.isEmpty() ? null : sorted.first();
+                    for (Object constant : constants.keySet()) {
+                        if (first != null) comparator.compare(constant, first);
+                        set.add(constant);
+                    }
+                } catch (NullPointerException | ClassCastException e) {
+                    return null;
+                }
+                return set;
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner(", ");
+            for (Pattern<?> pattern : patterns)
+                joiner.add(pattern.toString());
+            return "ContainsAll(" + joiner + ")";
+        }
+    }
+
+    /** Returns {@code patterns} as an array.<p>
+     *
+     * “{@code these(p1,…,pn)}” is equivalent to “{@code new Pattern<? super T>[] { p1,…,pn }}”.
+     * This function is intended for notational convenience in pattern-creating functions such as
+     * {@link #Array(Pattern[], Pattern) Array}.
+     *
+     * @param patterns The patterns to be wrapped in an array.
+     * @return {@code patterns} as an array
+     */
+    @Contract(value = "_ -> param1", pure = true)
+    @SafeVarargs
+    public static <T> @NotNull Pattern<? super T> @NotNull []
+    these(@NotNull Pattern<? super T> @NotNull ... patterns) {
+        return patterns;
+    }
+
+
+    /** Pattern that matches a nonempty {@link Optional}.
+     * Accepts if the matched value is of the form {@link Optional}`(x)` and `x` matches the subpattern `pattern`.
+     *
+     * @param pattern the pattern for the content of the matched option
+     * @param <T> the type of the content of the optional (i.e., the matched value has type {@code Optional<T>})
+     * @return the option pattern
+     */
+    public static <T> @NotNull Pattern<Optional<@NotNull T>> Optional(@NotNull Pattern<@NotNull T> pattern) {
+        return new OptionalOf<>(pattern);
+    }
+
+    /** The pattern constructed by {@link #Optional(Pattern)}. */
+    static final class OptionalOf<T> extends Pattern<Optional<T>> {
+        @NotNull final Pattern<T> pattern;
+
+        @Contract(pure = true)
+        OptionalOf(@NotNull Pattern<T> pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable Optional<T> value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable Optional<T> value) {
+            //noinspection OptionalAssignedToNull
+            if (value==null) return false;
+            if (!value.isPresent()) return false;
+            return pattern.matches(mgr, value.get());
+        }
+
+        @Override
+        public String toString() {
+            return "Optional(" + pattern + ")";
+        }
+    }
+
+    /** Pattern that matches an empty {@link Optional}.
+     * I.e., it accepts if the matched value is {@link Optional}{@code ()}.
+     *
+     * @param <T> the type of the content of the option (i.e., the matched value has type {@code Optional<T>})
+     * @return the option pattern
+     */
+    @Contract(value = " -> new", pure = true)
+    public static <T> @NotNull Pattern<Optional<@NotNull T>> Optional() {
+        return new OptionalEmpty<>();
+    }
+
+    /** The pattern constructed by {@link #Optional()}. */
+    static final class OptionalEmpty<T> extends Pattern<Optional<T>> {
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable Optional<T> value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable Optional<T> value) {
+            //noinspection OptionalAssignedToNull
+            return value != null && !value.isPresent();
+        }
+
+        @Override
+        boolean assignsNoCaptures() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "Optional.empty";
+        }
+    }
+
+    /** Pattern that matches a {@link Map}.<p>
+     *
+     * When invoked as
+     * {@code Map(Map.entry(key1, pattern1), Map.entry(key2, pattern2), ...)},
+     * the resulting pattern matches a map {@code m} if:
+     * the map contains the keys {@code key1, key2, ...},
+     * and {@code m}{@link Map#get .get}{@code (keyi)} matches the subpattern {@code patterni} for all {@code i}.
+     * (The matched value is allowed to contain additional keys.)<p>
+     *
+     * Each key is looked up once using {@link Map#get}. Only if that returns {@code null},
+     * {@link Map#containsKey} is used to distinguish a missing key from a {@code null} value.<p>
+     *
+     * Example:
+     * <pre>
+     * Map&lt;String,Integer&gt; map = ...;
+     * match (map,
+     *        Map(Map.entry("one", Is(1)), Map.entry("two", Is(2))),
+     *        () -&gt; doStuff());
+     * </pre>
+     * Here {@code doStuff()} will be executed if {@code map} contains entries {@code "one" -> 1} and {@code "two" -> 2}
+     * (and possibly other entries).
+     *
+     * @param patterns the patterns for individual map entries
+     * @param <K> key type
+     * @param <V> value type
+     * @return a pattern matching a {@link Map}
+     */
+    @Contract(value = "_ -> new", pure = true)
+    @SafeVarargs
+    public static <K,V> @NotNull Pattern<Map<K,V>> Map(@NotNull Map.Entry<K,Pattern<? super V>> ... patterns) {
+        return new MapOf<>(patterns, null);
+    }
+
+    /** Pattern that matches a {@link Map}.<p>
+     *
+     * This function is invoked as
+     * <pre>
+     * Map({@link #entries entries}(Map.entry(key1, pattern1), ...), rest)
+     * </pre>
+     * and matches like {@link #Map(Map.Entry[]) Map}{@code (Map.entry(key1, pattern1), ...)}, and additionally
+     * the map consisting of the remaining entries (i.e., all entries except those for {@code key1, ...}) must
+     * match {@code rest}.<p>
+     *
+     * {@code rest} is matched against an unmodifiable view of the matched map, not a copy.
+     * (The view is valid only as long as the matched map is not modified. The keys {@code key1, ...} are excluded
+     * using the comparator of a {@link SortedMap}, identity for an {@link IdentityHashMap}, and
+     * {@link Object#equals} for other maps.)
+     * Example: {@code Map(entries(Map.entry("type", Is("point"))), After(Map::size, Is(0)))} matches only maps
+     * with the single key {@code "type"}.
+     *
+     * @param entries the patterns for individual map entries
+     * @param rest the pattern for the remaining map
+     * @param <K> key type
+     * @param <V> value type
+     * @return a pattern matching a {@link Map}
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    public static <K,V> @NotNull Pattern<Map<K,V>> Map(@NotNull Map.Entry<K,Pattern<? super V>> @NotNull [] entries,
+                                                       @NotNull Pattern<? super Map<K,V>> rest) {
+        return new MapOf<>(entries, rest);
+    }
+
+    /** Returns {@code entries} as an array.<p>
+     *
+     * Like {@link #these}, but for the entries in {@link #Map(Map.Entry[], Pattern) Map}.
+     *
+     * @param entries The entries to be wrapped in an array.
+     * @return {@code entries} as an array
+     */
+    @Contract(value = "_ -> param1", pure = true)
+    @SafeVarargs
+    public static <K,V> @NotNull Map.Entry<K,Pattern<? super V>> @NotNull []
+    entries(@NotNull Map.Entry<K,Pattern<? super V>> @NotNull ... entries) {
+        return entries;
+    }
+
+    /** The pattern constructed by {@link #Map}. */
+    static final class MapOf<K,V> extends Pattern<Map<K,V>> {
+        /** Returned by {@link #lookup} if the key is not in the map. */
+        static final Object MISSING = new Object();
+
+        @NotNull final Map.Entry<K,Pattern<? super V>> @NotNull [] patterns;
+        /** The pattern for the remaining entries, or {@code null} if they are not matched (also if it is {@link #Any}). */
+        @Nullable final Pattern<? super Map<K,V>> rest;
+        /** The keys of {@link #patterns} (if {@link #rest} is not {@code null}). */
+        @Nullable private final List<Object> keys;
+        /** {@link #keys} as a set (with {@link Object#equals} as equality). */
+        @Nullable private final Set<Object> keySet;
+
+        @Contract(pure = true)
+        MapOf(@NotNull Map.Entry<K,Pattern<? super V>> @NotNull [] patterns, @Nullable Pattern<? super Map<K,V>> rest) {
+            this.patterns = patterns;
+            this.rest = rest == Any ? null : rest;
+            if (this.rest == null) {
+                keys = null;
+                keySet = null;
+            } else {
+                keys = new ArrayList<>();
+                for (Map.Entry<K, Pattern<? super V>> entry : patterns)
+                    keys.add(entry.getKey());
+                keySet = new HashSet<>(keys);
+            }
+        }
+
+        /** Returns the value for {@code key} in {@code map}, or {@link #MISSING} if there is none
+         * (also if {@code map} is not a {@link Map}). */
+        @Nullable
+        static Object lookup(@Nullable Object map, @Nullable Object key) {
+            if (!(map instanceof Map)) return MISSING;
+            Map<?, ?> m = (Map<?, ?>) map;
+            Object value = m.get(key);
+            if (value == null && !m.containsKey(key)) return MISSING;
+            return value;
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable Map<K, V> map) throws PatternMatchReject {
+            if (!matches(mgr, map)) reject();
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable Map<K, V> map) {
+            if (map==null) return false;
+            for (Map.Entry<K, Pattern<? super V>> entry : patterns) {
+                final Object val = lookup(map, entry.getKey());
+                if (val == MISSING) return false;
+                final Pattern<? super V> pat = entry.getValue();
+                if (!pat.matches(mgr, (V) val)) return false;
+            }
+            if (keys == null) return true;
+            assert rest != null && keySet != null;
+            return rest.matches(mgr, new RemainingEntries<>(map, excludedKeys(map)));
+        }
+
+        /** The keys of {@link #patterns} as a set that uses the same key equality as {@code map}. */
+        @SuppressWarnings("unchecked")
+        @NotNull
+        private Set<Object> excludedKeys(@NotNull Map<K, V> map) {
+            assert keys != null && keySet != null;
+            Set<Object> excluded;
+            if (map instanceof SortedMap)
+                excluded = new TreeSet<>((Comparator<Object>) ((SortedMap<K, V>) map).comparator());
+            else if (map instanceof IdentityHashMap)
+                excluded = Collections.newSetFromMap(new IdentityHashMap<>());
+            else
+                return keySet;
+            excluded.addAll(keys);
+            return excluded;
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner(", ");
+            for (Map.@NotNull Entry<K, Pattern<? super V>> entry : patterns)
+                joiner.add(entry.getKey().toString())
+                        .add("=")
+                        .add(entry.getValue().toString());
+            if (rest == null)
+                return "Map(" + joiner + ")";
+            return "Map(entries(" + joiner + "), " + rest + ")";
+        }
+    }
+
+    /** An unmodifiable view of the entries of {@code map} whose keys are not in {@code excluded}.
+     * Used by {@link #Map(Map.Entry[], Pattern)}, which ensures that all {@code excluded} keys occur in {@code map}
+     * and that {@code excluded} uses the same equality as {@code map}. */
+    private static final class RemainingEntries<K,V> extends AbstractMap<K,V> {
+        @NotNull private final Map<K,V> map;
+        @NotNull private final Set<Object> excluded;
+        @Nullable private Set<Map.Entry<K,V>> entrySet;
+
+        @Contract(pure = true)
+        RemainingEntries(@NotNull Map<K,V> map, @NotNull Set<Object> excluded) {
+            this.map = map;
+            this.excluded = excluded;
+        }
+
+        @Override
+        public int size() {
+            return map.size() - excluded.size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return !excluded.contains(key) && map.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            return excluded.contains(key) ? null : map.get(key);
+        }
+
+        @NotNull
+        @Override
+        public Set<Map.Entry<K,V>> entrySet() {
+            if (entrySet == null)
+                entrySet = new AbstractSet<Map.Entry<K,V>>() {
+                    @NotNull
+                    @Override
+                    public Iterator<Map.Entry<K,V>> iterator() {
+                        Iterator<Map.Entry<K,V>> entries = map.entrySet().iterator();
+                        return new Iterator<Map.Entry<K,V>>() {
+                            @Nullable private Map.Entry<K,V> next = advance();
+
+                            @Nullable
+                            private Map.Entry<K,V> advance() {
+                                while (entries.hasNext()) {
+                                    Map.Entry<K,V> entry = entries.next();
+                                    if (!excluded.contains(entry.getKey()))
+                                        return new SimpleImmutableEntry<>(entry);
+                                }
+                                return null;
+                            }
+
+                            @Override
+                            public boolean hasNext() {
+                                return next != null;
+                            }
+
+                            @Override
+                            public Map.Entry<K,V> next() {
+                                if (next == null) throw new NoSuchElementException();
+                                Map.Entry<K,V> result = next;
+                                next = advance();
+                                return result;
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return RemainingEntries.this.size();
+                    }
+                };
+            return entrySet;
+        }
+    }
+
+    /** Pattern that applies a transformation to the matched value before applying a pattern.
+     * More precisely, the matched value {@code m} matches {@code After(function,pattern)}
+     * if {@code function(m)} matches {@code pattern}.<p>
+     *
+     * If {@code function} throws an exception, the exception is passed through (i.e., the whole pattern match aborts
+     * with an exceptions). Except: If {@code function} throws a {@link NullPointerException} or a {@link PatternMatchReject}
+     * (the latter by invocation of {@link Pattern#reject()}), then the pattern rejects (but pattern matching continues).<p>
+     *
+     * Example: If {@code path} is a {@link Path}, the following match executes {@code doStuff()} if the
+     * filename part of {@code path} is "diary.txt":
+     * <pre>
+     * match (path,
+     *        After(p -&gt; p.getFileName().toString(), Is("diary.txt")),
+     *        () -&gt; doStuff())
+     * </pre>
+     *
+     * @param function function to apply to the matched value before matching against {@code pattern}
+     * @param pattern pattern to match against after applying {@code function}
+     * @return the resulting pattern
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    @NotNull public static <T,U> Pattern<T> After(@NotNull Function<T,U> function, @NotNull Pattern<? super U> pattern) {
+        return new AfterOf<>(function, pattern);
+    }
+
+    /** The pattern constructed by {@link #After}. */
+    static final class AfterOf<T,U> extends Pattern<T> {
+        /** Returned by {@link #transform} if the function rejects. */
+        static final Object REJECTED = new Object();
+
+        @NotNull final Function<T,U> function;
+        @NotNull final Pattern<? super U> pattern;
+
+        @Contract(pure = true)
+        AfterOf(@NotNull Function<T,U> function, @NotNull Pattern<? super U> pattern) {
+            this.function = function;
+            this.pattern = pattern;
+        }
+
+        /** Applies {@code function} to {@code value}, or returns {@link #REJECTED} if it throws a
+         * {@link NullPointerException} or {@link PatternMatchReject}. */
+        @Nullable
+        static <T> Object transform(@NotNull Function<T,?> function, @Nullable T value) {
+            try {
+                return function.apply(value);
+            } catch (NullPointerException e) {
+                return REJECTED;
+            } catch (Exception e) {
+                // function may only throw a PatternMatchReject by invoking reject() in a lambda that hides the exception
+                if (e instanceof PatternMatchReject) return REJECTED;
+                throw e;
+            }
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable T value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean matches(@NotNull MatchManager mgr, @Nullable T value) {
+            Object newValue = transform(function, value);
+            return newValue != REJECTED && pattern.matches(mgr, (U) newValue);
+        }
+
+        @Override
+        public String toString() {
+            return "After(…," + pattern + ")";
+        }
+    }
+
+    /** Pattern that applies a {@link View} to the matched value before applying a pattern.
+     * Same as <code>{@link #After(Function, Pattern) After}(function, pattern)</code> where {@code function} is the
+     * function of {@code view}, except that the function is only computed once per match for each value
+     * (even if the view is used in several cases, see {@link View}).
+     *
+     * @param view the view to apply to the matched value before matching against {@code pattern}
+     * @param pattern pattern to match against after applying {@code view}
+     * @param <T> type of the matched value
+     * @param <U> type of the value computed by the view
+     * @return the resulting pattern
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    @NotNull public static <T,U> Pattern<T> After(@NotNull View<? super T,U> view, @NotNull Pattern<? super U> pattern) {
+        return new AfterView<>(view, pattern);
+    }
+
+    /** The pattern constructed by {@link #After(View, Pattern)}. */
+    static final class AfterView<T,U> extends Pattern<T> {
+        @NotNull final View<? super T,U> view;
+        @NotNull final Pattern<? super U> pattern;
+
+        @Contract(pure = true)
+        AfterView(@NotNull View<? super T,U> view, @NotNull Pattern<? super U> pattern) {
+            this.view = view;
+            this.pattern = pattern;
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable T value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean matches(@NotNull MatchManager mgr, @Nullable T value) {
+            Object newValue = view.apply(mgr, value);
+            return newValue != AfterOf.REJECTED && pattern.matches(mgr, (U) newValue);
+        }
+
+        @Override
+        public String toString() {
+            return "After(" + view + "," + pattern + ")";
+        }
+    }
+
+    /** Pattern that matches if the matched value equals the value of the {@link View} {@code expected}
+     * (created with {@link View#lazy}).<p>
+     *
+     * Same as <code>{@link #Is(Supplier) Is}(supplier)</code> where {@code supplier} is the supplier of {@code expected},
+     * except that the supplier is invoked only once per match (even if the view is used in several cases).
+     * Equality is tested using {@link Objects#equals}.
+     *
+     * @param expected the view computing the expected value
+     * @param <T> type of the matched value
+     * @return the pattern
+     */
+    @NotNull
+    @Contract(pure = true, value = "_ -> new")
+    public static <T> Pattern<T> Is(@NotNull View<Object, ? extends T> expected) {
+        return new Pattern<T>() {
+            @Override
+            public void apply(@NotNull MatchManager mgr, @Nullable T value) throws PatternMatchReject {
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable T value) {
+                Object computed = expected.apply(mgr, null);
+                return computed != AfterOf.REJECTED && Objects.equals(computed, value);
+            }
+
+            @Override
+            boolean assignsNoCaptures() {
+                return true;
+            }
 
             @Override
             public String toString() {
-                StringJoiner joiner = new StringJoiner(", ");
-                for (Pattern<?> pattern : these)
-                    joiner.add(pattern.toString());
-                return "Array(these(" + joiner + "), " + more + ")";
+                return "=" + expected;
+            }
+        };
+    }
+
+    /** Pattern that matches if the matched value equals {@code expected}.<p>
+     *
+     * Can be used on {@code int} values without boxing (see {@link IntPattern}).
+     *
+     * @param expected the expected value
+     * @return the pattern
+     */
+    @NotNull
+    @Contract(pure = true, value = "_ -> new")
+    public static IntPattern IsInt(int expected) {
+        return new IntPattern() {
+            @Override
+            public boolean matchesInt(@NotNull MatchManager mgr, int value) {
+                return value == expected;
+            }
+
+            @Override
+            boolean assignsNoCaptures() {
+                return true;
+            }
+
+            @Override
+            public String toString() {
+                return "=" + expected;
+            }
+        };
+    }
+
+    /** Pattern that matches if the matched value equals the value in the captured variable
+     * {@code expected} (without boxing, see {@link IntPattern}).
+     *
+     * @param expected the capture holding the expected value
+     * @return the pattern
+     */
+    @NotNull
+    @Contract(pure = true, value = "_ -> new")
+    public static IntPattern IsInt(@NotNull IntCapture expected) {
+        return new IntPattern() {
+            @Override
+            public boolean matchesInt(@NotNull MatchManager mgr, int value) {
+                return value == expected.getInt();
+            }
+
+            @Override
+            boolean assignsNoCaptures() {
+                return true;
+            }
+
+            @Override
+            public String toString() {
+                return "=" + expected;
+            }
+        };
+    }
+
+    /** Pattern that matches if the matched value lies between {@code min} and {@code max} (both inclusive).
+     * Can be used on {@code int} values without boxing (see {@link IntPattern}).
+     *
+     * @param min the smallest matching value
+     * @param max the largest matching value
+     * @return the pattern
+     */
+    @NotNull
+    @Contract(pure = true, value = "_, _ -> new")
+    public static IntPattern IntRange(int min, int max) {
+        return new IntPattern() {
+            @Override
+            public boolean matchesInt(@NotNull MatchManager mgr, int value) {
+                return min <= value && value <= max;
+            }
+
+            @Override
+            boolean assignsNoCaptures() {
+                return true;
+            }
+
+            @Override
+            public String toString() {
+                return "IntRange(" + min + "," + max + ")";
+            }
+        };
+    }
+
+    /** Pattern that matches if the matched value equals {@code expected}.<p>
+     *
+     * Can be used on {@code long} values without boxing (see {@link LongPattern}).
+     *
+     * @param expected the expected value
+     * @return the pattern
+     */
+    @NotNull
+    @Contract(pure = true, value = "_ -> new")
+    public static LongPattern IsLong(long expected) {
+        return new LongPattern() {
+            @Override
+            public boolean matchesLong(@NotNull MatchManager mgr, long value) {
+                return value == expected;
+            }
+
+            @Override
+            boolean assignsNoCaptures() {
+                return true;
+            }
+
+            @Override
+            public String toString() {
+                return "=" + expected;
+            }
+        };
+    }
+
+    /** Pattern that matches if the matched value equals the value in the captured variable
+     * {@code expected} (without boxing, see {@link LongPattern}).
+     *
+     * @param expected the capture holding the expected value
+     * @return the pattern
+     */
+    @NotNull
+    @Contract(pure = true, value = "_ -> new")
+    public static LongPattern IsLong(@NotNull LongCapture expected) {
+        return new LongPattern() {
+            @Override
+            public boolean matchesLong(@NotNull MatchManager mgr, long value) {
+                return value == expected.getLong();
+            }
+
+            @Override
+            boolean assignsNoCaptures() {
+                return true;
+            }
+
+            @Override
+            public String toString() {
+                return "=" + expected;
+            }
+        };
+    }
+
+    /** Pattern that matches if the matched value lies between {@code min} and {@code max} (both inclusive).
+     * Can be used on {@code long} values without boxing (see {@link LongPattern}).
+     *
+     * @param min the smallest matching value
+     * @param max the largest matching value
+     * @return the pattern
+     */
+    @NotNull
+    @Contract(pure = true, value = "_, _ -> new")
+    public static LongPattern LongRange(long min, long max) {
+        return new LongPattern() {
+            @Override
+            public boolean matchesLong(@NotNull MatchManager mgr, long value) {
+                return min <= value && value <= max;
+            }
+
+            @Override
+            boolean assignsNoCaptures() {
+                return true;
+            }
+
+            @Override
+            public String toString() {
+                return "LongRange(" + min + "," + max + ")";
+            }
+        };
+    }
+
+    /** Pattern that applies a transformation with a {@code int} result to the matched value before
+     * applying a pattern. Like {@link #After}, but the result of {@code function} is not boxed.
+     * (E.g., <code>AfterInt(String::length, {@link Pattern#intCapture x})</code>.)
+     *
+     * @param function function to apply to the matched value before matching against {@code pattern}
+     * @param pattern pattern to match against after applying {@code function}
+     * @param <T> type of the matched value
+     * @return the resulting pattern
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    @NotNull public static <T> Pattern<T> AfterInt(@NotNull ToIntFunction<? super T> function, @NotNull IntPattern pattern) {
+        return new Pattern<T>() {
+            @Override
+            public void apply(@NotNull MatchManager mgr, @Nullable T value) throws PatternMatchReject {
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable T value) {
+                int newValue;
+                try {
+                    newValue = function.applyAsInt(value);
+                } catch (NullPointerException e) {
+                    return false;
+                } catch (Exception e) {
+                    // see AfterOf.transform
+                    if (e instanceof PatternMatchReject) return false;
+                    throw e;
+                }
+                return pattern.matchesInt(mgr, newValue);
+            }
+
+            @Override
+            public String toString() {
+                return "AfterInt(…," + pattern + ")";
+            }
+        };
+    }
+
+    /** Pattern that applies a transformation with a {@code long} result to the matched value before
+     * applying a pattern. Like {@link #After}, but the result of {@code function} is not boxed.
+     * (E.g., <code>AfterLong(File::length, {@link Pattern#longCapture x})</code>.)
+     *
+     * @param function function to apply to the matched value before matching against {@code pattern}
+     * @param pattern pattern to match against after applying {@code function}
+     * @param <T> type of the matched value
+     * @return the resulting pattern
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    @NotNull public static <T> Pattern<T> AfterLong(@NotNull ToLongFunction<? super T> function, @NotNull LongPattern pattern) {
+        return new Pattern<T>() {
+            @Override
+            public void apply(@NotNull MatchManager mgr, @Nullable T value) throws PatternMatchReject {
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable T value) {
+                long newValue;
+                try {
+                    newValue = function.applyAsLong(value);
+                } catch (NullPointerException e) {
+                    return false;
+                } catch (Exception e) {
+                    // see AfterOf.transform
+                    if (e instanceof PatternMatchReject) return false;
+                    throw e;
+                }
+                return pattern.matchesLong(mgr, newValue);
+            }
+
+            @Override
+            public String toString() {
+                return "AfterLong(…," + pattern + ")";
+            }
+        };
+    }
+
+    /** Pattern that applies a transformation with a {@code double} result to the matched value before
+     * applying a pattern. Like {@link #After}, but the result of {@code function} is not boxed.
+     * (E.g., <code>AfterDouble(Number::doubleValue, {@link Pattern#doubleCapture x})</code>.)
+     *
+     * @param function function to apply to the matched value before matching against {@code pattern}
+     * @param pattern pattern to match against after applying {@code function}
+     * @param <T> type of the matched value
+     * @return the resulting pattern
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    @NotNull public static <T> Pattern<T> AfterDouble(@NotNull ToDoubleFunction<? super T> function, @NotNull DoublePattern pattern) {
+        return new Pattern<T>() {
+            @Override
+            public void apply(@NotNull MatchManager mgr, @Nullable T value) throws PatternMatchReject {
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable T value) {
+                double newValue;
+                try {
+                    newValue = function.applyAsDouble(value);
+                } catch (NullPointerException e) {
+                    return false;
+                } catch (Exception e) {
+                    // see AfterOf.transform
+                    if (e instanceof PatternMatchReject) return false;
+                    throw e;
+                }
+                return pattern.matchesDouble(mgr, newValue);
+            }
+
+            @Override
+            public String toString() {
+                return "AfterDouble(…," + pattern + ")";
             }
         };
     }
 
-    /** Returns {@code patterns} as an array.<p>
+    /** Declares the cost of matching a pattern.<p>
+     *
+     * Matches the same values as {@code pattern}. But when a {@link Matcher} is created,
+     * the subpatterns of {@link #And And} are reordered so that cheap subpatterns are tried first
+     * (as far as this does not change the result of the match, see {@link #And And}).
+     * For this, the cost of each subpattern is estimated. {@code Cost} overrides that estimate for
+     * {@code pattern}. (E.g., <code>Cost(1000, Is(s -&gt; expensiveCheck(s)))</code>.)<p>
+     *
+     * Costs are relative: an {@link #Is(Object) Is} comparison costs about 1, a pattern using a lambda
+     * expression (such as {@link #Is(Predicate) Is(predicate)}) is estimated at 20.
+     *
+     * @param cost the cost of matching {@code pattern}
+     * @param pattern the pattern
+     * @param <T> type of the matched value
+     * @return the pattern
+     */
+    @NotNull
+    @Contract(pure = true, value = "_, _ -> new")
+    public static <T> Pattern<T> Cost(double cost, @NotNull Pattern<T> pattern) {
+        return new WithCost<>(cost, pattern);
+    }
+
+    /** The pattern constructed by {@link #Cost}. */
+    static final class WithCost<T> extends Pattern<T> {
+        final double cost;
+        @NotNull final Pattern<T> pattern;
+
+        @Contract(pure = true)
+        WithCost(double cost, @NotNull Pattern<T> pattern) {
+            this.cost = cost;
+            this.pattern = pattern;
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable T value) throws PatternMatchReject {
+            pattern.apply(mgr, value);
+        }
+
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable T value) {
+            return pattern.matches(mgr, value);
+        }
+
+        @Override
+        public String toString() {
+            return "Cost(" + cost + ", " + pattern + ")";
+        }
+    }
+
+    /** Whether {@code pattern} matches the {@code int} value {@code value}
+     * (without boxing if {@code pattern} is an {@link IntPattern} or {@link #Any}). */
+    private static boolean intMatches(@NotNull MatchManager mgr, @NotNull Pattern<? super Integer> pattern, int value) {
+        if (pattern instanceof IntPattern) return ((IntPattern) pattern).matchesInt(mgr, value);
+        return pattern == Any || pattern.matches(mgr, value);
+    }
+
+    /** Whether {@code pattern} matches the {@code long} value {@code value}
+     * (without boxing if {@code pattern} is a {@link LongPattern} or {@link #Any}). */
+    private static boolean longMatches(@NotNull MatchManager mgr, @NotNull Pattern<? super Long> pattern, long value) {
+        if (pattern instanceof LongPattern) return ((LongPattern) pattern).matchesLong(mgr, value);
+        return pattern == Any || pattern.matches(mgr, value);
+    }
+
+    /** Whether {@code pattern} matches the {@code double} value {@code value}
+     * (without boxing if {@code pattern} is a {@link DoublePattern} or {@link #Any}). */
+    private static boolean doubleMatches(@NotNull MatchManager mgr, @NotNull Pattern<? super Double> pattern, double value) {
+        if (pattern instanceof DoublePattern) return ((DoublePattern) pattern).matchesDouble(mgr, value);
+        return pattern == Any || pattern.matches(mgr, value);
+    }
+
+    /** Superclass of the patterns constructed by {@link #IntArray(Pattern[])}, {@link #LongArray(Pattern[])}, etc.
+     *
+     * @param <A> the array type
+     * @param <E> the (boxed) type of the values matched by the element patterns */
+    abstract static class PrimitiveArrayOf<A, E> extends Pattern<A> {
+        @NotNull final Pattern<? super E> @NotNull [] patterns;
+        /** The pattern for the remaining elements, or {@code null} if the length of the array must be {@code patterns.length}. */
+        @Nullable final Pattern<?> rest;
+
+        @Contract(pure = true)
+        PrimitiveArrayOf(@NotNull Pattern<? super E> @NotNull [] patterns, @Nullable Pattern<?> rest) {
+            this.patterns = patterns;
+            this.rest = rest;
+        }
+
+        /** The length of {@code array}. */
+        abstract int length(@NotNull A array);
+        /** Whether the first {@code patterns.length} elements of {@code array} match {@code patterns}. */
+        abstract boolean elementsMatch(@NotNull MatchManager mgr, @NotNull A array);
+        /** A buffer containing the elements of {@code array} starting at {@code from} (without copying). */
+        @NotNull abstract Object slice(@NotNull A array, int from);
+        /** A pattern of the same kind with the given subpatterns. */
+        @NotNull abstract PrimitiveArrayOf<A, E> with(@NotNull Pattern<? super E> @NotNull [] patterns, @Nullable Pattern<?> rest);
+        /** The name of the pattern constructing function. */
+        @NotNull abstract String name();
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, @Nullable A value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, @Nullable A value) {
+            if (value == null) return false;
+            int length = length(value);
+            if (rest == null ? length != patterns.length : length < patterns.length) return false;
+            if (!elementsMatch(mgr, value)) return false;
+            if (rest == null || rest == Any) return true;
+            return ((Pattern<Object>) rest).matches(mgr, slice(value, patterns.length));
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner(", ");
+            for (Pattern<?> pattern : patterns)
+                joiner.add(pattern.toString());
+            if (rest == null)
+                return name() + "(" + joiner + ")";
+            return name() + "(these(" + joiner + "), " + rest + ")";
+        }
+    }
+
+    /** Pattern that matches an {@code int[]} array. <p>
+     *
+     * The pattern matches if the matched value is an array with {@code patterns.length} elements,
+     * and the i-th element of the matched value matches the i-th pattern in {@code patterns}.
+     * Elements are not boxed if the corresponding pattern is an {@link IntPattern}
+     * (e.g., {@link #IsInt(int) IsInt}, {@link #IntRange}, or an {@link IntCapture}) or {@link #Any}. <p>
+     *
+     * All captures assigned by the subpatterns {@code patterns} will be assigned by this pattern.
+     * Consequently, the subpatterns must assign distinct captures.
+     *
+     * @param patterns the patterns for the array elements
+     * @return the array pattern
+     */
+    @Contract(value = "_ -> new", pure = true)
+    @SafeVarargs
+    public static @NotNull Pattern<int[]> IntArray(@NotNull Pattern<? super Integer> @NotNull ... patterns) {
+        return new IntArrayOf(patterns, null);
+    }
+
+    /** Pattern that matches an {@code int[]} array. <p>
      *
-     * “{@code these(p1,…,pn)}” is equivalent to “{@code new Pattern<? super T>[] { p1,…,pn }}”.
-     * This function is intended for notational convenience in pattern-creating functions such as
-     * {@link #Array(Pattern[], Pattern) Array}.
+     * This function is invoked as
+     * <pre>
+     * IntArray({@link #these these}(p1,...,pn),rest)
+     * </pre>
+     * and matches if the matched value is an array of length ≥<i>n</i> whose first <i>n</i> elements match
+     * {@code p}1, …, {@code p}<i>n</i> (as in {@link #IntArray(Pattern[])}), and an {@link IntBuffer} containing the
+     * remaining elements matches {@code rest}. The buffer is a view of the matched array, not a copy.
      *
-     * @param patterns The patterns to be wrapped in an array.
-     * @return {@code patterns} as an array
+     * @param these the patterns for the prefix of the matched array
+     * @param rest the pattern for the rest of the matched array
+     * @return the array pattern
      */
-    @Contract(value = "_ -> param1", pure = true)
-    @SafeVarargs
-    public static <T> @NotNull Pattern<? super T> @NotNull []
-    these(@NotNull Pattern<? super T> @NotNull ... patterns) {
-        return patterns;
+    @Contract(value = "_, _ -> new", pure = true)
+    public static @NotNull Pattern<int[]> IntArray(@NotNull Pattern<? super Integer> @NotNull [] these,
+                                                   @NotNull Pattern<? super IntBuffer> rest) {
+        return new IntArrayOf(these, rest);
     }
 
+    /** The pattern constructed by {@link #IntArray(Pattern[])} and {@link #IntArray(Pattern[], Pattern)}. */
+    static final class IntArrayOf extends PrimitiveArrayOf<int[], Integer> {
+        @Contract(pure = true)
+        IntArrayOf(@NotNull Pattern<? super Integer> @NotNull [] patterns, @Nullable Pattern<?> rest) {
+            super(patterns, rest);
+        }
+
+        @Override
+        int length(int @NotNull [] array) {
+            return array.length;
+        }
 
-    /** Pattern that matches a nonempty {@link Optional}.
-     * Accepts if the matched value is of the form {@link Optional}`(x)` and `x` matches the subpattern `pattern`.
+        @Override
+        boolean elementsMatch(@NotNull MatchManager mgr, int @NotNull [] array) {
+            for (int i=0; i<patterns.length; i++)
+                if (!intMatches(mgr, patterns[i], array[i])) return false;
+            return true;
+        }
+
+        @Override
+        @NotNull Object slice(int @NotNull [] array, int from) {
+            return IntBuffer.wrap(array, from, array.length - from).slice();
+        }
+
+        @Override
+        @NotNull PrimitiveArrayOf<int[], Integer> with(@NotNull Pattern<? super Integer> @NotNull [] patterns, @Nullable Pattern<?> rest) {
+            return new IntArrayOf(patterns, rest);
+        }
+
+        @Override
+        @NotNull String name() {
+            return "IntArray";
+        }
+    }
+
+    /** Pattern that matches a {@code long[]} array. <p>
      *
-     * @param pattern the pattern for the content of the matched option
-     * @param <T> the type of the content of the optional (i.e., the matched value has type {@code Optional<T>})
-     * @return the option pattern
+     * Like {@link #IntArray(Pattern[])}, but for {@code long} elements.
+     * Elements are not boxed if the corresponding pattern is a {@link LongPattern} or {@link #Any}.
+     *
+     * @param patterns the patterns for the array elements
+     * @return the array pattern
      */
-    public static <T> @NotNull Pattern<Optional<@NotNull T>> Optional(@NotNull Pattern<@NotNull T> pattern) {
-        return new Pattern<Optional<T>>() {
-            @Override
-            public void apply(@NotNull MatchManager mgr, @Nullable Optional<T> value) throws PatternMatchReject {
-                //noinspection OptionalAssignedToNull
-                if (value==null) reject();
-                if (!value.isPresent()) reject();
-                pattern.apply(mgr, value.get());
-            }
-
-            @Override
-            public String toString() {
-                return "Optional(" + pattern + ")";
-            }
-        };
+    @Contract(value = "_ -> new", pure = true)
+    @SafeVarargs
+    public static @NotNull Pattern<long[]> LongArray(@NotNull Pattern<? super Long> @NotNull ... patterns) {
+        return new LongArrayOf(patterns, null);
     }
 
-    /** Pattern that matches an empty {@link Optional}.
-     * I.e., it accepts if the matched value is {@link Optional}{@code ()}.
+    /** Pattern that matches a {@code long[]} array. <p>
      *
-     * @param <T> the type of the content of the option (i.e., the matched value has type {@code Optional<T>})
-     * @return the option pattern
+     * Like {@link #IntArray(Pattern[], Pattern)}, but for {@code long} elements.
+     * {@code rest} is matched against a {@link LongBuffer} view of the remaining elements.
+     *
+     * @param these the patterns for the prefix of the matched array
+     * @param rest the pattern for the rest of the matched array
+     * @return the array pattern
      */
-    @Contract(value = " -> new", pure = true)
-    public static <T> @NotNull Pattern<Optional<@NotNull T>> Optional() {
-        return new Pattern<Optional<T>>() {
-            @Override
-            public void apply(@NotNull MatchManager mgr, @Nullable Optional<T> value) throws PatternMatchReject {
-                //noinspection OptionalAssignedToNull
-                if (value==null) reject();
-                if (value.isPresent()) reject();
-            }
+    @Contract(value = "_, _ -> new", pure = true)
+    public static @NotNull Pattern<long[]> LongArray(@NotNull Pattern<? super Long> @NotNull [] these,
+                                                     @NotNull Pattern<? super LongBuffer> rest) {
+        return new LongArrayOf(these, rest);
+    }
 
-            @Override
-            public String toString() {
-                return "Optional.empty";
-            }
-        };
+    /** The pattern constructed by {@link #LongArray(Pattern[])} and {@link #LongArray(Pattern[], Pattern)}. */
+    static final class LongArrayOf extends PrimitiveArrayOf<long[], Long> {
+        @Contract(pure = true)
+        LongArrayOf(@NotNull Pattern<? super Long> @NotNull [] patterns, @Nullable Pattern<?> rest) {
+            super(patterns, rest);
+        }
+
+        @Override
+        int length(long @NotNull [] array) {
+            return array.length;
+        }
+
+        @Override
+        boolean elementsMatch(@NotNull MatchManager mgr, long @NotNull [] array) {
+            for (int i=0; i<patterns.length; i++)
+                if (!longMatches(mgr, patterns[i], array[i])) return false;
+            return true;
+        }
+
+        @Override
+        @NotNull Object slice(long @NotNull [] array, int from) {
+            return LongBuffer.wrap(array, from, array.length - from).slice();
+        }
+
+        @Override
+        @NotNull PrimitiveArrayOf<long[], Long> with(@NotNull Pattern<? super Long> @NotNull [] patterns, @Nullable Pattern<?> rest) {
+            return new LongArrayOf(patterns, rest);
+        }
+
+        @Override
+        @NotNull String name() {
+            return "LongArray";
+        }
     }
 
-    /** Pattern that matches a {@link Map}.<p>
+    /** Pattern that matches a {@code double[]} array. <p>
      *
-     * When invoked as
-     * {@code Map(Map.entry(key1, pattern1), Map.entry(key2, pattern2), ...)},
-     * the resulting pattern matches a map {@code m} if:
-     * the map contains the keys {@code key1, key2, ...},
-     * and {@code m}{@link Map#get .get}{@code (keyi)} matches the subpattern {@code patterni} for all {@code i}.
-     * (The matched value is allowed to contain additional keys.)<p>
+     * Like {@link #IntArray(Pattern[])}, but for {@code double} elements.
+     * Elements are not boxed if the corresponding pattern is a {@link DoublePattern} or {@link #Any}.
      *
-     * Example:
-     * <pre>
-     * Map&lt;String,Integer&gt; map = ...;
-     * match (map,
-     *        Map(Map.entry("one", Is(1)), Map.entry("two", Is(2))),
-     *        () -&gt; doStuff());
-     * </pre>
-     * Here {@code doStuff()} will be executed if {@code map} contains entries {@code "one" -> 1} and {@code "two" -> 2}
-     * (and possibly other entries).
+     * @param patterns the patterns for the array elements
+     * @return the array pattern
+     */
+    @Contract(value = "_ -> new", pure = true)
+    @SafeVarargs
+    public static @NotNull Pattern<double[]> DoubleArray(@NotNull Pattern<? super Double> @NotNull ... patterns) {
+        return new DoubleArrayOf(patterns, null);
+    }
+
+    /** Pattern that matches a {@code double[]} array. <p>
      *
-     * @param patterns the patterns for individual map entries
-     * @param <K> key type
-     * @param <V> value type
-     * @return a pattern matching a {@link Map}
+     * Like {@link #IntArray(Pattern[], Pattern)}, but for {@code double} elements.
+     * {@code rest} is matched against a {@link DoubleBuffer} view of the remaining elements.
+     *
+     * @param these the patterns for the prefix of the matched array
+     * @param rest the pattern for the rest of the matched array
+     * @return the array pattern
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    public static @NotNull Pattern<double[]> DoubleArray(@NotNull Pattern<? super Double> @NotNull [] these,
+                                                         @NotNull Pattern<? super DoubleBuffer> rest) {
+        return new DoubleArrayOf(these, rest);
+    }
+
+    /** The pattern constructed by {@link #DoubleArray(Pattern[])} and {@link #DoubleArray(Pattern[], Pattern)}. */
+    static final class DoubleArrayOf extends PrimitiveArrayOf<double[], Double> {
+        @Contract(pure = true)
+        DoubleArrayOf(@NotNull Pattern<? super Double> @NotNull [] patterns, @Nullable Pattern<?> rest) {
+            super(patterns, rest);
+        }
+
+        @Override
+        int length(double @NotNull [] array) {
+            return array.length;
+        }
+
+        @Override
+        boolean elementsMatch(@NotNull MatchManager mgr, double @NotNull [] array) {
+            for (int i=0; i<patterns.length; i++)
+                if (!doubleMatches(mgr, patterns[i], array[i])) return false;
+            return true;
+        }
+
+        @Override
+        @NotNull Object slice(double @NotNull [] array, int from) {
+            return DoubleBuffer.wrap(array, from, array.length - from).slice();
+        }
+
+        @Override
+        @NotNull PrimitiveArrayOf<double[], Double> with(@NotNull Pattern<? super Double> @NotNull [] patterns, @Nullable Pattern<?> rest) {
+            return new DoubleArrayOf(patterns, rest);
+        }
+
+        @Override
+        @NotNull String name() {
+            return "DoubleArray";
+        }
+    }
+
+    /** Pattern that matches a {@code byte[]} array. <p>
+     *
+     * Like {@link #IntArray(Pattern[])}, but for {@code byte} elements.
+     * The elements are matched as {@code int} values (so {@code IsInt(-1)} and {@code Is(-1)} match the byte {@code 0xFF}).
+     *
+     * @param patterns the patterns for the array elements
+     * @return the array pattern
      */
     @Contract(value = "_ -> new", pure = true)
     @SafeVarargs
-    public static <K,V> @NotNull Pattern<Map<K,V>> Map(@NotNull Map.Entry<K,Pattern<? super V>> ... patterns) {
-        return new Pattern<Map<K, V>>() {
-            @Override
-            public void apply(@NotNull MatchManager mgr, @Nullable Map<K, V> map) throws PatternMatchReject {
-                if (map==null) reject();
-                for (Map.Entry<K, Pattern<? super V>> entry : patterns) {
-                    final K key = entry.getKey();
-                    if (!map.containsKey(key)) reject();
-                    final V val = map.get(key);
-                    final Pattern<? super V> pat = entry.getValue();
-                    pat.apply(mgr, val);
-                }
-            }
+    public static @NotNull Pattern<byte[]> ByteArray(@NotNull Pattern<? super Integer> @NotNull ... patterns) {
+        return new ByteArrayOf(patterns, null);
+    }
 
-            @Override
-            public String toString() {
-                StringJoiner joiner = new StringJoiner(", ");
-                for (Map.@NotNull Entry<K, Pattern<? super V>> entry : patterns)
-                    joiner.add(entry.getKey().toString())
-                            .add("=")
-                            .add(entry.getValue().toString());
-                return "Map(" + joiner + ")";
-            }
-        };
+    /** Pattern that matches a {@code byte[]} array. <p>
+     *
+     * Like {@link #IntArray(Pattern[], Pattern)}, but for {@code byte} elements (matched as {@code int} values).
+     * {@code rest} is matched against a {@link ByteBuffer} view of the remaining elements.
+     *
+     * @param these the patterns for the prefix of the matched array
+     * @param rest the pattern for the rest of the matched array
+     * @return the array pattern
+     */
+    @Contract(value = "_, _ -> new", pure = true)
+    public static @NotNull Pattern<byte[]> ByteArray(@NotNull Pattern<? super Integer> @NotNull [] these,
+                                                     @NotNull Pattern<? super ByteBuffer> rest) {
+        return new ByteArrayOf(these, rest);
     }
 
-    /** Pattern that applies a transformation to the matched value before applying a pattern.
-     * More precisely, the matched value {@code m} matches {@code After(function,pattern)}
-     * if {@code function(m)} matches {@code pattern}.<p>
+    /** The pattern constructed by {@link #ByteArray(Pattern[])} and {@link #ByteArray(Pattern[], Pattern)}. */
+    static final class ByteArrayOf extends PrimitiveArrayOf<byte[], Integer> {
+        @Contract(pure = true)
+        ByteArrayOf(@NotNull Pattern<? super Integer> @NotNull [] patterns, @Nullable Pattern<?> rest) {
+            super(patterns, rest);
+        }
+
+        @Override
+        int length(byte @NotNull [] array) {
+            return array.length;
+        }
+
+        @Override
+        boolean elementsMatch(@NotNull MatchManager mgr, byte @NotNull [] array) {
+            for (int i=0; i<patterns.length; i++)
+                if (!intMatches(mgr, patterns[i], array[i])) return false;
+            return true;
+        }
+
+        @Override
+        @NotNull Object slice(byte @NotNull [] array, int from) {
+            return ByteBuffer.wrap(array, from, array.length - from).slice();
+        }
+
+        @Override
+        @NotNull PrimitiveArrayOf<byte[], Integer> with(@NotNull Pattern<? super Integer> @NotNull [] patterns, @Nullable Pattern<?> rest) {
+            return new ByteArrayOf(patterns, rest);
+        }
+
+        @Override
+        @NotNull String name() {
+            return "ByteArray";
+        }
+    }
+
+    /** Pattern that matches a {@code char[]} array. <p>
      *
-     * If {@code function} throws an exception, the exception is passed through (i.e., the whole pattern match aborts
-     * with an exceptions). Except: If {@code function} throws a {@link NullPointerException} or a {@link PatternMatchReject}
-     * (the latter by invocation of {@link Pattern#reject()}), then the pattern rejects (but pattern matching continues).<p>
+     * Like {@link #IntArray(Pattern[])}, but for {@code char} elements.
+     * The elements are matched as {@code int} values (so {@code IsInt('a')} matches the character {@code 'a'}).
      *
-     * Example: If {@code path} is a {@link Path}, the following match executes {@code doStuff()} if the
-     * filename part of {@code path} is "diary.txt":
-     * <pre>
-     * match (path,
-     *        After(p -&gt; p.getFileName().toString(), Is("diary.txt")),
-     *        () -&gt; doStuff())
-     * </pre>
+     * @param patterns the patterns for the array elements
+     * @return the array pattern
+     */
+    @Contract(value = "_ -> new", pure = true)
+    @SafeVarargs
+    public static @NotNull Pattern<char[]> CharArray(@NotNull Pattern<? super Integer> @NotNull ... patterns) {
+        return new CharArrayOf(patterns, null);
+    }
+
+    /** Pattern that matches a {@code char[]} array. <p>
      *
-     * @param function function to apply to the matched value before matching against {@code pattern}
-     * @param pattern pattern to match against after applying {@code function}
-     * @return the resulting pattern
+     * Like {@link #IntArray(Pattern[], Pattern)}, but for {@code char} elements (matched as {@code int} values).
+     * {@code rest} is matched against a {@link CharBuffer} view of the remaining elements.
+     *
+     * @param these the patterns for the prefix of the matched array
+     * @param rest the pattern for the rest of the matched array
+     * @return the array pattern
      */
     @Contract(value = "_, _ -> new", pure = true)
-    @NotNull public static <T,U> Pattern<T> After(@NotNull Function<T,U> function, @NotNull Pattern<? super U> pattern) {
-        return new Pattern<T>() {
-            @Override
-            public void apply(@NotNull MatchManager mgr, @Nullable T value) throws PatternMatchReject {
-                U newValue = null;
-                try {
-                    newValue = function.apply(value);
-                } catch (NullPointerException e) {
-                    reject();
-                }
-                pattern.apply(mgr, newValue);
-            }
+    public static @NotNull Pattern<char[]> CharArray(@NotNull Pattern<? super Integer> @NotNull [] these,
+                                                     @NotNull Pattern<? super CharBuffer> rest) {
+        return new CharArrayOf(these, rest);
+    }
 
-            @Override
-            public String toString() {
-                return "After(…," + pattern + ")";
-            }
-        };
+    /** The pattern constructed by {@link #CharArray(Pattern[])} and {@link #CharArray(Pattern[], Pattern)}. */
+    static final class CharArrayOf extends PrimitiveArrayOf<char[], Integer> {
+        @Contract(pure = true)
+        CharArrayOf(@NotNull Pattern<? super Integer> @NotNull [] patterns, @Nullable Pattern<?> rest) {
+            super(patterns, rest);
+        }
+
+        @Override
+        int length(char @NotNull [] array) {
+            return array.length;
+        }
+
+        @Override
+        boolean elementsMatch(@NotNull MatchManager mgr, char @NotNull [] array) {
+            for (int i=0; i<patterns.length; i++)
+                if (!intMatches(mgr, patterns[i], array[i])) return false;
+            return true;
+        }
+
+        @Override
+        @NotNull Object slice(char @NotNull [] array, int from) {
+            return CharBuffer.wrap(array, from, array.length - from).slice();
+        }
+
+        @Override
+        @NotNull PrimitiveArrayOf<char[], Integer> with(@NotNull Pattern<? super Integer> @NotNull [] patterns, @Nullable Pattern<?> rest) {
+            return new CharArrayOf(patterns, rest);
+        }
+
+        @Override
+        @NotNull String name() {
+            return "CharArray";
+        }
     }
 
+
     /** Pattern that matches an iterator ({@link Iterator}). <p>
      *
      * The pattern matches if the matched value is an iterator that contains {@code patterns.length} elements,
@@ -647,8 +2556,12 @@ public final class Patterns {
         return new Pattern<Iterator<T>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Iterator<@Nullable T> iterator) throws PatternMatchReject {
-                if (iterator == null) reject();
-                iteratorApply(patterns, mgr, CloneableIterator.fromShared(iterator));
+                if (!matches(mgr, iterator)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Iterator<@Nullable T> iterator) {
+                return iterator != null && iteratorMatches(patterns, mgr, CloneableIterator.fromShared(iterator));
             }
 
             @Override
@@ -696,8 +2609,12 @@ public final class Patterns {
             @Override
             public void apply (@NotNull MatchManager mgr, @Nullable Iterator < @Nullable T > iterator) throws
             PatternMatchReject {
-                if (iterator == null) reject();
-                iteratorApply(these, more, mgr, CloneableIterator.fromShared(iterator));
+                if (!matches(mgr, iterator)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Iterator<@Nullable T> iterator) {
+                return iterator != null && iteratorMatches(these, more, mgr, CloneableIterator.fromShared(iterator));
             }
 
             @Override
@@ -710,27 +2627,27 @@ public final class Patterns {
         };
     }
 
-    private static <T> void iteratorApply(
+    private static <T> boolean iteratorMatches(
             @NotNull Pattern<? super T> @NotNull [] these,
             @NotNull Pattern<? super CloneableIterator<T>> more,
-            @NotNull MatchManager mgr, @NotNull CloneableIterator<@Nullable T> iterator) throws PatternMatchReject {
+            @NotNull MatchManager mgr, @NotNull CloneableIterator<@Nullable T> iterator) {
         for (Pattern<? super T> pattern : these) {
-            if (!iterator.hasNext()) Pattern.reject();
+            if (!iterator.hasNext()) return false;
             T value = iterator.next();
-            pattern.apply(mgr, value);
+            if (!pattern.matches(mgr, value)) return false;
         }
-        more.apply(mgr, iterator);
+        return more.matches(mgr, iterator);
     }
 
-    private static <T> void iteratorApply(
+    private static <T> boolean iteratorMatches(
             @NotNull Pattern<? super T> @NotNull [] patterns,
-            @NotNull MatchManager mgr, @NotNull CloneableIterator<@Nullable T> iterator) throws PatternMatchReject {
+            @NotNull MatchManager mgr, @NotNull CloneableIterator<@Nullable T> iterator) {
         for (Pattern<? super T> pattern : patterns) {
-            if (!iterator.hasNext()) Pattern.reject();
+            if (!iterator.hasNext()) return false;
             T value = iterator.next();
-            pattern.apply(mgr, value);
+            if (!pattern.matches(mgr, value)) return false;
         }
-        if (iterator.hasNext()) Pattern.reject();
+        return !iterator.hasNext();
     }
 
 
@@ -752,8 +2669,12 @@ public final class Patterns {
         return new Pattern<Stream<T>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Stream<@Nullable T> stream) throws PatternMatchReject {
-                if (stream == null) reject();
-                iteratorApply(patterns, mgr, CloneableIterator.fromShared(stream));
+                if (!matches(mgr, stream)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Stream<@Nullable T> stream) {
+                return stream != null && iteratorMatches(patterns, mgr, CloneableIterator.fromShared(stream));
             }
 
             @Override
@@ -793,8 +2714,12 @@ public final class Patterns {
             @Override
             public void apply (@NotNull MatchManager mgr, @Nullable Stream<@Nullable T> stream) throws
                     PatternMatchReject {
-                if (stream == null) reject();
-                iteratorApply(these, more, mgr, CloneableIterator.fromShared(stream));
+                if (!matches(mgr, stream)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Stream<@Nullable T> stream) {
+                return stream != null && iteratorMatches(these, more, mgr, CloneableIterator.fromShared(stream));
             }
 
             @Override
@@ -54,13 +54,19 @@ public final class ScalaPatterns {
         return new Pattern<Seq<T>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Seq<T> value) throws PatternMatchReject {
-                if (value==null) reject();
-                if (value.lengthCompare(patterns.length) != 0) reject();
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Seq<T> value) {
+                if (value==null) return false;
+                if (value.lengthCompare(patterns.length) != 0) return false;
                 int idx = 0;
                 for (Iterator<T> it = value.iterator(); it.hasNext(); ) {
-                    patterns[idx].apply(mgr, it.next());
+                    if (!patterns[idx].matches(mgr, it.next())) return false;
                     idx ++;
                 }
+                return true;
             }
 
             @Override
@@ -110,17 +116,22 @@ public final class ScalaPatterns {
         return new Pattern<Seq<T>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Seq<@Nullable T> value) throws PatternMatchReject {
-                if (value == null) reject();
-                if (value.lengthCompare(these.length) < 0) reject();
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Seq<@Nullable T> value) {
+                if (value == null) return false;
+                if (value.lengthCompare(these.length) < 0) return false;
                 Tuple2<?, ?> split = value.splitAt(these.length); // Java is confused by precise type of splitAt
                 @SuppressWarnings("unchecked") Iterable<T> valueThese = (Iterable<T>)split._1;
                 @SuppressWarnings("unchecked") Iterable<T> valueMore = (Iterable<T>)split._2;
                 int idx = 0;
                 for (Iterator<T> it = valueThese.iterator(); it.hasNext(); ) {
-                    these[idx].apply(mgr, it.next());
+                    if (!these[idx].matches(mgr, it.next())) return false;
                     idx ++;
                 }
-                more.apply(mgr, valueMore.toSeq());
+                return more.matches(mgr, valueMore.toSeq());
             }
 
             @Override
@@ -146,10 +157,12 @@ public final class ScalaPatterns {
         return new Pattern<Option<T>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Option<T> value) throws PatternMatchReject {
-                if (value instanceof Some)
-                    pattern.apply(mgr, value.get());
-                else
-                    reject();
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Option<T> value) {
+                return value instanceof Some && pattern.matches(mgr, value.get());
             }
 
             @Override
@@ -169,8 +182,12 @@ public final class ScalaPatterns {
         return new Pattern<Option<T>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Option<T> value) throws PatternMatchReject {
-                if (value == null) reject();
-                if (value.nonEmpty()) reject();
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Option<T> value) {
+                return value != null && value.isEmpty();
             }
 
             @Override
@@ -187,8 +204,13 @@ public final class ScalaPatterns {
         return new Pattern<Product1<T1>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Product1<T1> value) throws PatternMatchReject {
-                if (value == null) reject();
-                pattern1.apply(mgr, value._1());
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Product1<T1> value) {
+                return value != null
+                        && pattern1.matches(mgr, value._1());
             }
 
             @Override
@@ -206,9 +228,14 @@ public final class ScalaPatterns {
         return new Pattern<Product2<T1,T2>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Product2<T1,T2> value) throws PatternMatchReject {
-                if (value == null) reject();
-                pattern1.apply(mgr, value._1());
-                pattern2.apply(mgr, value._2());
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Product2<T1,T2> value) {
+                return value != null
+                        && pattern1.matches(mgr, value._1())
+                        && pattern2.matches(mgr, value._2());
             }
 
             @Override
@@ -226,10 +253,15 @@ public final class ScalaPatterns {
         return new Pattern<Product3<T1,T2,T3>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Product3<T1,T2,T3> value) throws PatternMatchReject {
-                if (value == null) reject();
-                pattern1.apply(mgr, value._1());
-                pattern2.apply(mgr, value._2());
-                pattern3.apply(mgr, value._3());
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Product3<T1,T2,T3> value) {
+                return value != null
+                        && pattern1.matches(mgr, value._1())
+                        && pattern2.matches(mgr, value._2())
+                        && pattern3.matches(mgr, value._3());
             }
 
             @Override
@@ -247,11 +279,16 @@ public final class ScalaPatterns {
         return new Pattern<Product4<T1,T2,T3,T4>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Product4<T1,T2,T3,T4> value) throws PatternMatchReject {
-                if (value == null) reject();
-                pattern1.apply(mgr, value._1());
-                pattern2.apply(mgr, value._2());
-                pattern3.apply(mgr, value._3());
-                pattern4.apply(mgr, value._4());
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Product4<T1,T2,T3,T4> value) {
+                return value != null
+                        && pattern1.matches(mgr, value._1())
+                        && pattern2.matches(mgr, value._2())
+                        && pattern3.matches(mgr, value._3())
+                        && pattern4.matches(mgr, value._4());
             }
 
             @Override
@@ -269,12 +306,17 @@ public final class ScalaPatterns {
         return new Pattern<Product5<T1,T2,T3,T4,T5>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Product5<T1,T2,T3,T4,T5> value) throws PatternMatchReject {
-                if (value == null) reject();
-                pattern1.apply(mgr, value._1());
-                pattern2.apply(mgr, value._2());
-                pattern3.apply(mgr, value._3());
-                pattern4.apply(mgr, value._4());
-                pattern5.apply(mgr, value._5());
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Product5<T1,T2,T3,T4,T5> value) {
+                return value != null
+                        && pattern1.matches(mgr, value._1())
+                        && pattern2.matches(mgr, value._2())
+                        && pattern3.matches(mgr, value._3())
+                        && pattern4.matches(mgr, value._4())
+                        && pattern5.matches(mgr, value._5());
             }
 
             @Override
@@ -292,13 +334,18 @@ public final class ScalaPatterns {
         return new Pattern<Product6<T1,T2,T3,T4,T5,T6>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Product6<T1,T2,T3,T4,T5,T6> value) throws PatternMatchReject {
-                if (value == null) reject();
-                pattern1.apply(mgr, value._1());
-                pattern2.apply(mgr, value._2());
-                pattern3.apply(mgr, value._3());
-                pattern4.apply(mgr, value._4());
-                pattern5.apply(mgr, value._5());
-                pattern6.apply(mgr, value._6());
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Product6<T1,T2,T3,T4,T5,T6> value) {
+                return value != null
+                        && pattern1.matches(mgr, value._1())
+                        && pattern2.matches(mgr, value._2())
+                        && pattern3.matches(mgr, value._3())
+                        && pattern4.matches(mgr, value._4())
+                        && pattern5.matches(mgr, value._5())
+                        && pattern6.matches(mgr, value._6());
             }
 
             @Override
@@ -316,14 +363,19 @@ public final class ScalaPatterns {
         return new Pattern<Product7<T1,T2,T3,T4,T5,T6,T7>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Product7<T1,T2,T3,T4,T5,T6,T7> value) throws PatternMatchReject {
-                if (value == null) reject();
-                pattern1.apply(mgr, value._1());
-                pattern2.apply(mgr, value._2());
-                pattern3.apply(mgr, value._3());
-                pattern4.apply(mgr, value._4());
-                pattern5.apply(mgr, value._5());
-                pattern6.apply(mgr, value._6());
-                pattern7.apply(mgr, value._7());
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Product7<T1,T2,T3,T4,T5,T6,T7> value) {
+                return value != null
+                        && pattern1.matches(mgr, value._1())
+                        && pattern2.matches(mgr, value._2())
+                        && pattern3.matches(mgr, value._3())
+                        && pattern4.matches(mgr, value._4())
+                        && pattern5.matches(mgr, value._5())
+                        && pattern6.matches(mgr, value._6())
+                        && pattern7.matches(mgr, value._7());
             }
 
             @Override
@@ -341,15 +393,20 @@ public final class ScalaPatterns {
         return new Pattern<Product8<T1,T2,T3,T4,T5,T6,T7,T8>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Product8<T1,T2,T3,T4,T5,T6,T7,T8> value) throws PatternMatchReject {
-                if (value == null) reject();
-                pattern1.apply(mgr, value._1());
-                pattern2.apply(mgr, value._2());
-                pattern3.apply(mgr, value._3());
-                pattern4.apply(mgr, value._4());
-                pattern5.apply(mgr, value._5());
-                pattern6.apply(mgr, value._6());
-                pattern7.apply(mgr, value._7());
-                pattern8.apply(mgr, value._8());
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Product8<T1,T2,T3,T4,T5,T6,T7,T8> value) {
+                return value != null
+                        && pattern1.matches(mgr, value._1())
+                        && pattern2.matches(mgr, value._2())
+                        && pattern3.matches(mgr, value._3())
+                        && pattern4.matches(mgr, value._4())
+                        && pattern5.matches(mgr, value._5())
+                        && pattern6.matches(mgr, value._6())
+                        && pattern7.matches(mgr, value._7())
+                        && pattern8.matches(mgr, value._8());
             }
 
             @Override
@@ -367,16 +424,21 @@ public final class ScalaPatterns {
         return new Pattern<Product9<T1,T2,T3,T4,T5,T6,T7,T8,T9>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Product9<T1,T2,T3,T4,T5,T6,T7,T8,T9> value) throws PatternMatchReject {
-                if (value == null) reject();
-                pattern1.apply(mgr, value._1());
-                pattern2.apply(mgr, value._2());
-                pattern3.apply(mgr, value._3());
-                pattern4.apply(mgr, value._4());
-                pattern5.apply(mgr, value._5());
-                pattern6.apply(mgr, value._6());
-                pattern7.apply(mgr, value._7());
-                pattern8.apply(mgr, value._8());
-                pattern9.apply(mgr, value._9());
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Product9<T1,T2,T3,T4,T5,T6,T7,T8,T9> value) {
+                return value != null
+                        && pattern1.matches(mgr, value._1())
+                        && pattern2.matches(mgr, value._2())
+                        && pattern3.matches(mgr, value._3())
+                        && pattern4.matches(mgr, value._4())
+                        && pattern5.matches(mgr, value._5())
+                        && pattern6.matches(mgr, value._6())
+                        && pattern7.matches(mgr, value._7())
+                        && pattern8.matches(mgr, value._8())
+                        && pattern9.matches(mgr, value._9());
             }
 
             @Override
@@ -394,17 +456,22 @@ public final class ScalaPatterns {
         return new Pattern<Product10<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Product10<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10> value) throws PatternMatchReject {
-                if (value == null) reject();
-                pattern1.apply(mgr, value._1());
-                pattern2.apply(mgr, value._2());
-                pattern3.apply(mgr, value._3());
-                pattern4.apply(mgr, value._4());
-                pattern5.apply(mgr, value._5());
-                pattern6.apply(mgr, value._6());
-                pattern7.apply(mgr, value._7());
-                pattern8.apply(mgr, value._8());
-                pattern9.apply(mgr, value._9());
-                pattern10.apply(mgr, value._10());
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Product10<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10> value) {
+                return value != null
+                        && pattern1.matches(mgr, value._1())
+                        && pattern2.matches(mgr, value._2())
+                        && pattern3.matches(mgr, value._3())
+                        && pattern4.matches(mgr, value._4())
+                        && pattern5.matches(mgr, value._5())
+                        && pattern6.matches(mgr, value._6())
+                        && pattern7.matches(mgr, value._7())
+                        && pattern8.matches(mgr, value._8())
+                        && pattern9.matches(mgr, value._9())
+                        && pattern10.matches(mgr, value._10());
             }
 
             @Override
@@ -422,18 +489,23 @@ public final class ScalaPatterns {
         return new Pattern<Product11<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Product11<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11> value) throws PatternMatchReject {
-                if (value == null) reject();
-                pattern1.apply(mgr, value._1());
-                pattern2.apply(mgr, value._2());
-                pattern3.apply(mgr, value._3());
-                pattern4.apply(mgr, value._4());
-                pattern5.apply(mgr, value._5());
-                pattern6.apply(mgr, value._6());
-                pattern7.apply(mgr, value._7());
-                pattern8.apply(mgr, value._8());
-                pattern9.apply(mgr, value._9());
-                pattern10.apply(mgr, value._10());
-                pattern11.apply(mgr, value._11());
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Product11<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11> value) {
+                return value != null
+                        && pattern1.matches(mgr, value._1())
+                        && pattern2.matches(mgr, value._2())
+                        && pattern3.matches(mgr, value._3())
+                        && pattern4.matches(mgr, value._4())
+                        && pattern5.matches(mgr, value._5())
+                        && pattern6.matches(mgr, value._6())
+                        && pattern7.matches(mgr, value._7())
+                        && pattern8.matches(mgr, value._8())
+                        && pattern9.matches(mgr, value._9())
+                        && pattern10.matches(mgr, value._10())
+                        && pattern11.matches(mgr, value._11());
             }
 
             @Override
@@ -451,19 +523,24 @@ public final class ScalaPatterns {
         return new Pattern<Product12<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Product12<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12> value) throws PatternMatchReject {
-                if (value == null) reject();
-                pattern1.apply(mgr, value._1());
-                pattern2.apply(mgr, value._2());
-                pattern3.apply(mgr, value._3());
-                pattern4.apply(mgr, value._4());
-                pattern5.apply(mgr, value._5());
-                pattern6.apply(mgr, value._6());
-                pattern7.apply(mgr, value._7());
-                pattern8.apply(mgr, value._8());
-                pattern9.apply(mgr, value._9());
-                pattern10.apply(mgr, value._10());
-                pattern11.apply(mgr, value._11());
-                pattern12.apply(mgr, value._12());
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Product12<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12> value) {
+                return value != null
+                        && pattern1.matches(mgr, value._1())
+                        && pattern2.matches(mgr, value._2())
+                        && pattern3.matches(mgr, value._3())
+                        && pattern4.matches(mgr, value._4())
+                        && pattern5.matches(mgr, value._5())
+                        && pattern6.matches(mgr, value._6())
+                        && pattern7.matches(mgr, value._7())
+                        && pattern8.matches(mgr, value._8())
+                        && pattern9.matches(mgr, value._9())
+                        && pattern10.matches(mgr, value._10())
+                        && pattern11.matches(mgr, value._11())
+                        && pattern12.matches(mgr, value._12());
             }
 
             @Override
@@ -481,20 +558,25 @@ public final class ScalaPatterns {
         return new Pattern<Product13<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Product13<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13> value) throws PatternMatchReject {
-                if (value == null) reject();
-                pattern1.apply(mgr, value._1());
-                pattern2.apply(mgr, value._2());
-                pattern3.apply(mgr, value._3());
-                pattern4.apply(mgr, value._4());
-                pattern5.apply(mgr, value._5());
-                pattern6.apply(mgr, value._6());
-                pattern7.apply(mgr, value._7());
-                pattern8.apply(mgr, value._8());
-                pattern9.apply(mgr, value._9());
-                pattern10.apply(mgr, value._10());
-                pattern11.apply(mgr, value._11());
-                pattern12.apply(mgr, value._12());
-                pattern13.apply(mgr, value._13());
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Product13<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13> value) {
+                return value != null
+                        && pattern1.matches(mgr, value._1())
+                        && pattern2.matches(mgr, value._2())
+                        && pattern3.matches(mgr, value._3())
+                        && pattern4.matches(mgr, value._4())
+                        && pattern5.matches(mgr, value._5())
+                        && pattern6.matches(mgr, value._6())
+                        && pattern7.matches(mgr, value._7())
+                        && pattern8.matches(mgr, value._8())
+                        && pattern9.matches(mgr, value._9())
+                        && pattern10.matches(mgr, value._10())
+                        && pattern11.matches(mgr, value._11())
+                        && pattern12.matches(mgr, value._12())
+                        && pattern13.matches(mgr, value._13());
             }
 
             @Override
@@ -512,21 +594,26 @@ public final class ScalaPatterns {
         return new Pattern<Product14<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Product14<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14> value) throws PatternMatchReject {
-                if (value == null) reject();
-                pattern1.apply(mgr, value._1());
-                pattern2.apply(mgr, value._2());
-                pattern3.apply(mgr, value._3());
-                pattern4.apply(mgr, value._4());
-                pattern5.apply(mgr, value._5());
-                pattern6.apply(mgr, value._6());
-                pattern7.apply(mgr, value._7());
-                pattern8.apply(mgr, value._8());
-                pattern9.apply(mgr, value._9());
-                pattern10.apply(mgr, value._10());
-                pattern11.apply(mgr, value._11());
-                pattern12.apply(mgr, value._12());
-                pattern13.apply(mgr, value._13());
-                pattern14.apply(mgr, value._14());
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Product14<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14> value) {
+                return value != null
+                        && pattern1.matches(mgr, value._1())
+                        && pattern2.matches(mgr, value._2())
+                        && pattern3.matches(mgr, value._3())
+                        && pattern4.matches(mgr, value._4())
+                        && pattern5.matches(mgr, value._5())
+                        && pattern6.matches(mgr, value._6())
+                        && pattern7.matches(mgr, value._7())
+                        && pattern8.matches(mgr, value._8())
+                        && pattern9.matches(mgr, value._9())
+                        && pattern10.matches(mgr, value._10())
+                        && pattern11.matches(mgr, value._11())
+                        && pattern12.matches(mgr, value._12())
+                        && pattern13.matches(mgr, value._13())
+                        && pattern14.matches(mgr, value._14());
             }
 
             @Override
@@ -544,22 +631,27 @@ public final class ScalaPatterns {
         return new Pattern<Product15<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14,T15>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Product15<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14,T15> value) throws PatternMatchReject {
-                if (value == null) reject();
-                pattern1.apply(mgr, value._1());
-                pattern2.apply(mgr, value._2());
-                pattern3.apply(mgr, value._3());
-                pattern4.apply(mgr, value._4());
-                pattern5.apply(mgr, value._5());
-                pattern6.apply(mgr, value._6());
-                pattern7.apply(mgr, value._7());
-                pattern8.apply(mgr, value._8());
-                pattern9.apply(mgr, value._9());
-                pattern10.apply(mgr, value._10());
-                pattern11.apply(mgr, value._11());
-                pattern12.apply(mgr, value._12());
-                pattern13.apply(mgr, value._13());
-                pattern14.apply(mgr, value._14());
-                pattern15.apply(mgr, value._15());
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Product15<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14,T15> value) {
+                return value != null
+                        && pattern1.matches(mgr, value._1())
+                        && pattern2.matches(mgr, value._2())
+                        && pattern3.matches(mgr, value._3())
+                        && pattern4.matches(mgr, value._4())
+                        && pattern5.matches(mgr, value._5())
+                        && pattern6.matches(mgr, value._6())
+                        && pattern7.matches(mgr, value._7())
+                        && pattern8.matches(mgr, value._8())
+                        && pattern9.matches(mgr, value._9())
+                        && pattern10.matches(mgr, value._10())
+                        && pattern11.matches(mgr, value._11())
+                        && pattern12.matches(mgr, value._12())
+                        && pattern13.matches(mgr, value._13())
+                        && pattern14.matches(mgr, value._14())
+                        && pattern15.matches(mgr, value._15());
             }
 
             @Override
@@ -577,23 +669,28 @@ public final class ScalaPatterns {
         return new Pattern<Product16<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14,T15,T16>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Product16<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14,T15,T16> value) throws PatternMatchReject {
-                if (value == null) reject();
-                pattern1.apply(mgr, value._1());
-                pattern2.apply(mgr, value._2());
-                pattern3.apply(mgr, value._3());
-                pattern4.apply(mgr, value._4());
-                pattern5.apply(mgr, value._5());
-                pattern6.apply(mgr, value._6());
-                pattern7.apply(mgr, value._7());
-                pattern8.apply(mgr, value._8());
-                pattern9.apply(mgr, value._9());
-                pattern10.apply(mgr, value._10());
-                pattern11.apply(mgr, value._11());
-                pattern12.apply(mgr, value._12());
-                pattern13.apply(mgr, value._13());
-                pattern14.apply(mgr, value._14());
-                pattern15.apply(mgr, value._15());
-                pattern16.apply(mgr, value._16());
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Product16<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14,T15,T16> value) {
+                return value != null
+                        && pattern1.matches(mgr, value._1())
+                        && pattern2.matches(mgr, value._2())
+                        && pattern3.matches(mgr, value._3())
+                        && pattern4.matches(mgr, value._4())
+                        && pattern5.matches(mgr, value._5())
+                        && pattern6.matches(mgr, value._6())
+                        && pattern7.matches(mgr, value._7())
+                        && pattern8.matches(mgr, value._8())
+                        && pattern9.matches(mgr, value._9())
+                        && pattern10.matches(mgr, value._10())
+                        && pattern11.matches(mgr, value._11())
+                        && pattern12.matches(mgr, value._12())
+                        && pattern13.matches(mgr, value._13())
+                        && pattern14.matches(mgr, value._14())
+                        && pattern15.matches(mgr, value._15())
+                        && pattern16.matches(mgr, value._16());
             }
 
             @Override
@@ -611,24 +708,29 @@ public final class ScalaPatterns {
         return new Pattern<Product17<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14,T15,T16,T17>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Product17<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14,T15,T16,T17> value) throws PatternMatchReject {
-                if (value == null) reject();
-                pattern1.apply(mgr, value._1());
-                pattern2.apply(mgr, value._2());
-                pattern3.apply(mgr, value._3());
-                pattern4.apply(mgr, value._4());
-                pattern5.apply(mgr, value._5());
-                pattern6.apply(mgr, value._6());
-                pattern7.apply(mgr, value._7());
-                pattern8.apply(mgr, value._8());
-                pattern9.apply(mgr, value._9());
-                pattern10.apply(mgr, value._10());
-                pattern11.apply(mgr, value._11());
-                pattern12.apply(mgr, value._12());
-                pattern13.apply(mgr, value._13());
-                pattern14.apply(mgr, value._14());
-                pattern15.apply(mgr, value._15());
-                pattern16.apply(mgr, value._16());
-                pattern17.apply(mgr, value._17());
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Product17<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14,T15,T16,T17> value) {
+                return value != null
+                        && pattern1.matches(mgr, value._1())
+                        && pattern2.matches(mgr, value._2())
+                        && pattern3.matches(mgr, value._3())
+                        && pattern4.matches(mgr, value._4())
+                        && pattern5.matches(mgr, value._5())
+                        && pattern6.matches(mgr, value._6())
+                        && pattern7.matches(mgr, value._7())
+                        && pattern8.matches(mgr, value._8())
+                        && pattern9.matches(mgr, value._9())
+                        && pattern10.matches(mgr, value._10())
+                        && pattern11.matches(mgr, value._11())
+                        && pattern12.matches(mgr, value._12())
+                        && pattern13.matches(mgr, value._13())
+                        && pattern14.matches(mgr, value._14())
+                        && pattern15.matches(mgr, value._15())
+                        && pattern16.matches(mgr, value._16())
+                        && pattern17.matches(mgr, value._17());
             }
 
             @Override
@@ -646,25 +748,30 @@ public final class ScalaPatterns {
         return new Pattern<Product18<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14,T15,T16,T17,T18>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Product18<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14,T15,T16,T17,T18> value) throws PatternMatchReject {
-                if (value == null) reject();
-                pattern1.apply(mgr, value._1());
-                pattern2.apply(mgr, value._2());
-                pattern3.apply(mgr, value._3());
-                pattern4.apply(mgr, value._4());
-                pattern5.apply(mgr, value._5());
-                pattern6.apply(mgr, value._6());
-                pattern7.apply(mgr, value._7());
-                pattern8.apply(mgr, value._8());
-                pattern9.apply(mgr, value._9());
-                pattern10.apply(mgr, value._10());
-                pattern11.apply(mgr, value._11());
-                pattern12.apply(mgr, value._12());
-                pattern13.apply(mgr, value._13());
-                pattern14.apply(mgr, value._14());
-                pattern15.apply(mgr, value._15());
-                pattern16.apply(mgr, value._16());
-                pattern17.apply(mgr, value._17());
-                pattern18.apply(mgr, value._18());
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Product18<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14,T15,T16,T17,T18> value) {
+                return value != null
+                        && pattern1.matches(mgr, value._1())
+                        && pattern2.matches(mgr, value._2())
+                        && pattern3.matches(mgr, value._3())
+                        && pattern4.matches(mgr, value._4())
+                        && pattern5.matches(mgr, value._5())
+                        && pattern6.matches(mgr, value._6())
+                        && pattern7.matches(mgr, value._7())
+                        && pattern8.matches(mgr, value._8())
+                        && pattern9.matches(mgr, value._9())
+                        && pattern10.matches(mgr, value._10())
+                        && pattern11.matches(mgr, value._11())
+                        && pattern12.matches(mgr, value._12())
+                        && pattern13.matches(mgr, value._13())
+                        && pattern14.matches(mgr, value._14())
+                        && pattern15.matches(mgr, value._15())
+                        && pattern16.matches(mgr, value._16())
+                        && pattern17.matches(mgr, value._17())
+                        && pattern18.matches(mgr, value._18());
             }
 
             @Override
@@ -682,26 +789,31 @@ public final class ScalaPatterns {
         return new Pattern<Product19<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14,T15,T16,T17,T18,T19>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Product19<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14,T15,T16,T17,T18,T19> value) throws PatternMatchReject {
-                if (value == null) reject();
-                pattern1.apply(mgr, value._1());
-                pattern2.apply(mgr, value._2());
-                pattern3.apply(mgr, value._3());
-                pattern4.apply(mgr, value._4());
-                pattern5.apply(mgr, value._5());
-                pattern6.apply(mgr, value._6());
-                pattern7.apply(mgr, value._7());
-                pattern8.apply(mgr, value._8());
-                pattern9.apply(mgr, value._9());
-                pattern10.apply(mgr, value._10());
-                pattern11.apply(mgr, value._11());
-                pattern12.apply(mgr, value._12());
-                pattern13.apply(mgr, value._13());
-                pattern14.apply(mgr, value._14());
-                pattern15.apply(mgr, value._15());
-                pattern16.apply(mgr, value._16());
-                pattern17.apply(mgr, value._17());
-                pattern18.apply(mgr, value._18());
-                pattern19.apply(mgr, value._19());
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Product19<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14,T15,T16,T17,T18,T19> value) {
+                return value != null
+                        && pattern1.matches(mgr, value._1())
+                        && pattern2.matches(mgr, value._2())
+                        && pattern3.matches(mgr, value._3())
+                        && pattern4.matches(mgr, value._4())
+                        && pattern5.matches(mgr, value._5())
+                        && pattern6.matches(mgr, value._6())
+                        && pattern7.matches(mgr, value._7())
+                        && pattern8.matches(mgr, value._8())
+                        && pattern9.matches(mgr, value._9())
+                        && pattern10.matches(mgr, value._10())
+                        && pattern11.matches(mgr, value._11())
+                        && pattern12.matches(mgr, value._12())
+                        && pattern13.matches(mgr, value._13())
+                        && pattern14.matches(mgr, value._14())
+                        && pattern15.matches(mgr, value._15())
+                        && pattern16.matches(mgr, value._16())
+                        && pattern17.matches(mgr, value._17())
+                        && pattern18.matches(mgr, value._18())
+                        && pattern19.matches(mgr, value._19());
             }
 
             @Override
@@ -719,27 +831,32 @@ public final class ScalaPatterns {
         return new Pattern<Product20<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14,T15,T16,T17,T18,T19,T20>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Product20<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14,T15,T16,T17,T18,T19,T20> value) throws PatternMatchReject {
-                if (value == null) reject();
-                pattern1.apply(mgr, value._1());
-                pattern2.apply(mgr, value._2());
-                pattern3.apply(mgr, value._3());
-                pattern4.apply(mgr, value._4());
-                pattern5.apply(mgr, value._5());
-                pattern6.apply(mgr, value._6());
-                pattern7.apply(mgr, value._7());
-                pattern8.apply(mgr, value._8());
-                pattern9.apply(mgr, value._9());
-                pattern10.apply(mgr, value._10());
-                pattern11.apply(mgr, value._11());
-                pattern12.apply(mgr, value._12());
-                pattern13.apply(mgr, value._13());
-                pattern14.apply(mgr, value._14());
-                pattern15.apply(mgr, value._15());
-                pattern16.apply(mgr, value._16());
-                pattern17.apply(mgr, value._17());
-                pattern18.apply(mgr, value._18());
-                pattern19.apply(mgr, value._19());
-                pattern20.apply(mgr, value._20());
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Product20<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14,T15,T16,T17,T18,T19,T20> value) {
+                return value != null
+                        && pattern1.matches(mgr, value._1())
+                        && pattern2.matches(mgr, value._2())
+                        && pattern3.matches(mgr, value._3())
+                        && pattern4.matches(mgr, value._4())
+                        && pattern5.matches(mgr, value._5())
+                        && pattern6.matches(mgr, value._6())
+                        && pattern7.matches(mgr, value._7())
+                        && pattern8.matches(mgr, value._8())
+                        && pattern9.matches(mgr, value._9())
+                        && pattern10.matches(mgr, value._10())
+                        && pattern11.matches(mgr, value._11())
+                        && pattern12.matches(mgr, value._12())
+                        && pattern13.matches(mgr, value._13())
+                        && pattern14.matches(mgr, value._14())
+                        && pattern15.matches(mgr, value._15())
+                        && pattern16.matches(mgr, value._16())
+                        && pattern17.matches(mgr, value._17())
+                        && pattern18.matches(mgr, value._18())
+                        && pattern19.matches(mgr, value._19())
+                        && pattern20.matches(mgr, value._20());
             }
 
             @Override
@@ -757,28 +874,33 @@ public final class ScalaPatterns {
         return new Pattern<Product21<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14,T15,T16,T17,T18,T19,T20,T21>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Product21<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14,T15,T16,T17,T18,T19,T20,T21> value) throws PatternMatchReject {
-                if (value == null) reject();
-                pattern1.apply(mgr, value._1());
-                pattern2.apply(mgr, value._2());
-                pattern3.apply(mgr, value._3());
-                pattern4.apply(mgr, value._4());
-                pattern5.apply(mgr, value._5());
-                pattern6.apply(mgr, value._6());
-                pattern7.apply(mgr, value._7());
-                pattern8.apply(mgr, value._8());
-                pattern9.apply(mgr, value._9());
-                pattern10.apply(mgr, value._10());
-                pattern11.apply(mgr, value._11());
-                pattern12.apply(mgr, value._12());
-                pattern13.apply(mgr, value._13());
-                pattern14.apply(mgr, value._14());
-                pattern15.apply(mgr, value._15());
-                pattern16.apply(mgr, value._16());
-                pattern17.apply(mgr, value._17());
-                pattern18.apply(mgr, value._18());
-                pattern19.apply(mgr, value._19());
-                pattern20.apply(mgr, value._20());
-                pattern21.apply(mgr, value._21());
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Product21<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14,T15,T16,T17,T18,T19,T20,T21> value) {
+                return value != null
+                        && pattern1.matches(mgr, value._1())
+                        && pattern2.matches(mgr, value._2())
+                        && pattern3.matches(mgr, value._3())
+                        && pattern4.matches(mgr, value._4())
+                        && pattern5.matches(mgr, value._5())
+                        && pattern6.matches(mgr, value._6())
+                        && pattern7.matches(mgr, value._7())
+                        && pattern8.matches(mgr, value._8())
+                        && pattern9.matches(mgr, value._9())
+                        && pattern10.matches(mgr, value._10())
+                        && pattern11.matches(mgr, value._11())
+                        && pattern12.matches(mgr, value._12())
+                        && pattern13.matches(mgr, value._13())
+                        && pattern14.matches(mgr, value._14())
+                        && pattern15.matches(mgr, value._15())
+                        && pattern16.matches(mgr, value._16())
+                        && pattern17.matches(mgr, value._17())
+                        && pattern18.matches(mgr, value._18())
+                        && pattern19.matches(mgr, value._19())
+                        && pattern20.matches(mgr, value._20())
+                        && pattern21.matches(mgr, value._21());
             }
 
             @Override
@@ -795,29 +917,34 @@ public final class ScalaPatterns {
         return new Pattern<Product22<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14,T15,T16,T17,T18,T19,T20,T21,T22>>() {
             @Override
             public void apply(@NotNull MatchManager mgr, @Nullable Product22<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14,T15,T16,T17,T18,T19,T20,T21,T22> value) throws PatternMatchReject {
-                if (value == null) reject();
-                pattern1.apply(mgr, value._1());
-                pattern2.apply(mgr, value._2());
-                pattern3.apply(mgr, value._3());
-                pattern4.apply(mgr, value._4());
-                pattern5.apply(mgr, value._5());
-                pattern6.apply(mgr, value._6());
-                pattern7.apply(mgr, value._7());
-                pattern8.apply(mgr, value._8());
-                pattern9.apply(mgr, value._9());
-                pattern10.apply(mgr, value._10());
-                pattern11.apply(mgr, value._11());
-                pattern12.apply(mgr, value._12());
-                pattern13.apply(mgr, value._13());
-                pattern14.apply(mgr, value._14());
-                pattern15.apply(mgr, value._15());
-                pattern16.apply(mgr, value._16());
-                pattern17.apply(mgr, value._17());
-                pattern18.apply(mgr, value._18());
-                pattern19.apply(mgr, value._19());
-                pattern20.apply(mgr, value._20());
-                pattern21.apply(mgr, value._21());
-                pattern22.apply(mgr, value._22());
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable Product22<T1,T2,T3,T4,T5,T6,T7,T8,T9,T10,T11,T12,T13,T14,T15,T16,T17,T18,T19,T20,T21,T22> value) {
+                return value != null
+                        && pattern1.matches(mgr, value._1())
+                        && pattern2.matches(mgr, value._2())
+                        && pattern3.matches(mgr, value._3())
+                        && pattern4.matches(mgr, value._4())
+                        && pattern5.matches(mgr, value._5())
+                        && pattern6.matches(mgr, value._6())
+                        && pattern7.matches(mgr, value._7())
+                        && pattern8.matches(mgr, value._8())
+                        && pattern9.matches(mgr, value._9())
+                        && pattern10.matches(mgr, value._10())
+                        && pattern11.matches(mgr, value._11())
+                        && pattern12.matches(mgr, value._12())
+                        && pattern13.matches(mgr, value._13())
+                        && pattern14.matches(mgr, value._14())
+                        && pattern15.matches(mgr, value._15())
+                        && pattern16.matches(mgr, value._16())
+                        && pattern17.matches(mgr, value._17())
+                        && pattern18.matches(mgr, value._18())
+                        && pattern19.matches(mgr, value._19())
+                        && pattern20.matches(mgr, value._20())
+                        && pattern21.matches(mgr, value._21())
+                        && pattern22.matches(mgr, value._22());
             }
 
             @Override
@@ -0,0 +1,75 @@
+package de.unruh.javapatterns;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/** A value derived from the matched value that is computed at most once per pattern match.<p>
+ *
+ * When several cases of a match apply the same expensive function to the matched value
+ * (e.g., <code>{@link Patterns#After(Function, Pattern) After}(Foo::parse, …)</code>), the function is
+ * invoked again for each case. Instead, one can declare a view once:
+ * <pre>
+ * static final View&lt;String, Foo&gt; parsed = View.of("parsed", Foo::parse);
+ * </pre>
+ * and use <code>{@link Patterns#After(View, Pattern) After}(parsed, …)</code> in all cases.
+ * Then the function is applied only once for each value it is applied to within one match (i.e., within one invocation of
+ * {@link Match#match(Object, Case[]) Match.match} or {@link Matcher#apply}), across all cases. Similarly,
+ * a view created with {@link #lazy} can be used in <code>{@link Patterns#Is(View) Is}(view)</code>
+ * and is computed at most once per match.<p>
+ *
+ * The function of a view must not depend on the values of captures (since those differ between the cases),
+ * and it should not have side effects. Results are cached by the identity of the value the function is applied to.<p>
+ *
+ * A view is immutable and can be used in concurrent matches.
+ *
+ * @param <T> the type of the value the view is applied to
+ * @param <U> the type of the derived value
+ */
+public final class View<T, U> {
+    @NotNull private final String name;
+    @NotNull private final Function<? super T, ? extends U> function;
+
+    @Contract(pure = true)
+    private View(@NotNull String name, @NotNull Function<? super T, ? extends U> function) {
+        this.name = name;
+        this.function = function;
+    }
+
+    /** Creates a view computing {@code function} from the matched value.
+     * @param name Name of the view. Used only for informative purposes (printing patterns, error messages).
+     * @param function the function (should be side-effect free and not read any captures)
+     * @return the view */
+    @Contract(pure = true, value = "_, _ -> new")
+    public static <T, U> @NotNull View<T, U> of(@NotNull String name, @NotNull Function<? super T, ? extends U> function) {
+        return new View<>(name, function);
+    }
+
+    /** Creates a view that does not depend on the matched value, computing {@code supplier} at most once per match.
+     * @param name Name of the view. Used only for informative purposes (printing patterns, error messages).
+     * @param supplier computes the value (should be side-effect free and not read any captures)
+     * @return the view */
+    @Contract(pure = true, value = "_, _ -> new")
+    public static <U> @NotNull View<Object, U> lazy(@NotNull String name, @NotNull Supplier<? extends U> supplier) {
+        return new View<>(name, ignored -> supplier.get());
+    }
+
+    /** Applies the function to {@code value}, or returns the result from an earlier application in the current match.
+     * @return the result, or {@link Patterns.AfterOf#REJECTED} if the function rejects (see {@link Patterns#After}) */
+    @Nullable Object apply(@NotNull MatchManager mgr, @Nullable T value) {
+        Object result = mgr.viewResult(this, value);
+        if (result == MatchManager.UNKNOWN_VIEW) {
+            result = Patterns.AfterOf.transform(function, value);
+            mgr.storeViewResult(this, value, result);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
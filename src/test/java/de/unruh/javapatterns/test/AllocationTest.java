@@ -0,0 +1,212 @@
+package de.unruh.javapatterns.test;
+
+import com.sun.management.ThreadMXBean;
+import de.unruh.javapatterns.ArraySlice;
+import de.unruh.javapatterns.Bindings;
+import de.unruh.javapatterns.Capture;
+import de.unruh.javapatterns.Case;
+import de.unruh.javapatterns.DoubleCapture;
+import de.unruh.javapatterns.IntCapture;
+import de.unruh.javapatterns.LongCapture;
+import de.unruh.javapatterns.Matcher;
+import de.unruh.javapatterns.Pattern;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static de.unruh.javapatterns.Match.*;
+import static de.unruh.javapatterns.Pattern.*;
+import static de.unruh.javapatterns.Patterns.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/** Checks how many bytes are allocated by pattern matches (using the HotSpot specific {@link ThreadMXBean}). */
+class AllocationTest {
+    private static final int WARMUP = 200_000;
+    private static final int ITERATIONS = 200_000;
+
+    @FunctionalInterface
+    interface Call {
+        void run() throws Exception;
+    }
+
+    /** Average number of bytes allocated by the current thread per invocation of {@code call}. */
+    static double allocatedBytesPerCall(Call call) throws Exception {
+        ThreadMXBean bean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled());
+        long thread = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP; i++)
+            call.run();
+        long before = bean.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ITERATIONS; i++)
+            call.run();
+        long after = bean.getThreadAllocatedBytes(thread);
+        return (after - before) / (double) ITERATIONS;
+    }
+
+    /** Cases {@code Is(0)}, …, {@code Is(n-1)}, followed by {@code Any}. */
+    static Case<Integer, String, RuntimeException>[] missingCases(int n) {
+        @SuppressWarnings("unchecked")
+        Case<Integer, String, RuntimeException>[] cases = new Case[n + 1];
+        for (int i = 0; i < n; i++)
+            cases[i] = withCase(Is(i), () -> "wrong");
+        cases[n] = withCase(Any, () -> "right");
+        return cases;
+    }
+
+    @Test
+    void noAllocationPerCase() throws Exception {
+        Case<Integer, String, RuntimeException>[] fewCases = missingCases(20);
+        Case<Integer, String, RuntimeException>[] manyCases = missingCases(200);
+        Integer value = -1;
+        assertEquals("right", match(value, fewCases));
+        assertEquals("right", match(value, manyCases));
+
+        double few = allocatedBytesPerCall(() -> match(value, fewCases));
+        double many = allocatedBytesPerCall(() -> match(value, manyCases));
+
+        // Any allocation while trying one of the 180 additional cases would take at least 16 bytes per case
+        assertTrue(many < few + 180 * 8,
+                "Allocated " + few + " bytes per match with 21 cases, " + many + " bytes with 201 cases");
+    }
+
+    @Test
+    void noAllocationPerMatch() throws Exception {
+        Case<Integer, String, RuntimeException>[] cases = missingCases(20);
+        Matcher<Integer, String, RuntimeException> matcher = compile(cases);
+        Matcher<Integer, String, RuntimeException> nested = compile(
+                withCase(Is(-2), () -> "wrong"),
+                withCase(Any, () -> matcher.applyOrElse(-1, () -> "none")));
+        Integer value = -1;
+        assertEquals("right", match(value, cases));
+        assertEquals("right", matcher.apply(value));
+        assertEquals("right", nested.apply(value));
+
+        // The match managers are reused, so there is nothing to allocate (less than one object per match on average)
+        double direct = allocatedBytesPerCall(() -> match(value, cases));
+        assertTrue(direct < 8, "Allocated " + direct + " bytes per match");
+        double compiled = allocatedBytesPerCall(() -> matcher.apply(value));
+        assertTrue(compiled < 8, "Allocated " + compiled + " bytes per compiled match");
+        double twoLevels = allocatedBytesPerCall(() -> nested.apply(value));
+        assertTrue(twoLevels < 8, "Allocated " + twoLevels + " bytes per nested match");
+    }
+
+    @Test
+    void noAllocationWithBindings() throws Exception {
+        Capture<Object> x = capture("x");
+        Capture<Object> y = capture("y");
+        Matcher<Object, Integer, RuntimeException> extractor = compile(
+                Instance(String.class, x),
+                Instance(Object[].class, Array(x, y)));
+        Bindings bindings = Bindings.of(x, y);
+        Object[] value = { "a", "b" };
+        assertTrue(extractor.bind(value, bindings));
+        assertEquals("b", bindings.get(y));
+
+        double bytes = allocatedBytesPerCall(() -> extractor.bind(value, bindings));
+        assertTrue(bytes < 8, "Allocated " + bytes + " bytes per match");
+    }
+
+    @Test
+    void noAllocationInOrAndNoMatch() throws Exception {
+        Capture<Object> x = capture("x");
+        // Most alternatives fail after assigning x, so captures have to be rolled back
+        Pattern<Object[]> pattern = Array(Or(And(x, Is(1)), And(x, Is(2)), And(x, Is(3)), x),
+                NoMatch(And(Is(x), Is(0))), NoMatch(Null));
+        Object[] value = { 4, 5, 6 };
+        @SuppressWarnings("unchecked")
+        Case<Object[], Object, RuntimeException>[] cases = new Case[] { withCase(pattern, x::v) };
+        assertEquals(4, match(value, cases));
+
+        double bytes = allocatedBytesPerCall(() -> match(value, cases));
+        assertTrue(bytes < 8, "Allocated " + bytes + " bytes per match");
+    }
+
+    static final class Message {
+        final int id;
+        final long timestamp;
+        final double price;
+
+        Message(int id, long timestamp, double price) {
+            this.id = id;
+            this.timestamp = timestamp;
+            this.price = price;
+        }
+    }
+
+    @Test
+    void noBoxingWithPrimitiveCaptures() throws Exception {
+        IntCapture id = intCapture("id");
+        LongCapture timestamp = longCapture("timestamp");
+        DoubleCapture price = doubleCapture("price");
+        Matcher<Message, Double, RuntimeException> matcher = compile(
+                withCase(AfterInt((Message m) -> m.id, IntRange(0, 99)), () -> -1.0),
+                withCase(And(AfterInt((Message m) -> m.id, id), AfterLong((Message m) -> m.timestamp, timestamp),
+                                AfterDouble((Message m) -> m.price, price)),
+                        () -> id.getInt() + timestamp.getLong() + price.getDouble()));
+        // Neither the ids, timestamps and prices, nor the sum are in the range of cached boxed values
+        Message message = new Message(12345, 1_000_000_000_000L, 0.5);
+        double expected = 12345 + 1_000_000_000_000L + 0.5;
+        assertEquals(expected, matcher.apply(message));
+
+        double bytes = allocatedBytesPerCall(() -> {
+            if (matcher.apply(message) != expected) fail();
+        });
+        // Only the Double returned by the action is allocated (24 bytes with compressed class pointers),
+        // boxing any of the captured values would add at least 16 bytes
+        assertTrue(bytes < 32, "Allocated " + bytes + " bytes per match");
+    }
+
+    @Test
+    void noCopyOfArrayRest() throws Exception {
+        Capture<ArraySlice<Object>> rest = capture("rest");
+        Object[] packet = new Object[10_000];
+        packet[0] = "header";
+        packet[1] = 1;
+        @SuppressWarnings("unchecked")
+        Case<Object[], Object, RuntimeException>[] cases = new Case[] {
+                withCase(Array(these(Is("header"), Is(2)), Any), () -> "wrong"),
+                withCase(ArrayPrefix(these(Is("header"), Is(1)), ArraySlice(these(Null), rest)), rest::v),
+                withCase(Array(these(Is("header")), Any), () -> "wrong") };
+        assertEquals(packet.length - 3, ((ArraySlice<?>) match(packet, cases)).length());
+
+        // Copying the rest would allocate 40kB, each slice allocates a few bytes
+        double bytes = allocatedBytesPerCall(() -> match(packet, cases));
+        assertTrue(bytes < 100, "Allocated " + bytes + " bytes per match");
+    }
+
+    @Test
+    void noAllocationForRandomAccessList() throws Exception {
+        Capture<Object> x = capture("x");
+        List<Object> list = new ArrayList<>(Collections.nCopies(10_000, (Object) "element"));
+        list.set(1, 1);
+        @SuppressWarnings("unchecked")
+        Case<List<Object>, Object, RuntimeException>[] cases = new Case[] {
+                withCase(List(Any, Is(1)), () -> "wrong"),
+                withCase(List(these(Is("element"), Is(1), x), Any), x::v) };
+        assertEquals("element", match(list, cases));
+
+        double bytes = allocatedBytesPerCall(() -> match(list, cases));
+        assertTrue(bytes < 8, "Allocated " + bytes + " bytes per match");
+    }
+
+    @Test
+    void noBoxingInPrimitiveArrays() throws Exception {
+        IntCapture length = intCapture("length");
+        int[] packet = new int[10_000];
+        packet[0] = 0x4242;
+        packet[1] = 1_000_000;
+        @SuppressWarnings("unchecked")
+        Case<int[], Object, RuntimeException>[] cases = new Case[] {
+                withCase(IntArray(these(IsInt(0x4242), IntRange(0, 65535)), Any), () -> "wrong"),
+                withCase(IntArray(these(IsInt(0x4242), length), Any), () -> "right") };
+        assertEquals("right", match(packet, cases));
+
+        // Boxing the elements (not in the Integer cache) would allocate at least 16 bytes
+        double bytes = allocatedBytesPerCall(() -> match(packet, cases));
+        assertTrue(bytes < 8, "Allocated " + bytes + " bytes per match");
+    }
+}
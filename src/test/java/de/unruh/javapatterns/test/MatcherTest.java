@@ -0,0 +1,576 @@
+package de.unruh.javapatterns.test;
+
+import de.unruh.javapatterns.Bindings;
+import de.unruh.javapatterns.Capture;
+import de.unruh.javapatterns.InvalidPatternMatch;
+import de.unruh.javapatterns.Case;
+import de.unruh.javapatterns.MatchException;
+import de.unruh.javapatterns.MatchManager;
+import de.unruh.javapatterns.Matcher;
+import de.unruh.javapatterns.Pattern;
+import de.unruh.javapatterns.PatternHandles;
+import de.unruh.javapatterns.PatternMatchReject;
+import de.unruh.javapatterns.Patterns;
+import de.unruh.javapatterns.View;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static de.unruh.javapatterns.Match.*;
+import static de.unruh.javapatterns.Pattern.capture;
+import static de.unruh.javapatterns.Pattern.reject;
+import static de.unruh.javapatterns.Patterns.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatcherTest {
+    private static final Capture<String> x = capture("x");
+    private static final Capture<Integer> y = capture("y");
+
+    private static final Matcher<Object, String, RuntimeException> matcher = compile(
+            withCase(Instance(String.class, x), () -> "string " + x.v()),
+            withCase(Instance(Integer.class, y), () -> "int " + y.v()));
+
+    @Test
+    void reuse() throws MatchException {
+        assertEquals("string hello", matcher.apply("hello"));
+        assertEquals("int 3", matcher.apply(3));
+        assertEquals("string world", matcher.apply("world"));
+    }
+
+    @Test
+    void noMatch() {
+        MatchException exception = assertThrows(MatchException.class, () -> matcher.apply(1.5));
+        assertEquals(1.5, exception.value);
+    }
+
+    @Test
+    void tryApply() {
+        assertEquals(Optional.of("string hello"), matcher.tryApply("hello"));
+        assertEquals(Optional.empty(), matcher.tryApply(1.5));
+    }
+
+    @Test
+    void applyOrElse() {
+        assertEquals("int 3", matcher.applyOrElse(3, () -> "fallback"));
+        assertEquals("fallback", matcher.applyOrElse(1.5, () -> "fallback"));
+    }
+
+    interface Shape {}
+    static class Circle implements Shape {}
+    static class Square implements Shape {}
+    static class Cube extends Square {}
+
+    @Test
+    void typeDispatch() throws MatchException {
+        Capture<Square> square = capture("square");
+        Matcher<Object, String, RuntimeException> shapes = compile(
+                withCase(Instance(Circle.class, Any), () -> "circle"),
+                withCase(Instance(Cube.class, Any), () -> "cube"),
+                withCase(Is("square"), () -> "string"),
+                withCase(Instance(Square.class, square), () -> "square " + square.v().getClass().getSimpleName()),
+                withCase(Instance(Shape.class, Any), () -> "shape"),
+                withCase(Null, () -> "null"),
+                withCase(Any, () -> "other"));
+
+        assertEquals("circle", shapes.apply(new Circle()));
+        assertEquals("cube", shapes.apply(new Cube()));
+        assertEquals("square Square", shapes.apply(new Square()));
+        assertEquals("shape", shapes.apply(new Shape() {}));
+        assertEquals("string", shapes.apply("square"));
+        assertEquals("other", shapes.apply("circle"));
+        assertEquals("null", shapes.apply(null));
+    }
+
+    @Test
+    void typeDispatchInstanceClass() throws MatchException {
+        Matcher<Shape, String, RuntimeException> shapes = compile(
+                withCase(new Instance<Shape>(Any) {}, () -> "shape"),
+                withCase(Any, () -> "null"));
+
+        assertEquals("shape", shapes.apply(new Circle()));
+        assertEquals("null", shapes.apply(null));
+    }
+
+    enum Color { RED, GREEN, BLUE { @Override public String toString() { return "blue"; } } }
+
+    @Test
+    void constantDispatch() throws MatchException {
+        Capture<Object> other = capture("other");
+        Matcher<Object, String, RuntimeException> constants = compile(
+                withCase(Patterns.<Object>Is("GET"), () -> "get"),
+                withCase(Patterns.<Object>Is(Color.BLUE), () -> "blue"),
+                withCase(Instance(String.class, Is(s -> s.startsWith("P"))), () -> "p..."),
+                withCase(Patterns.<Object>Is("POST"), () -> "post"),
+                withCase(Patterns.<Object>Is(Color.RED), () -> "red"),
+                withCase(Patterns.<Object>Is(3), () -> "three"),
+                withCase(Is((Object) null), () -> "null"),
+                withCase(Patterns.<Object>Is("GET"), () -> "get again"),
+                withCase(other, () -> "other " + other.v()));
+
+        assertEquals("get", constants.apply("GET"));
+        assertEquals("p...", constants.apply("POST"));
+        assertEquals("blue", constants.apply(Color.BLUE));
+        assertEquals("red", constants.apply(Color.RED));
+        assertEquals("other GREEN", constants.apply(Color.GREEN));
+        assertEquals("three", constants.apply(3));
+        assertEquals("other 3", constants.apply(3L));
+        assertEquals("null", constants.apply(null));
+        assertEquals("other HEAD", constants.apply("HEAD"));
+    }
+
+    @Test
+    void constantDispatchReject() throws MatchException {
+        Matcher<String, String, RuntimeException> constants = compile(
+                withCase(Is("GET"), () -> reject()),
+                withCase(Is("GET"), () -> "get"));
+        assertEquals("get", constants.apply("GET"));
+    }
+
+    @Test
+    void sharedArrayTests() throws MatchException {
+        Capture<Object> a = capture("a");
+        Capture<Object> b = capture("b");
+        Capture<Object[]> rest = capture("rest");
+        Matcher<Object[], String, RuntimeException> arrays = compile(
+                withCase(Array(Patterns.<Object>Is(1), Instance(String.class, b)), () -> "1 string " + b.v()),
+                withCase(Array(NotNull(a), Is(s -> (Integer) a.v() > 1)), () -> "big " + a.v()),
+                withCase(Array(NotNull(a), b), () -> "pair " + a.v() + " " + b.v()),
+                withCase(Array(these(Patterns.<Object>Is(1)), rest), () -> "1 and " + rest.v().length + " more"),
+                withCase(NotNull(Any), () -> "other"),
+                withCase(Any, () -> "null"));
+
+        assertEquals("1 string x", arrays.apply(new Object[] { 1, "x" }));
+        assertEquals("pair 1 2", arrays.apply(new Object[] { 1, 2 }));
+        assertEquals("big 2", arrays.apply(new Object[] { 2, "x" }));
+        assertEquals("1 and 2 more", arrays.apply(new Object[] { 1, 2, 3 }));
+        assertEquals("other", arrays.apply(new Object[] { null, 2 }));
+        assertEquals("null", arrays.apply(null));
+    }
+
+    /** A map that counts how often it is accessed. */
+    static class CountingMap extends HashMap<String, Object> {
+        int accesses;
+
+        @Override
+        public boolean containsKey(Object key) {
+            accesses++;
+            return super.containsKey(key);
+        }
+
+        @Override
+        public Object get(Object key) {
+            accesses++;
+            return super.get(key);
+        }
+    }
+
+    static Map.Entry<String, Pattern<? super Object>> entry(String key, Pattern<? super Object> pattern) {
+        return new AbstractMap.SimpleEntry<>(key, pattern);
+    }
+
+    @Test
+    void sharedMapLookups() throws MatchException {
+        Capture<Object> v = capture("v");
+        Matcher<Map<String, Object>, String, RuntimeException> maps = compile(
+                withCase(Map(entry("key", Is(1))), () -> "one"),
+                withCase(Map(entry("key", Is(2))), () -> "two"),
+                withCase(Map(entry("key", Instance(String.class, v))), () -> "string " + v.v()),
+                withCase(Map(entry("key", v)), () -> "other " + v.v()));
+
+        CountingMap map = new CountingMap();
+        map.put("key", "x");
+        assertEquals("string x", maps.apply(map));
+        // A single get, although four cases look up "key"
+        assertEquals(1, map.accesses);
+
+        map.put("key", 3);
+        map.accesses = 0;
+        assertEquals("other 3", maps.apply(map));
+        assertEquals(1, map.accesses);
+
+        // containsKey is only needed to tell a null value from a missing key
+        map.put("key", null);
+        map.accesses = 0;
+        assertEquals("other null", maps.apply(map));
+        assertEquals(2, map.accesses);
+    }
+
+    @Test
+    void singleMapLookup() throws MatchException {
+        Capture<Object> v = capture("v");
+        for (Matcher.Backend backend : Matcher.Backend.values()) {
+            Matcher<Object, String, RuntimeException> maps = compile(backend,
+                    withCase(Instance(Map.class, unchecked(Map(entry("a", Any), entry("b", v)))), () -> "b=" + v.v()),
+                    withCase(Any, () -> "none"));
+            CountingMap map = new CountingMap();
+            map.put("a", 1);
+            map.put("b", 2);
+            assertEquals("b=2", maps.apply(map), backend.toString());
+            // containsKey for "a" (no value needed), get for "b"
+            assertEquals(2, map.accesses, backend.toString());
+
+            map.remove("b");
+            assertEquals("none", maps.apply(map), backend.toString());
+            map.put("b", null);
+            assertEquals("b=null", maps.apply(map), backend.toString());
+        }
+    }
+
+    /** Casts a pattern that is only applied to values of the right type (due to a preceding {@code Instance}). */
+    @SuppressWarnings("unchecked")
+    static <T> Pattern<T> unchecked(Pattern<?> pattern) {
+        return (Pattern<T>) pattern;
+    }
+
+    /** A matcher using most built-in patterns, for comparing the backends. */
+    static Matcher<Object, String, RuntimeException> builtins(Matcher.Backend backend) {
+        Capture<Object> a = capture("a");
+        Capture<Object[]> rest = capture("rest");
+        return compile(backend,
+                withCase(Patterns.<Object>Is("GET"), () -> "get"),
+                withCase(Null, () -> "null"),
+                withCase(Patterns.<Object>Is(Color.RED), () -> "red"),
+                withCase(Instance(Circle.class, Any), () -> "circle"),
+                withCase(Instance(String.class, And(a, Is(s -> s.length() > 3))), () -> "long string " + a.v()),
+                withCase(Instance(Object[].class, Array(Or(Instance(Object[].class, Array(a, Patterns.<Object>Is("y"))), a),
+                                Patterns.<Object>Is(1))),
+                        () -> "pair " + (a.v() instanceof Object[] ? "array" : a.v())),
+                withCase(Instance(Object[].class, Array(these(NotNull(a)), rest)), () -> "array " + a.v() + " +" + rest.v().length),
+                withCase(Instance(Object[].class, Array()), () -> "empty array"),
+                withCase(Instance(Optional.class, unchecked(Optional())), () -> "empty optional"),
+                withCase(Instance(Optional.class, unchecked(Optional(NoMatch(Instance(Integer.class, Any))))), () -> "optional"),
+                withCase(Instance(Map.class, unchecked(Map(entry("k", a)))), () -> "map " + a.v()),
+                withCase(Instance(Integer.class, After((Integer i) -> 100 / i, a)), () -> "100/i = " + a.v()),
+                withCase(a, () -> "other " + a.v()));
+    }
+
+    @Test
+    void bytecodeBackend() throws MatchException {
+        Matcher<Object, String, RuntimeException> matcher = builtins(Matcher.Backend.BYTECODE);
+        assertEquals(Matcher.Backend.BYTECODE, matcher.backend());
+        for (Matcher.Backend backend : Matcher.Backend.values()) {
+            Matcher<Object, String, RuntimeException> m = builtins(backend);
+            HashMap<String, Object> map = new HashMap<>();
+            map.put("k", 5);
+            assertEquals("get", m.apply("GET"), backend.toString());
+            assertEquals("null", m.apply(null));
+            assertEquals("red", m.apply(Color.RED));
+            assertEquals("other GREEN", m.apply(Color.GREEN));
+            assertEquals("circle", m.apply(new Circle()));
+            assertEquals("long string hello", m.apply("hello"));
+            assertEquals("other abc", m.apply("abc"));
+            assertEquals("pair x", m.apply(new Object[] { new Object[] { "x", "y" }, 1 }));
+            assertEquals("pair array", m.apply(new Object[] { new Object[] { "x", "z" }, 1 }));
+            assertEquals("pair x", m.apply(new Object[] { "x", 1 }));
+            assertEquals("array x +2", m.apply(new Object[] { "x", 2, 3 }));
+            assertEquals("empty array", m.apply(new Object[0]));
+            assertEquals("empty optional", m.apply(Optional.empty()));
+            assertEquals("optional", m.apply(Optional.of("x")));
+            assertEquals("other Optional[1]", m.apply(Optional.of(1)));
+            assertEquals("map 5", m.apply(map));
+            assertEquals("other {}", m.apply(new HashMap<>()));
+            assertEquals("100/i = 50", m.apply(2));
+            assertThrows(ArithmeticException.class, () -> m.apply(0));
+        }
+    }
+
+    @Test
+    void bytecodeBackendManyCases() throws MatchException {
+        // Too many cases for one generated class, falls back to SHARED_TESTS
+        @SuppressWarnings("unchecked")
+        Case<Object, String, RuntimeException>[] cases = new Case[20000];
+        for (int i = 0; i < cases.length; i++) {
+            String result = "case " + i;
+            cases[i] = withCase(Is("c" + i), () -> result);
+        }
+        Matcher<Object, String, RuntimeException> matcher = compile(Matcher.Backend.BYTECODE, cases);
+        assertEquals(Matcher.Backend.SHARED_TESTS, matcher.backend());
+        assertEquals("case 0", matcher.apply("c0"));
+        assertEquals("case 19999", matcher.apply("c19999"));
+        assertThrows(MatchException.class, () -> matcher.apply("c20000"));
+    }
+
+    private static final Capture<String> handleCapture = capture("handleCapture");
+    private static final MethodHandle handle = PatternHandles.lower(
+            Array(Patterns.<Object>Is(1), Instance(String.class, handleCapture)));
+    private static final Pattern<Object[]> handlePattern = new Pattern<Object[]>() {
+        @Override
+        public boolean matches(@NotNull MatchManager mgr, Object[] value) {
+            return PatternHandles.invoke(handle, mgr, value);
+        }
+
+        @Override
+        public void apply(@NotNull MatchManager mgr, Object[] value) throws PatternMatchReject {
+            if (!matches(mgr, value)) reject();
+        }
+
+        @Override
+        public String toString() {
+            return "handlePattern";
+        }
+    };
+
+    @Test
+    void methodHandle() throws MatchException {
+        assertEquals(PatternHandles.TYPE, handle.type());
+        assertEquals("one x", match(new Object[] { 1, "x" },
+                handlePattern, () -> "one " + handleCapture.v(),
+                Any, () -> "other"));
+        assertEquals("other", match(new Object[] { 1, 2 },
+                handlePattern, () -> "one " + handleCapture.v(),
+                Any, () -> "other"));
+        assertEquals(Matcher.Backend.METHOD_HANDLES, builtins(Matcher.Backend.METHOD_HANDLES).backend());
+    }
+
+    @Test
+    void instructionsManyCases() throws MatchException {
+        @SuppressWarnings("unchecked")
+        Case<Object, String, RuntimeException>[] cases = new Case[10_001];
+        for (int i = 0; i < 10_000; i++) {
+            String name = "rule" + i;
+            cases[i] = withCase(Instance(Object[].class, Array(Patterns.<Object>Is(i), Instance(String.class, x))),
+                    () -> name + " " + x.v());
+        }
+        cases[10_000] = withCase(Any, () -> "none");
+        Matcher<Object, String, RuntimeException> rules = compile(Matcher.Backend.INSTRUCTIONS, cases);
+        assertEquals(Matcher.Backend.INSTRUCTIONS, rules.backend());
+        assertEquals("rule1234 x", rules.apply(new Object[] { 1234, "x" }));
+        assertEquals("none", rules.apply(new Object[] { 1234, 5 }));
+        assertEquals("none", rules.apply("rule1"));
+    }
+
+    /** Matches a large value with {@code matcher} and checks that the value can be garbage collected afterwards. */
+    static void assertNotRetained(Matcher<Object, String, RuntimeException> matcher) throws InterruptedException, MatchException {
+        Object[] value = { 2, new byte[10_000_000] };
+        WeakReference<Object> payload = new WeakReference<>(value[1]);
+        assertEquals("payload", matcher.apply(value), matcher.backend().toString());
+        value = null;
+        for (int i = 0; i < 50 && payload.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(payload.get(), "Matched value is still reachable after a match with " + matcher.backend());
+    }
+
+    @Test
+    void matchedValueNotRetained() throws InterruptedException, MatchException {
+        Capture<Object> x = capture("x");
+        for (Matcher.Backend backend : Matcher.Backend.values())
+            assertNotRetained(compile(backend,
+                    withCase(Instance(Object[].class, Array(Is(1), x)), () -> "one"),
+                    withCase(Instance(Object[].class, Array(Is(2), Instance(byte[].class, x))), () -> "payload"),
+                    withCase(Any, () -> "other")));
+    }
+
+    @Test
+    void concurrent() throws InterruptedException, MatchException {
+        for (Matcher.Backend backend : Matcher.Backend.values()) {
+            Matcher<Object, String, RuntimeException> matcher = builtins(backend);
+            Object[] values = { "GET", null, "hello", "hi", new Object[] { "z", 1 }, new Object[] { 1, 2, 3 },
+                    Optional.empty(), Optional.of("o"), 5, 7.0 };
+            String[] expected = new String[values.length];
+            for (int i = 0; i < values.length; i++)
+                expected[i] = matcher.apply(values[i]);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread(() -> {
+                    try {
+                        for (int n = 0; n < 10_000; n++)
+                            for (int i = 0; i < values.length; i++)
+                                assertEquals(expected[i], matcher.apply(values[i]));
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads)
+                thread.join();
+            assertNull(failure.get(), () -> backend + ": " + failure.get());
+        }
+    }
+
+    @Test
+    void nestedMatch() throws MatchException {
+        // The inner match assigns the same capture as the outer one, the outer value is visible again afterwards
+        assertEquals("outer inner outer", match("outer",
+                withCase(x, () -> x.v() + " " + match("inner", withCase(x, x::v)) + " " + x.v())));
+        // Captures of the enclosing match can be read in the inner one
+        assertEquals("outer 1", match("outer",
+                withCase(x, () -> match(1, withCase(y, () -> x.v() + " " + y.v())))));
+    }
+
+    @Test
+    void bindings() throws MatchException {
+        Capture<Object> a = capture("a");
+        Matcher<Object, Integer, RuntimeException> extractor = compile(
+                Instance(String.class, x),
+                Instance(Object[].class, Array(a, Instance(Integer.class, y))),
+                Instance(Object[].class, Array(a, Any)));
+        assertEquals(1, extractor.apply(new Object[] { "a", 2 }));
+
+        Bindings bindings = Bindings.of(x, y, a);
+        assertTrue(extractor.bind(new Object[] { "a", 2 }, bindings));
+        assertEquals(1, bindings.caseIndex());
+        assertEquals(2, bindings.get(y));
+        assertEquals("a", bindings.get(a));
+        assertNull(bindings.get(x));
+
+        assertTrue(extractor.bind("hello", bindings));
+        assertEquals(0, bindings.caseIndex());
+        assertEquals("hello", bindings.get(0));
+        assertNull(bindings.get(1));
+
+        assertFalse(extractor.bind(3, bindings));
+        assertEquals(-1, bindings.caseIndex());
+        assertNull(bindings.get(x));
+
+        // Bindings into a given array, using the matcher with actions (which are not executed)
+        Object[] values = new Object[1];
+        assertTrue(matcher.bind(5, Bindings.into(values, y)));
+        assertArrayEquals(new Object[] { 5 }, values);
+        assertThrows(IllegalArgumentException.class, () -> bindings.get(capture("z")));
+    }
+
+    @Test
+    void linearity() throws MatchException {
+        Capture<Object> a = capture("a");
+        assertTrue(matcher.isLinear());
+        assertTrue(builtins(Matcher.Backend.SHARED_TESTS).isLinear());
+        assertTrue(compile(Instance(Object[].class, Array(NoMatch(And(a, Is(1))), a, Is(a)))).isLinear());
+        assertTrue(compile(Instance(Object[].class, Array(Or(And(a, Is(2)), a), Instance(String.class, x)))).isLinear());
+
+        // Re-assignment is still detected at runtime for non-linear patterns
+        Matcher<Object, Integer, RuntimeException> twice = compile(Instance(Object[].class, Array(a, Or(Is(1), a))));
+        assertFalse(twice.isLinear());
+        assertEquals(0, twice.apply(new Object[] { 1, 1 }));
+        assertThrows(InvalidPatternMatch.class, () -> twice.apply(new Object[] { 1, 2 }));
+
+        // Unknown patterns might assign captures
+        Pattern<Object> custom = new Pattern<Object>() {
+            @Override
+            public void apply(@NotNull MatchManager mgr, Object value) {
+            }
+
+            @Override
+            public String toString() {
+                return "custom";
+            }
+        };
+        assertFalse(compile(And(a, custom)).isLinear());
+    }
+
+    /** A constant that counts how often it is compared. */
+    static final class Key {
+        static int comparisons = 0;
+        final int id;
+
+        Key(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            comparisons++;
+            return o instanceof Key && ((Key) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+    }
+
+    @Test
+    void orOfConstants() throws MatchException {
+        Capture<Object> a = capture("a");
+        @SuppressWarnings("unchecked")
+        Pattern<Object>[] keys = new Pattern[100];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = Is(new Key(i));
+        for (Matcher.Backend backend : Matcher.Backend.values()) {
+            Matcher<Object, String, RuntimeException> matcher = compile(backend,
+                    withCase(Instance(Object[].class, Array(Or(keys), Any)), () -> "key"),
+                    withCase(Instance(Object[].class, Array(Or(Is("GET"), Is("HEAD"), Instance(Integer.class, Any),
+                            Patterns.<Object>Is((Object) null), And(a, Instance(String.class, Any)), Is(2.0), Is(3.0)), Any)),
+                            () -> a.isAssigned() ? "string " + a.v() : "constant"));
+            Key.comparisons = 0;
+            assertEquals("key", matcher.apply(new Object[] { new Key(99), 1 }));
+            assertTrue(Key.comparisons <= 1, backend + ": " + Key.comparisons + " comparisons");
+            assertEquals("constant", matcher.apply(new Object[] { "HEAD", 1 }));
+            assertEquals("constant", matcher.apply(new Object[] { 5, 1 }));
+            assertEquals("constant", matcher.apply(new Object[] { null, 1 }));
+            assertEquals("constant", matcher.apply(new Object[] { 3.0, 1 }));
+            assertEquals("string PUT", matcher.apply(new Object[] { "PUT", 1 }));
+            assertThrows(MatchException.class, () -> matcher.apply(new Object[] { 4.0, 1 }));
+        }
+    }
+
+    @Test
+    void andReordering() throws MatchException {
+        Capture<Object> a = capture("a");
+        int[] calls = { 0 };
+        Pattern<Object> expensive = Cost(1000, Is(v -> { calls[0]++; return true; }));
+        for (Matcher.Backend backend : Matcher.Backend.values()) {
+            Matcher<Object, String, RuntimeException> matcher = compile(backend,
+                    withCase(And(a, expensive, Instance(Integer.class, Any)), () -> "int " + a.v()),
+                    // The lambda may not be applied before the type test
+                    withCase(And(Instance(String.class, Any), Is(s -> ((String) s).length() > 3)), () -> "long string"),
+                    // The predicate must not see the capture assigned after it
+                    withCase(And(Is(v -> !a.isAssigned()), a, Instance(String.class, Is(a))), () -> "string " + a.v()),
+                    // The cheap cast must not be moved before the type test inside Or
+                    withCase(And(Or(Instance(Collection.class, Any), Null), Cost(0, unchecked(Contains(Any)))), () -> "collection"),
+                    withCase(Instance(Double.class, Any), () -> "double"));
+            calls[0] = 0;
+            assertEquals("string abc", matcher.apply("abc"));
+            assertEquals("long string", matcher.apply("abcd"));
+            assertEquals(0, calls[0], backend.toString());
+            assertEquals("int 1", matcher.apply(1));
+            assertEquals(1, calls[0], backend.toString());
+            assertEquals("double", matcher.apply(1.0), backend.toString());
+            assertEquals("collection", matcher.apply(new ArrayList<>(Collections.singletonList(1))), backend.toString());
+            assertThrows(MatchException.class, () -> matcher.apply(1L));
+        }
+    }
+
+    @Test
+    void views() throws MatchException {
+        int[] parses = { 0 };
+        int[] limits = { 0 };
+        View<String, Integer> parsed = View.of("parsed", s -> { parses[0]++; return Integer.parseInt(s.trim()); });
+        View<Object, Integer> limit = View.lazy("limit", () -> { limits[0]++; return 10; });
+        Capture<Integer> n = capture("n");
+        for (Matcher.Backend backend : Matcher.Backend.values()) {
+            Matcher<Object, String, RuntimeException> matcher = compile(backend,
+                    withCase(Instance(String.class, After(parsed, Is(limit))), () -> "limit"),
+                    withCase(Instance(String.class, After(parsed, Is(0))), () -> "zero"),
+                    withCase(Instance(String[].class, Array(After(parsed, Is(limit)), After(parsed, n))), () -> "limit, " + n.v()),
+                    withCase(Instance(String.class, After(parsed, n)), () -> "number " + n.v()));
+            parses[0] = 0;
+            limits[0] = 0;
+            assertEquals("number 5", matcher.apply(" 5"));
+            assertEquals(1, parses[0], backend.toString());
+            assertEquals(1, limits[0], backend.toString());
+            assertEquals("limit, 3", matcher.apply(new String[] { "10", "3" }));
+            assertEquals(3, parses[0], backend.toString());
+            assertEquals(2, limits[0], backend.toString());
+        }
+        // NullPointerExceptions reject as in After
+        String nothing = null;
+        assertEquals("other", match(nothing,
+                After(parsed, n), () -> "number",
+                After(parsed, Any), () -> "number",
+                Any, () -> "other"));
+    }
+}
@@ -1,16 +1,27 @@
 package de.unruh.javapatterns.test;
 
+import de.unruh.javapatterns.ArraySlice;
 import de.unruh.javapatterns.Capture;
+import de.unruh.javapatterns.DoubleCapture;
+import de.unruh.javapatterns.IntCapture;
+import de.unruh.javapatterns.LongCapture;
 import de.unruh.javapatterns.MatchException;
+import de.unruh.javapatterns.MatchManager;
+import de.unruh.javapatterns.Pattern;
+import de.unruh.javapatterns.PatternMatchReject;
 import de.unruh.javapatterns.Patterns;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.stream.Stream;
 
-import static de.unruh.javapatterns.Pattern.capture;
+import static de.unruh.javapatterns.Pattern.*;
 import static de.unruh.javapatterns.Patterns.*;
 import static de.unruh.javapatterns.Match.*;
 import static java.lang.System.out;
@@ -66,6 +77,19 @@ class PatternsTest {
         assertEquals(2, result);
     }
 
+    @Test
+    void tryMatchAndMatchOrElse() {
+        assertEquals(Optional.of("second"), tryMatch(123,
+                withCase(Is(234), () -> "first"),
+                withCase(Is(123), () -> "second")));
+        assertEquals(Optional.empty(), tryMatch(345,
+                withCase(Is(234), () -> "first"),
+                withCase(Is(123), () -> "second")));
+        assertEquals("none", matchOrElse(345, () -> "none",
+                withCase(Is(234), () -> "first"),
+                withCase(Is(123), () -> "second")));
+    }
+
     @Test
     void any() throws MatchException {
         int result = match("hello",
@@ -117,6 +141,118 @@ class PatternsTest {
         assertNull(result);
     }
 
+    enum Method { GET, HEAD, POST, PUT }
+
+    @Test
+    void isOneOf() throws MatchException {
+        String result = match("HEAD",
+                IsOneOf("GET", "HEAD", "OPTIONS"), () -> "read",
+                Any, () -> "other");
+        assertEquals("read", result);
+
+        result = match(null,
+                IsOneOf("GET", "HEAD"), () -> "read",
+                IsOneOf("POST", null), () -> "write or null");
+        assertEquals("write or null", result);
+
+        result = match(Method.PUT,
+                IsOneOf(Method.GET, Method.HEAD), () -> "read",
+                IsOneOf(Method.POST, Method.PUT), () -> "write");
+        assertEquals("write", result);
+
+        // Equality as in Is
+        result = match(3,
+                IsOneOf(1L, 2L, 3L), () -> "long",
+                IsOneOf(1, 2, 3), () -> "int");
+        assertEquals("int", result);
+    }
+
+    @Test
+    void orRollback() throws MatchException {
+        Capture<Integer> x = capture("x");
+        Capture<Integer> y = capture("y");
+
+        match(new Integer[] { 1, 3 },
+                Array(y, Or(And(x, Is(2)), x)), () -> {
+                    assertEquals(1, y.v());
+                    assertEquals(3, x.v());
+                });
+    }
+
+    /** A user-written search pattern: matches an array if some element matches {@code pattern}. */
+    static <T> Pattern<T[]> SomeElement(Pattern<? super T> pattern) {
+        return new Pattern<T[]>() {
+            @Override
+            public void apply(@NotNull MatchManager mgr, @Nullable T[] value) throws PatternMatchReject {
+                if (!matches(mgr, value)) reject();
+            }
+
+            @Override
+            public boolean matches(@NotNull MatchManager mgr, @Nullable T[] value) {
+                if (value == null) return false;
+                int mark = mgr.mark();
+                for (T element : value) {
+                    if (pattern.matches(mgr, element)) return true;
+                    mgr.rollback(mark);
+                }
+                return false;
+            }
+
+            @Override
+            public String toString() {
+                return "SomeElement(" + pattern + ")";
+            }
+        };
+    }
+
+    @Test
+    void markRollback() throws MatchException {
+        Capture<Integer> x = capture("x");
+
+        // x is assigned (and rolled back) for each element before 5
+        String result = match(new Integer[] { 1, 3, 5, 7 },
+                SomeElement(And(x, Is(v -> v > 4))), () -> "x=" + x.v());
+        assertEquals("x=5", result);
+
+        // Nested savepoints: the inner search is retried for every element of the outer one
+        result = match(new Integer[][] { { 1, 2 }, { 3, 4 } },
+                SomeElement(SomeElement(And(x, Is(v -> v % 2 == 0), Is(v -> v > 2)))), () -> "x=" + x.v());
+        assertEquals("x=4", result);
+
+        // A failed search leaves no captures assigned
+        result = match(new Integer[] { 1, 3 },
+                SomeElement(And(x, Is(v -> v > 4))), () -> "found",
+                Any, () -> "none " + x.isAssigned());
+        assertEquals("none false", result);
+    }
+
+    @Test
+    void primitiveCaptures() throws MatchException {
+        IntCapture i = intCapture("i");
+        LongCapture l = longCapture("l");
+        DoubleCapture d = doubleCapture("d");
+
+        String result = match(new Number[] { 3, 3, 10_000_000_000L, 0.5 },
+                Array(Instance(Integer.class, i), Instance(Integer.class, IsInt(i)),
+                        Instance(Long.class, And(LongRange(1, 100), l)), Instance(Double.class, d)), () -> "small",
+                Array(Instance(Integer.class, i), Instance(Integer.class, IsInt(i)),
+                        Instance(Long.class, And(LongRange(Integer.MAX_VALUE, Long.MAX_VALUE), l)), Instance(Double.class, d)),
+                    () -> "large " + i.getInt() + " " + l.getLong() + " " + d.getDouble());
+        assertEquals("large 3 10000000000 0.5", result);
+
+        result = match("hello",
+                AfterInt(String::length, IntRange(0, 3)), () -> "short",
+                AfterInt(String::length, i), () -> "long " + i.getInt());
+        assertEquals("long 5", result);
+
+        // null does not match primitive patterns
+        Integer nothing = null;
+        result = match(nothing,
+                i, () -> "int",
+                Any, () -> "other " + i.isAssigned());
+        assertEquals("other false", result);
+    }
+
     interface DemoOption<T> {}
     static class DemoNone<T> implements DemoOption<T> {}
     static class DemoSome<T> implements DemoOption<T> {
@@ -384,4 +520,234 @@ class PatternsTest {
                 () -> fail(),
                 Any, () -> {});
     }
-}
\ No newline at end of file
+
+    @Test
+    void arrayPrefix() throws MatchException {
+        Capture<ArraySlice<Integer>> rest = capture("rest");
+        Capture<Integer> x = capture("x");
+        Integer[] array = { 1, 2, 3, 4, 5 };
+
+        ArraySlice<Integer> slice = match(array,
+                ArrayPrefix(these(Is(1), Is(2)), rest), () -> rest.v());
+        assertEquals(3, slice.length());
+        assertEquals(4, slice.get(1));
+        assertArrayEquals(new Integer[] { 3, 4, 5 }, slice.toArray());
+        assertEquals(Arrays.asList(3, 4, 5), slice.asList());
+        assertEquals(ArraySlice.of(new Integer[] { 3, 4, 5 }), slice);
+        assertEquals(Arrays.hashCode(new Integer[] { 3, 4, 5 }), slice.hashCode());
+        assertEquals("[3, 4, 5]", slice.toString());
+
+        // Modifications of the array are visible in the slice
+        Integer[] modified = array.clone();
+        ArraySlice<Integer> view = match(modified, ArrayPrefix(these(Any), rest), () -> rest.v());
+        modified[4] = 6;
+        assertEquals(6, view.get(3));
+
+        assertEquals(4, match(array,
+                ArrayPrefix(these(Is(1)), ArraySlice(these(Is(2), Is(3)), ArraySlice(x, Is(5)))), () -> x.v()));
+        assertEquals("none", match(array,
+                ArrayPrefix(these(Is(1)), ArraySlice(these(Is(2), Is(3)), ArraySlice(x))), () -> "wrong",
+                Any, () -> "none"));
+        assertEquals("none", match(new Integer[] { 1 },
+                ArrayPrefix(these(Is(1), Any), Any), () -> "wrong",
+                Any, () -> "none"));
+        assertEquals("empty", match(array,
+                ArrayPrefix(these(Any, Any, Any, Any, Any), ArraySlice()), () -> "empty"));
+
+        assertThrows(IndexOutOfBoundsException.class, () -> slice.get(3));
+        assertThrows(IndexOutOfBoundsException.class, () -> slice.slice(2, 4));
+        assertEquals(ArraySlice.of(array, 3, 4), slice.slice(1, 2));
+    }
+
+    @Test
+    void list() throws MatchException {
+        Capture<Integer> x = capture("x");
+        Capture<List<Integer>> rest = capture("rest");
+        for (List<Integer> list : Arrays.<List<Integer>>asList(
+                new ArrayList<>(Arrays.asList(1, 2, 3, 4)), new LinkedList<>(Arrays.asList(1, 2, 3, 4)))) {
+            assertEquals(3, match(list,
+                    List(Is(1), Is(2), x), () -> -1,
+                    List(Is(1), Is(2), x, Any), () -> x.v()));
+            assertEquals(Arrays.asList(3, 4), match(list,
+                    List(these(Is(1), Is(3)), rest), () -> null,
+                    List(these(Is(1), Is(2)), rest), () -> rest.v()));
+            assertEquals(4, match(list,
+                    List(these(Any), List(these(Any, Any), List(x))), () -> x.v()));
+            assertEquals("none", match(list,
+                    List(these(Any, Any, Any, Any, Any), Any), () -> "wrong",
+                    Any, () -> "none"));
+        }
+        assertEquals("none", match((List<Integer>) null,
+                List(), () -> "wrong",
+                List(these(), Any), () -> "wrong",
+                Any, () -> "none"));
+    }
+
+    @Test
+    void primitiveArrays() throws MatchException {
+        IntCapture i = intCapture("i");
+        LongCapture l = longCapture("l");
+        DoubleCapture d = doubleCapture("d");
+        Capture<IntBuffer> ints = capture("ints");
+        Capture<ByteBuffer> bytes = capture("bytes");
+
+        assertEquals(3, match(new int[] { 1, 2, 3 },
+                IntArray(IsInt(1), i), () -> -1,
+                IntArray(IsInt(1), Is(2), i), () -> i.getInt()));
+        IntBuffer rest = match(new int[] { 1, 2, 3, 4 },
+                IntArray(these(IsInt(1), IntRange(0, 9)), ints), () -> ints.v());
+        assertEquals(2, rest.remaining());
+        assertEquals(3, rest.get(0));
+        assertEquals(4, rest.get(1));
+
+        assertEquals(5_000_000_000L, match(new long[] { 5_000_000_000L, 2 },
+                LongArray(l, IsLong(2)), () -> l.getLong()));
+        assertEquals(0.5, match(new double[] { 0.5 },
+                DoubleArray(these(d), Any), () -> d.getDouble()));
+
+        // Bytes and chars are matched as ints
+        ByteBuffer payload = match(new byte[] { (byte) 0xCA, (byte) 0xFE, 7, 8, 9 },
+                ByteArray(these(IsInt(-54), Is(-2)), bytes), () -> bytes.v());
+        assertEquals(3, payload.remaining());
+        assertEquals(7, payload.get(0));
+        assertEquals('b', match("ab".toCharArray(),
+                CharArray(IsInt('a'), i), () -> (char) i.getInt()));
+        assertEquals("cd", match("abcd".toCharArray(),
+                CharArray(these(IsInt('a'), IsInt('b')), After(CharSequence::toString, Is("dc"))), () -> "wrong",
+                CharArray(these(IsInt('a'), Any), After(Object::toString, Is("cd"))), () -> "cd"));
+
+        assertEquals("none", match((int[]) null,
+                IntArray(), () -> "wrong",
+                Any, () -> "none"));
+        assertEquals("none", match(new int[] { 1 },
+                IntArray(these(Any, Any), Any), () -> "wrong",
+                IntArray(), () -> "wrong",
+                Any, () -> "none"));
+    }
+
+    @Test
+    void mapRest() throws MatchException {
+        Capture<Map<String, Integer>> rest = capture("rest");
+        Map<String, Integer> map = new HashMap<>();
+        map.put("one", 1);
+        map.put("two", 2);
+        map.put("three", 3);
+
+        Map<String, Integer> remaining = match(map,
+                Map(entries(Map.entry("one", Is(1)), Map.entry("two", Any)), rest), () -> rest.v());
+        assertEquals(Map.of("three", 3), remaining);
+        assertEquals(1, remaining.size());
+        assertFalse(remaining.containsKey("one"));
+        assertNull(remaining.get("two"));
+        assertEquals(3, remaining.get("three"));
+        assertThrows(UnsupportedOperationException.class, () -> remaining.put("four", 4));
+
+        // Keys are excluded with the equality of the matched map
+        TreeMap<String, Integer> sorted = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        sorted.put("A", 1);
+        sorted.put("b", 2);
+        Map<String, Integer> sortedRest = match(sorted,
+                Map(entries(Map.entry("a", Any), Map.entry("A", Is(1))), rest), () -> rest.v());
+        assertEquals(1, sortedRest.size());
+        assertEquals(new ArrayList<>(sortedRest.entrySet()), new ArrayList<>(Map.of("b", 2).entrySet()));
+        assertNull(sortedRest.get("A"));
+        assertFalse(sortedRest.containsKey("a"));
+
+        String key = "key";
+        IdentityHashMap<String, Integer> identity = new IdentityHashMap<>();
+        identity.put(key, 1);
+        identity.put(new String(key), 2);
+        Map<String, Integer> identityRest = match(identity,
+                Map(entries(Map.entry(key, Is(1))), rest), () -> rest.v());
+        assertEquals(1, identityRest.size());
+        assertEquals(1, identityRest.entrySet().size());
+        assertEquals(2, identityRest.values().iterator().next());
+
+        assertEquals("none", match(map,
+                Map(entries(Map.entry("one", Is(1))), After(Map::size, Is(0))), () -> "wrong",
+                Map(entries(Map.entry("four", Any)), Any), () -> "wrong",
+                Any, () -> "none"));
+    }
+
+    /** A set that must be accessed only via {@link #contains}. */
+    static class LookupOnlySet<T> extends HashSet<T> {
+        @SafeVarargs
+        LookupOnlySet(T... elements) {
+            super(Arrays.asList(elements));
+        }
+
+        @Override
+        public @NotNull Iterator<T> iterator() {
+            return fail("iterated");
+        }
+    }
+
+    @Test
+    void contains() throws MatchException {
+        Capture<Integer> x = capture("x");
+        Set<Integer> set = new LookupOnlySet<>(1, 2, 3);
+        assertEquals("yes", match(set,
+                Contains(Is(4)), () -> "no",
+                Contains(Is(3)), () -> "yes"));
+        assertEquals("yes", match(set,
+                ContainsAll(Is(1), Is(2)), () -> "yes"));
+        assertEquals(2, match(Arrays.asList(1, 2, 3),
+                Contains(And(x, Is(y -> y % 2 == 0))), () -> x.v()));
+        assertEquals("none", match(Arrays.asList(1, 3),
+                Contains(And(x, Is(y -> y % 2 == 0))), () -> "wrong",
+                Any, () -> "none"));
+
+        // Collections that reject null or elements of other types in contains()
+        assertEquals("none", match(Set.of(1), Contains(Is((Object) null)), () -> "wrong", Any, () -> "none"));
+        assertEquals("none", match(List.of(1), Contains(Is((Object) null)), () -> "wrong", Any, () -> "none"));
+        Collection<Object> strings = new TreeSet<>(Arrays.asList("a", "b"));
+        assertEquals("none", match(strings, Contains(Is(1)), () -> "wrong", Any, () -> "none"));
+        assertEquals("none", match(strings, ContainsAll(Is(1), Is("a")), () -> "wrong", Any, () -> "none"));
+        assertEquals("none", match(strings, ContainsAll(Is((Object) null)), () -> "wrong", Any, () -> "none"));
+        assertEquals("none", match(strings, ContainsAll(Is(1), Any), () -> "wrong", Any, () -> "none"));
+        assertEquals("b", match(strings, ContainsAll(Is((Object) null), Any), () -> "wrong",
+                ContainsAll(Is("a"), Is((Object o) -> !"a".equals(o))), () -> "b"));
+    }
+
+    @Test
+    void containsAll() throws MatchException {
+        Capture<String> x = capture("x");
+        Capture<String> y = capture("y");
+
+        assertEquals("root", match(new HashSet<>(Arrays.asList("admin", "root")),
+                ContainsAll(Is("admin"), x), () -> x.v()));
+        // Constants are counted in lists, but not in sets
+        assertEquals("twice", match(Arrays.asList("a", "b", "a"),
+                ContainsAll(Is("a"), Is("a"), Is("c")), () -> "wrong",
+                ContainsAll(Is("a"), Is("a"), Is("a")), () -> "wrong",
+                ContainsAll(Is("a"), Is("a"), Is("b")), () -> "twice"));
+        assertEquals("none", match(new HashSet<>(Arrays.asList("a", "b", "c")),
+                ContainsAll(Is("a"), Is("a"), Any), () -> "wrong",
+                ContainsAll(Is("a"), Is("b"), Is("c"), Any), () -> "wrong",
+                Any, () -> "none"));
+        // Elements of sorted sets are compared with the set's comparator
+        TreeSet<String> sorted = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        sorted.addAll(Arrays.asList("A", "b", "c"));
+        assertEquals("b", match(sorted,
+                ContainsAll(Is("a"), Is("B"), Is(() -> "c")), () -> "b"));
+        assertEquals("b", match(sorted,
+                ContainsAll(Is("a"), Is("A"), Any), () -> "wrong",
+                ContainsAll(Is("a"), Is(() -> "c"), x), () -> x.v()));
+        assertEquals("b", match(Collections.unmodifiableSet(new HashSet<>(Arrays.asList("a", "b"))),
+                ContainsAll(Is("a"), x), () -> x.v()));
+
+        // The first pattern has to give up its first choice
+        assertEquals("ok", match(Arrays.asList("long", "s"),
+                ContainsAll(Is(s -> !s.isEmpty()), Is(s -> s.length() > 2)), () -> "ok"));
+        // Captures are reset when backtracking
+        assertEquals("b", match(Arrays.asList("a", "b", "c", "b"),
+                ContainsAll(x, Is(x)), () -> x.v()));
+        assertEquals("c b", match(Arrays.asList("a", "b", "c", "d", "b"),
+                ContainsAll(And(x, Is(s -> s.compareTo("b") > 0)), y, Is("a"), Is("d"), Is(() -> "b")),
+                () -> x.v() + " " + y.v()));
+        assertEquals("none", match(Arrays.asList("a", "b", "c"),
+                ContainsAll(x, Is(x)), () -> "wrong",
+                Any, () -> "none"));
+        assertFalse(x.isAssigned());
+    }
+}